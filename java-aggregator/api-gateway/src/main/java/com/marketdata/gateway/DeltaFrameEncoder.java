@@ -0,0 +1,125 @@
+package com.marketdata.gateway;
+
+import com.marketdata.proto.Aggregate;
+import org.springframework.web.socket.BinaryMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Encodes one session's updates in the {@value #PROTOCOL} binary format, each frame a
+ * delta against the previous frame sent to that session. All numbers are big-endian
+ * (the {@code DataView} default).
+ *
+ * <pre>
+ *   keyframe  u8 0x01, u8 symbol length, symbol (UTF-8),
+ *             f64 open, f64 high, f64 low, f64 close, i64 volume, i64 timestamp
+ *   delta     u8 0x02, u8 field mask, then each field whose bit is set, in bit order:
+ *             bit 0..3  open, high, low, close  f64 new value
+ *             bit 4..5  volume, timestamp       zigzag varint of (new - previous)
+ * </pre>
+ *
+ * The first frame is a keyframe; a delta with an empty mask is never sent. One encoder
+ * belongs to one session and is used by one sending task at a time.
+ */
+final class DeltaFrameEncoder {
+
+    static final String PROTOCOL = "marketdata.delta.v1";
+
+    static final byte KEYFRAME = 0x01;
+    static final byte DELTA = 0x02;
+
+    private static final int OPEN = 1;
+    private static final int HIGH = 1 << 1;
+    private static final int LOW = 1 << 2;
+    private static final int CLOSE = 1 << 3;
+    private static final int VOLUME = 1 << 4;
+    private static final int TIMESTAMP = 1 << 5;
+
+    // Largest frame: keyframe with a 255-byte symbol
+    private final ByteBuffer buffer = ByteBuffer.allocate(2 + 255 + 6 * Long.BYTES);
+
+    private boolean started;
+    private double open;
+    private double high;
+    private double low;
+    private double close;
+    private long volume;
+    private long timestamp;
+
+    /**
+     * @return the frame to send, or null if nothing the format carries has changed
+     */
+    BinaryMessage encode(Aggregate agg) {
+        buffer.clear();
+        if (!started) {
+            byte[] symbol = agg.getSymbol().getBytes(StandardCharsets.UTF_8);
+            if (symbol.length > 255) {
+                throw new IllegalArgumentException("Symbol too long for binary frame: " + agg.getSymbol());
+            }
+            buffer.put(KEYFRAME)
+                    .put((byte) symbol.length)
+                    .put(symbol)
+                    .putDouble(agg.getOpen())
+                    .putDouble(agg.getHigh())
+                    .putDouble(agg.getLow())
+                    .putDouble(agg.getClose())
+                    .putLong(agg.getVolume())
+                    .putLong(agg.getTimestamp());
+            started = true;
+        } else {
+            // Compare bit patterns so -0.0 and NaN changes are carried too
+            int mask = 0;
+            mask |= changed(open, agg.getOpen()) ? OPEN : 0;
+            mask |= changed(high, agg.getHigh()) ? HIGH : 0;
+            mask |= changed(low, agg.getLow()) ? LOW : 0;
+            mask |= changed(close, agg.getClose()) ? CLOSE : 0;
+            mask |= volume != agg.getVolume() ? VOLUME : 0;
+            mask |= timestamp != agg.getTimestamp() ? TIMESTAMP : 0;
+            if (mask == 0) {
+                return null;
+            }
+            buffer.put(DELTA).put((byte) mask);
+            if ((mask & OPEN) != 0) {
+                buffer.putDouble(agg.getOpen());
+            }
+            if ((mask & HIGH) != 0) {
+                buffer.putDouble(agg.getHigh());
+            }
+            if ((mask & LOW) != 0) {
+                buffer.putDouble(agg.getLow());
+            }
+            if ((mask & CLOSE) != 0) {
+                buffer.putDouble(agg.getClose());
+            }
+            if ((mask & VOLUME) != 0) {
+                putZigZag(agg.getVolume() - volume);
+            }
+            if ((mask & TIMESTAMP) != 0) {
+                putZigZag(agg.getTimestamp() - timestamp);
+            }
+        }
+        open = agg.getOpen();
+        high = agg.getHigh();
+        low = agg.getLow();
+        close = agg.getClose();
+        volume = agg.getVolume();
+        timestamp = agg.getTimestamp();
+        return new BinaryMessage(Arrays.copyOf(buffer.array(), buffer.position()));
+    }
+
+    private static boolean changed(double previous, double next) {
+        return Double.doubleToRawLongBits(previous) != Double.doubleToRawLongBits(next);
+    }
+
+    // LEB128 of the zigzag-mapped value: small deltas of either sign take one or two bytes
+    private void putZigZag(long delta) {
+        long v = (delta << 1) ^ (delta >> 63);
+        while ((v & ~0x7FL) != 0) {
+            buffer.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+}
@@ -1,57 +1,94 @@
 package com.marketdata.gateway;
 
-import com.marketdata.proto.Aggregate;
-import com.marketdata.proto.AggregateRequest;
-import com.marketdata.proto.MarketDataServiceGrpc;
-import io.grpc.ManagedChannel;
-import io.grpc.ManagedChannelBuilder;
+import com.marketdata.gateway.model.AggregateDTO;
+import com.marketdata.gateway.service.AggregateCache;
+import com.marketdata.gateway.service.CoalescingMarketDataClient;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/api/v1/marketdata")
 public class MarketDataController {
 
-    private final MarketDataServiceGrpc.MarketDataServiceBlockingStub marketDataStub;
+    private final AggregateCache cache;
+    // Cache misses: coalesced per symbol, with retry, circuit breaker and rate limiter
+    private final CoalescingMarketDataClient client;
+    private final MarketDataWebSocketHandler webSocketHandler;
 
-    public MarketDataController() {
-        // Connect to the gRPC backend (assuming localhost:50051)
-        ManagedChannel channel = ManagedChannelBuilder.forAddress("localhost", 50051)
-                .usePlaintext()
-                .build();
-        this.marketDataStub = MarketDataServiceGrpc.newBlockingStub(channel);
+    public MarketDataController(AggregateCache cache,
+                                CoalescingMarketDataClient client,
+                                MarketDataWebSocketHandler webSocketHandler) {
+        this.cache = cache;
+        this.client = client;
+        this.webSocketHandler = webSocketHandler;
     }
 
     @GetMapping("/{symbol}")
-    public Map<String, Object> getAggregate(@PathVariable String symbol) {
-        AggregateRequest request = AggregateRequest.newBuilder()
-                .setSymbol(symbol)
-                .build();
+    public ResponseEntity<Map<String, Object>> getAggregate(@PathVariable String symbol) {
+        // Served from the local replica; X-Data-Age-Ms is the time since this symbol last changed
+        AggregateCache.Entry cached = cache.lookup(symbol);
+        if (cached != null) {
+            return ResponseEntity.ok()
+                    .header("X-Data-Source", "cache")
+                    .header("X-Data-Age-Ms", String.valueOf(cached.ageMillis()))
+                    .body(toResponse(AggregateDTO.from(cached.aggregate())));
+        }
 
         try {
-            Aggregate agg = marketDataStub.getAggregate(request);
-            
-            // Convert to JSON-friendly map
-            Map<String, Object> response = new HashMap<>();
-            response.put("symbol", agg.getSymbol());
-            response.put("open", agg.getOpen());
-            response.put("high", agg.getHigh());
-            response.put("low", agg.getLow());
-            response.put("close", agg.getClose());
-            response.put("volume", agg.getVolume());
-            response.put("timestamp", agg.getTimestamp());
-            
-            return response;
+            AggregateDTO agg = client.getAggregate(symbol);
+            // The fallback's placeholder while the aggregator is unreachable
+            boolean offline = agg.equals(AggregateDTO.offline(symbol));
+            return ResponseEntity.ok()
+                    .header("X-Data-Source", offline ? "offline" : "backend")
+                    .body(toResponse(agg));
         } catch (Exception e) {
             // Basic error handling
             Map<String, Object> error = new HashMap<>();
             error.put("error", e.getMessage());
-            return error;
+            return ResponseEntity.ok(error);
+        }
+    }
+
+    @GetMapping("/cache/status")
+    public Map<String, Object> cacheStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("connected", cache.isConnected());
+        status.put("symbols", cache.size());
+        status.put("lastUpdateAgeMs", cache.lastUpdateAgeMillis());
+        return status;
+    }
+
+    @GetMapping("/ws/sessions")
+    public List<SessionOutbox.Lag> webSocketSessions() {
+        return webSocketHandler.sessionLag();
+    }
+
+    // Convert to JSON-friendly map
+    private static Map<String, Object> toResponse(AggregateDTO agg) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("symbol", agg.symbol());
+        response.put("open", agg.open());
+        response.put("high", agg.high());
+        response.put("low", agg.low());
+        response.put("close", agg.close());
+        response.put("volume", Long.parseLong(agg.volume()));
+        response.put("timestamp", Long.parseLong(agg.timestamp()));
+        response.put("trades", Long.parseLong(agg.trades()));
+        response.put("vwap", agg.vwap());
+        List<Map<String, Object>> ewma = new ArrayList<>();
+        for (AggregateDTO.EwmaDTO average : agg.ewma()) {
+            ewma.add(Map.of("halfLifeMs", Long.parseLong(average.halfLifeMs()), "value", average.value()));
         }
+        response.put("ewma", ewma);
+        response.put("volatility", agg.volatility());
+        return response;
     }
 }
@@ -1,25 +1,113 @@
 package com.marketdata.gateway;
 
 import com.marketdata.gateway.model.AggregateDTO;
+import com.marketdata.gateway.model.CandleDTO;
+import com.marketdata.gateway.model.MoverDTO;
+import com.marketdata.gateway.service.AggregateCache;
+import com.marketdata.gateway.service.CoalescingMarketDataClient;
 import com.marketdata.gateway.service.MarketDataClientService;
-import io.grpc.ManagedChannel;
-import io.grpc.ManagedChannelBuilder;
+import graphql.GraphQLError;
+import org.dataloader.DataLoader;
 import org.springframework.graphql.data.method.annotation.Argument;
+import org.springframework.graphql.data.method.annotation.GraphQlExceptionHandler;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.graphql.execution.BatchLoaderRegistry;
+import org.springframework.graphql.execution.ErrorType;
 import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Controller
 public class MarketDataGraphQLController {
 
-    private final MarketDataClientService clientService;
+    private final CoalescingMarketDataClient clientService;
+    private final MarketDataClientService marketDataService;
+    private final AggregateCache cache;
 
-    public MarketDataGraphQLController(MarketDataClientService clientService) {
+    public MarketDataGraphQLController(CoalescingMarketDataClient clientService,
+                                       MarketDataClientService marketDataService, AggregateCache cache,
+                                       BatchLoaderRegistry registry) {
         this.clientService = clientService;
+        this.marketDataService = marketDataService;
+        this.cache = cache;
+
+        // Every marketData field in one GraphQL request is collected and fetched with a single GetAggregates call
+        registry.forTypePair(String.class, AggregateDTO.class)
+                .registerMappedBatchLoader((symbols, env) -> Mono.fromCallable(() -> load(symbols)));
+    }
+
+    @QueryMapping
+    public CompletableFuture<AggregateDTO> marketData(@Argument String symbol, DataLoader<String, AggregateDTO> loader) {
+        // Replica hits are immediate; misses from the whole request share one resilient backend call
+        return loader.load(symbol);
+    }
+
+    @QueryMapping
+    public List<AggregateDTO> marketDataBatch(@Argument List<String> symbols) {
+        Map<String, AggregateDTO> found = load(symbols);
+        List<AggregateDTO> result = new ArrayList<>(symbols.size());
+        for (String symbol : symbols) {
+            result.add(found.get(symbol));
+        }
+        return result;
+    }
+
+    @QueryMapping
+    public List<CandleDTO> candles(@Argument String symbol, @Argument String interval, @Argument String from,
+                                   @Argument String to, @Argument Integer limit) {
+        // Timestamps arrive as strings (epoch nanoseconds do not fit a GraphQL Int or Float)
+        return marketDataService.getCandles(symbol, CandleDTO.interval(interval),
+                Long.parseLong(from), to == null ? 0 : Long.parseLong(to), limit == null ? 0 : limit);
+    }
+
+    @QueryMapping
+    public List<MoverDTO> topMovers(@Argument String metric, @Argument int n) {
+        return marketDataService.getTopMovers(MoverDTO.metric(metric), n);
     }
 
     @QueryMapping
-    public AggregateDTO marketData(@Argument String symbol) {
-        // The service layer handles resilience and DTO conversion
-        return clientService.getAggregate(symbol);
+    public Map<String, Object> marketDataCacheStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("connected", cache.isConnected());
+        status.put("symbols", cache.size());
+        status.put("lastUpdateAgeMs", cache.lastUpdateAgeMillis());
+        return status;
+    }
+
+    // An unknown metric or interval, or an n out of range, is the client's error rather than an internal one
+    @GraphQlExceptionHandler
+    public GraphQLError badArgument(IllegalArgumentException e) {
+        return GraphQLError.newError()
+                .errorType(ErrorType.BAD_REQUEST)
+                .message(String.valueOf(e.getMessage()))
+                .build();
+    }
+
+    /**
+     * Answer from the local replica, going to the backend (one call) only for misses.
+     * Concurrent requests missing the same symbols share one backend call.
+     */
+    private Map<String, AggregateDTO> load(Collection<String> symbols) {
+        Map<String, AggregateDTO> result = new LinkedHashMap<>();
+        List<String> misses = new ArrayList<>();
+        Map<String, AggregateCache.Entry> hits = cache.lookupAll(symbols);
+        for (String symbol : symbols) {
+            AggregateCache.Entry entry = hits.get(symbol);
+            if (entry != null) {
+                result.put(symbol, AggregateDTO.from(entry.aggregate()));
+            } else {
+                misses.add(symbol);
+            }
+        }
+        if (!misses.isEmpty()) {
+            result.putAll(clientService.getAggregates(misses));
+        }
+        return result;
     }
 }
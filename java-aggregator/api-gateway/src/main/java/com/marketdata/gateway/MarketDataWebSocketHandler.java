@@ -1,41 +1,96 @@
 package com.marketdata.gateway;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.marketdata.gateway.service.SubscriptionMultiplexer;
 import com.marketdata.proto.Aggregate;
-import com.marketdata.proto.AggregateRequest;
-import com.marketdata.proto.MarketDataServiceGrpc;
-import io.grpc.ManagedChannel;
-import io.grpc.ManagedChannelBuilder;
-import io.grpc.stub.StreamObserver;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
-import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.SubProtocolCapable;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
-import java.io.IOException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
+/**
+ * Raw WebSocket feed at {@code /ws/marketdata?symbol=...}.
+ *
+ * Each update is encoded once per symbol and the same frame is handed to every session
+ * watching it through that session's {@link SessionOutbox}, so slow sockets drop
+ * intermediate updates instead of blocking delivery. A session whose send has been
+ * stuck longer than {@code market.data.ws.sendTimeLimitMs} is closed.
+ *
+ * Sessions get JSON text frames unless the client offers the
+ * {@value DeltaFrameEncoder#PROTOCOL} subprotocol in {@code Sec-WebSocket-Protocol},
+ * in which case they get binary frames delta-encoded against the last frame sent to
+ * that session (see {@link DeltaFrameEncoder}).
+ */
 @Component
-public class MarketDataWebSocketHandler extends TextWebSocketHandler {
-
-    private final MarketDataServiceGrpc.MarketDataServiceStub asyncStub;
-    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
-    private final ObjectMapper objectMapper = new ObjectMapper();
-
-    public MarketDataWebSocketHandler() {
-        // Create an async stub for streaming
-        ManagedChannel channel = ManagedChannelBuilder.forAddress("localhost", 50051)
-                .usePlaintext()
-                .build();
-        this.asyncStub = MarketDataServiceGrpc.newStub(channel);
+public class MarketDataWebSocketHandler extends TextWebSocketHandler implements SubProtocolCapable {
+
+    static final String JSON_PROTOCOL = "marketdata.json";
+
+    /**
+     * Sessions watching one symbol and the last update published for it.
+     */
+    private static final class SymbolFeed {
+        final List<SessionOutbox> outboxes = new CopyOnWriteArrayList<>();
+        volatile SessionOutbox.Frame last;
+        // Written only by the gRPC callback thread delivering this symbol
+        long published;
+        Runnable unsubscribe;
+    }
+
+    private final SubscriptionMultiplexer multiplexer;
+    private final long sendTimeLimitNanos;
+    private final Map<String, SessionOutbox> sessions = new ConcurrentHashMap<>();
+    private final Map<String, SymbolFeed> feeds = new ConcurrentHashMap<>();
+    private final ExecutorService sender;
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ws-send-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public MarketDataWebSocketHandler(SubscriptionMultiplexer multiplexer,
+                                      @Value("${market.data.ws.senderThreads:8}") int senderThreads,
+                                      @Value("${market.data.ws.sendTimeLimitMs:5000}") long sendTimeLimitMs,
+                                      @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.multiplexer = multiplexer;
+        this.sendTimeLimitNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeLimitMs);
+        if (virtualThreads) {
+            // A socket blocked in send parks its own virtual thread instead of taking a pool slot
+            this.sender = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ws-sender-", 1).factory());
+        } else {
+            AtomicInteger threads = new AtomicInteger();
+            this.sender = Executors.newFixedThreadPool(senderThreads, runnable -> {
+                Thread thread = new Thread(runnable, "ws-sender-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        watchdog.scheduleWithFixedDelay(this::closeStalledSessions, 1, 1, TimeUnit.SECONDS);
+    }
+
+    // Offered during the handshake in this order of preference; no match means JSON
+    @Override
+    public List<String> getSubProtocols() {
+        return List.of(DeltaFrameEncoder.PROTOCOL, JSON_PROTOCOL);
     }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        sessions.put(session.getId(), session);
         System.out.println("WebSocket Connected: " + session.getId());
 
         // Parse query params to get symbol (e.g. ?symbol=AAPL)
@@ -50,65 +105,88 @@ public class MarketDataWebSocketHandler extends TextWebSocketHandler {
             }
         }
         
-        System.out.println("Subscribing " + session.getId() + " to " + symbol);
-        startSubscription(session, symbol);
-    }
+        boolean binary = DeltaFrameEncoder.PROTOCOL.equals(session.getAcceptedProtocol());
+        Function<SessionOutbox.Frame, WebSocketMessage<?>> encoder;
+        if (binary) {
+            DeltaFrameEncoder delta = new DeltaFrameEncoder();
+            encoder = frame -> delta.encode(frame.aggregate());
+        } else {
+            encoder = SessionOutbox.Frame::json;
+        }
 
-    private void startSubscription(WebSocketSession session, String symbol) {
-        AggregateRequest request = AggregateRequest.newBuilder().setSymbol(symbol).build();
-
-        asyncStub.streamAggregates(request, new StreamObserver<Aggregate>() {
-            @Override
-            public void onNext(Aggregate value) {
-                if (!session.isOpen()) return;
-                
-                try {
-                    Map<String, Object> data = new HashMap<>();
-                    data.put("symbol", value.getSymbol());
-                    data.put("open", value.getOpen());
-                    data.put("high", value.getHigh());
-                    data.put("low", value.getLow());
-                    data.put("close", value.getClose());
-                    data.put("volume", value.getVolume());
-                    data.put("timestamp", value.getTimestamp());
-
-                    String json = objectMapper.writeValueAsString(data);
-                    
-                    // Sending must be synchronized
-                    synchronized (session) {
-                        if (session.isOpen()) {
-                            session.sendMessage(new TextMessage(json));
-                        }
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+        System.out.println("Subscribing " + session.getId() + " to " + symbol + (binary ? " (binary)" : ""));
+        SessionOutbox outbox = new SessionOutbox(session, symbol, sender, encoder);
+        sessions.put(session.getId(), outbox);
+        feeds.compute(symbol, (s, feed) -> {
+            if (feed == null) {
+                feed = new SymbolFeed();
+                SymbolFeed created = feed;
+                feed.unsubscribe = multiplexer.subscribe(s, agg -> publish(created, agg));
             }
-
-            @Override
-            public void onError(Throwable t) {
-                System.err.println("gRPC Stream Error: " + t.getMessage());
-                try {
-                    session.close(CloseStatus.SERVER_ERROR);
-                } catch (IOException e) {
-                    // ignore
-                }
-            }
-
-            @Override
-            public void onCompleted() {
-                try {
-                    session.close(CloseStatus.NORMAL);
-                } catch (IOException e) {
-                    // ignore
-                }
+            feed.outboxes.add(outbox);
+            // A late joiner starts from the symbol's current state instead of waiting for its
+            // next change; the outbox ignores it if publish() has already offered a newer frame
+            SessionOutbox.Frame last = feed.last;
+            if (last != null) {
+                outbox.offer(last.replayed());
             }
+            return feed;
         });
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        sessions.remove(session.getId());
-        System.out.println("WebSocket Disconnected: " + session.getId());
+        SessionOutbox outbox = sessions.remove(session.getId());
+        if (outbox != null) {
+            feeds.computeIfPresent(outbox.symbol(), (s, feed) -> {
+                feed.outboxes.remove(outbox);
+                if (!feed.outboxes.isEmpty()) {
+                    return feed;
+                }
+                feed.unsubscribe.run();
+                return null;
+            });
+            SessionOutbox.Lag lag = outbox.lag();
+            System.out.println("WebSocket Disconnected: " + session.getId() + " (sent " + lag.sent()
+                    + ", dropped " + lag.dropped() + ", max lag " + lag.maxLagMillis() + " ms)");
+        }
+    }
+
+    /**
+     * @return delivery counters of every connected session
+     */
+    public List<SessionOutbox.Lag> sessionLag() {
+        List<SessionOutbox.Lag> lags = new ArrayList<>(sessions.size());
+        for (SessionOutbox outbox : sessions.values()) {
+            lags.add(outbox.lag());
+        }
+        return lags;
+    }
+
+    @PreDestroy
+    public void stop() {
+        watchdog.shutdownNow();
+        sender.shutdownNow();
+    }
+
+    // Runs on the gRPC callback thread, so it only hands the frame over; encoding happens on send
+    private void publish(SymbolFeed feed, Aggregate value) {
+        SessionOutbox.Frame frame = new SessionOutbox.Frame(value, System.nanoTime(), feed.published++);
+        feed.last = frame;
+        for (SessionOutbox outbox : feed.outboxes) {
+            outbox.offer(frame);
+        }
+    }
+
+    private void closeStalledSessions() {
+        long now = System.nanoTime();
+        for (SessionOutbox outbox : sessions.values()) {
+            long stuck = outbox.sendInProgressNanos(now);
+            if (stuck > sendTimeLimitNanos) {
+                System.err.println("Closing WebSocket " + outbox.session().getId() + ": send blocked for "
+                        + TimeUnit.NANOSECONDS.toMillis(stuck) + " ms");
+                outbox.close(CloseStatus.SESSION_NOT_RELIABLE);
+            }
+        }
     }
 }
@@ -0,0 +1,249 @@
+package com.marketdata.gateway;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.marketdata.proto.Aggregate;
+import com.marketdata.proto.Ewma;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Conflating, non-blocking send queue of one WebSocket session.
+ *
+ * The queue holds at most one frame: offering a newer frame while the previous one is
+ * still waiting replaces it, so a slow client skips intermediate updates instead of
+ * falling further behind. Frames are ordered by their feed sequence, and one no newer
+ * than a frame already offered is ignored. Sends run on a shared executor, one at a time per session,
+ * and never on the thread that offers frames.
+ *
+ * The encoder turns a frame into this session's message; it may keep per-session state
+ * (such as the delta base) since it only runs on the sending task, and returns null to
+ * skip a frame that carries nothing new.
+ */
+final class SessionOutbox {
+
+    /**
+     * An update shared by every session watching the symbol; its JSON form is encoded
+     * at most once, by whichever JSON session sends it first.
+     */
+    static final class Frame {
+        private static final ObjectMapper MAPPER = new ObjectMapper();
+
+        private final Aggregate aggregate;
+        private final long receivedAtNanos;
+        private final long sequence;
+        private final boolean replay;
+        private volatile TextMessage json;
+
+        /**
+         * @param sequence position of the update in its symbol's feed
+         */
+        Frame(Aggregate aggregate, long receivedAtNanos, long sequence) {
+            this(aggregate, receivedAtNanos, sequence, false);
+        }
+
+        private Frame(Aggregate aggregate, long receivedAtNanos, long sequence, boolean replay) {
+            this.aggregate = aggregate;
+            this.receivedAtNanos = receivedAtNanos;
+            this.sequence = sequence;
+            this.replay = replay;
+        }
+
+        Aggregate aggregate() {
+            return aggregate;
+        }
+
+        long receivedAtNanos() {
+            return receivedAtNanos;
+        }
+
+        long sequence() {
+            return sequence;
+        }
+
+        boolean replay() {
+            return replay;
+        }
+
+        /**
+         * The same update replayed to a late joiner; it is not counted toward lag.
+         */
+        Frame replayed() {
+            Frame copy = new Frame(aggregate, receivedAtNanos, sequence, true);
+            copy.json = json;
+            return copy;
+        }
+
+        // A race may encode twice; both results are identical and immutable
+        TextMessage json() {
+            TextMessage message = json;
+            if (message == null) {
+                message = new TextMessage(encodeJson(aggregate));
+                json = message;
+            }
+            return message;
+        }
+
+        private static String encodeJson(Aggregate value) {
+            ObjectNode data = MAPPER.createObjectNode();
+            data.put("symbol", value.getSymbol());
+            data.put("open", value.getOpen());
+            data.put("high", value.getHigh());
+            data.put("low", value.getLow());
+            data.put("close", value.getClose());
+            data.put("volume", value.getVolume());
+            data.put("timestamp", value.getTimestamp());
+            data.put("trades", value.getTrades());
+            data.put("vwap", value.getVwap());
+            ArrayNode ewma = data.putArray("ewma");
+            for (Ewma average : value.getEwmaList()) {
+                ewma.addObject()
+                        .put("halfLifeMs", average.getHalfLifeMs())
+                        .put("value", average.getValue());
+            }
+            data.put("volatility", value.getVolatility());
+            try {
+                return MAPPER.writeValueAsString(data);
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Delivery counters of one session; lags are measured from when the gateway received the update.
+     */
+    record Lag(String sessionId, String symbol, long sent, long dropped,
+               long lastLagMillis, long maxLagMillis, long sendInProgressMillis) {
+    }
+
+    private final WebSocketSession session;
+    private final String symbol;
+    private final Executor sender;
+    private final Function<Frame, WebSocketMessage<?>> encoder;
+    private final AtomicReference<Frame> pending = new AtomicReference<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicLong dropped = new AtomicLong();
+    // Sequence of the newest frame offered; guarded by this
+    private long offered = -1;
+
+    // Written only by the sending task, which runs one at a time per session
+    private volatile long sent;
+    private volatile long lastLagNanos;
+    private volatile long maxLagNanos;
+    private volatile long sendStartedNanos;
+
+    SessionOutbox(WebSocketSession session, String symbol, Executor sender,
+                  Function<Frame, WebSocketMessage<?>> encoder) {
+        this.session = session;
+        this.symbol = symbol;
+        this.sender = sender;
+        this.encoder = encoder;
+    }
+
+    WebSocketSession session() {
+        return session;
+    }
+
+    String symbol() {
+        return symbol;
+    }
+
+    /**
+     * Queue a frame, replacing any frame not yet sent, unless a newer frame has already
+     * been offered. Never blocks.
+     */
+    void offer(Frame frame) {
+        synchronized (this) {
+            if (frame.sequence() <= offered) {
+                return;
+            }
+            offered = frame.sequence();
+            if (pending.getAndSet(frame) != null) {
+                dropped.incrementAndGet();
+            }
+        }
+        schedule();
+    }
+
+    /**
+     * @return how long the current send has been blocked, or 0 if none is in progress
+     */
+    long sendInProgressNanos(long now) {
+        long started = sendStartedNanos;
+        return started == 0 ? 0 : now - started;
+    }
+
+    Lag lag() {
+        return new Lag(session.getId(), symbol, sent, dropped.get(),
+                TimeUnit.NANOSECONDS.toMillis(lastLagNanos),
+                TimeUnit.NANOSECONDS.toMillis(maxLagNanos),
+                TimeUnit.NANOSECONDS.toMillis(sendInProgressNanos(System.nanoTime())));
+    }
+
+    void close(CloseStatus status) {
+        pending.set(null);
+        try {
+            session.close(status);
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private void schedule() {
+        if (pending.get() != null && scheduled.compareAndSet(false, true)) {
+            try {
+                sender.execute(this::sendOne);
+            } catch (RejectedExecutionException e) {
+                // Gateway shutting down
+                scheduled.set(false);
+            }
+        }
+    }
+
+    // One frame per task, so a busy session cannot hold a sender thread from the others
+    private void sendOne() {
+        try {
+            Frame frame = pending.getAndSet(null);
+            if (frame == null || !session.isOpen()) {
+                return;
+            }
+            WebSocketMessage<?> message = encoder.apply(frame);
+            if (message == null) {
+                return;
+            }
+            sendStartedNanos = System.nanoTime();
+            session.sendMessage(message);
+            sent++;
+            if (!frame.replay()) {
+                long lag = System.nanoTime() - frame.receivedAtNanos();
+                lastLagNanos = lag;
+                if (lag > maxLagNanos) {
+                    maxLagNanos = lag;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("WebSocket send failed for " + session.getId() + ": " + e.getMessage());
+            close(CloseStatus.SERVER_ERROR);
+        } finally {
+            sendStartedNanos = 0;
+            scheduled.set(false);
+        }
+        // A frame offered while this send was running found the task still scheduled
+        schedule();
+    }
+}
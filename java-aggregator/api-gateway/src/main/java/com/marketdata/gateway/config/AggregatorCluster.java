@@ -0,0 +1,106 @@
+package com.marketdata.gateway.config;
+
+import com.marketdata.cluster.SymbolRing;
+import com.marketdata.proto.MarketDataServiceGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.stub.StreamObserver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Channels and stubs for every aggregator node, and which node owns which symbol.
+ *
+ * With one node every symbol maps to it and this is just the single channel.
+ */
+public class AggregatorCluster implements AutoCloseable {
+
+    private final SymbolRing ring;
+    private final List<ManagedChannel> channels;
+    private final List<MarketDataServiceGrpc.MarketDataServiceBlockingStub> blockingStubs = new ArrayList<>();
+    private final List<MarketDataServiceGrpc.MarketDataServiceStub> asyncStubs = new ArrayList<>();
+
+    public AggregatorCluster(SymbolRing ring, List<ManagedChannel> channels) {
+        this.ring = ring;
+        this.channels = List.copyOf(channels);
+        for (ManagedChannel channel : channels) {
+            blockingStubs.add(MarketDataServiceGrpc.newBlockingStub(channel));
+            asyncStubs.add(MarketDataServiceGrpc.newStub(channel));
+        }
+    }
+
+    public int size() {
+        return ring.size();
+    }
+
+    public String node(int node) {
+        return ring.nodes().get(node);
+    }
+
+    public int ownerOf(String symbol) {
+        return ring.ownerOf(symbol);
+    }
+
+    /**
+     * Group symbols by owning node, keeping their relative order.
+     */
+    public Map<Integer, List<String>> partition(Collection<String> symbols) {
+        return ring.partition(symbols);
+    }
+
+    public MarketDataServiceGrpc.MarketDataServiceBlockingStub blockingStub(int node) {
+        return blockingStubs.get(node);
+    }
+
+    public MarketDataServiceGrpc.MarketDataServiceBlockingStub blockingStubFor(String symbol) {
+        return blockingStubs.get(ring.ownerOf(symbol));
+    }
+
+    public MarketDataServiceGrpc.MarketDataServiceStub asyncStub(int node) {
+        return asyncStubs.get(node);
+    }
+
+    /**
+     * Start a unary call on one node, so calls to several nodes can run in parallel.
+     *
+     * @param call e.g. {@code (stub, observer) -> stub.getAggregates(request, observer)}
+     */
+    public <T> CompletableFuture<T> call(int node, BiConsumer<MarketDataServiceGrpc.MarketDataServiceStub, StreamObserver<T>> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        call.accept(asyncStubs.get(node), new StreamObserver<>() {
+            @Override
+            public void onNext(T value) {
+                result.complete(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                result.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void close() {
+        for (ManagedChannel channel : channels) {
+            channel.shutdown();
+        }
+        try {
+            for (ManagedChannel channel : channels) {
+                channel.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,12 +1,16 @@
 package com.marketdata.gateway.config;
 
-import com.marketdata.proto.MarketDataServiceGrpc;
+import com.marketdata.cluster.SymbolRing;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
 @Configuration
 public class GrpcConfig {
 
@@ -16,20 +20,32 @@ public class GrpcConfig {
     @Value("${market.data.grpc.port:50051}")
     private int grpcPort;
 
-    @Bean
-    public ManagedChannel managedChannel() {
-        return ManagedChannelBuilder.forAddress(grpcHost, grpcPort)
-                .usePlaintext()
-                .build();
-    }
+    // Comma-separated node addresses of a partitioned cluster; empty means the single host:port above
+    @Value("${market.data.grpc.nodes:}")
+    private String grpcNodes;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
 
     @Bean
-    public MarketDataServiceGrpc.MarketDataServiceBlockingStub marketDataStub(ManagedChannel channel) {
-        return MarketDataServiceGrpc.newBlockingStub(channel);
+    public AggregatorCluster aggregatorCluster() {
+        SymbolRing ring = grpcNodes.isBlank()
+                ? new SymbolRing(List.of(grpcHost + ":" + grpcPort))
+                : SymbolRing.parse(grpcNodes);
+        List<ManagedChannel> channels = new ArrayList<>();
+        for (String node : ring.nodes()) {
+            channels.add(channel(node));
+        }
+        return new AggregatorCluster(ring, channels);
     }
 
-    @Bean
-    public MarketDataServiceGrpc.MarketDataServiceStub marketDataAsyncStub(ManagedChannel channel) {
-        return MarketDataServiceGrpc.newStub(channel);
+    private ManagedChannel channel(String target) {
+        ManagedChannelBuilder<?> builder = ManagedChannelBuilder.forTarget(target)
+                .usePlaintext();
+        if (virtualThreads) {
+            // Async callbacks on virtual threads; blocking stub calls already park the calling (virtual) thread
+            builder.executor(Executors.newVirtualThreadPerTaskExecutor());
+        }
+        return builder.build();
     }
 }
@@ -1,5 +1,11 @@
 package com.marketdata.gateway.model;
 
+import com.marketdata.proto.Aggregate;
+import com.marketdata.proto.Ewma;
+
+import java.util.ArrayList;
+import java.util.List;
+
 public record AggregateDTO(
     String symbol,
     double open,
@@ -7,5 +13,45 @@ public record AggregateDTO(
     double low,
     double close,
     String volume,
-    String timestamp
-) {}
+    String timestamp,
+    String trades,
+    double vwap,
+    List<EwmaDTO> ewma,
+    double volatility
+) {
+
+    /**
+     * Time-decayed moving average of the price with the given half-life.
+     */
+    public record EwmaDTO(String halfLifeMs, double value) {}
+
+    /**
+     * Convert a wire aggregate; 64-bit fields are carried as strings so JavaScript clients don't lose precision.
+     */
+    public static AggregateDTO from(Aggregate agg) {
+        List<EwmaDTO> ewma = new ArrayList<>(agg.getEwmaCount());
+        for (Ewma average : agg.getEwmaList()) {
+            ewma.add(new EwmaDTO(String.valueOf(average.getHalfLifeMs()), average.getValue()));
+        }
+        return new AggregateDTO(
+                agg.getSymbol(),
+                agg.getOpen(),
+                agg.getHigh(),
+                agg.getLow(),
+                agg.getClose(),
+                String.valueOf(agg.getVolume()),
+                String.valueOf(agg.getTimestamp()),
+                String.valueOf(agg.getTrades()),
+                agg.getVwap(),
+                ewma,
+                agg.getVolatility()
+        );
+    }
+
+    /**
+     * Placeholder served by the client fallbacks while the aggregator is unreachable.
+     */
+    public static AggregateDTO offline(String symbol) {
+        return new AggregateDTO(symbol, 0.0, 0.0, 0.0, 0.0, "0", "0", "0", 0.0, List.of(), 0.0);
+    }
+}
@@ -0,0 +1,65 @@
+package com.marketdata.gateway.model;
+
+import com.marketdata.proto.Aggregate;
+import com.marketdata.proto.Interval;
+
+import java.util.Locale;
+
+public record CandleDTO(
+    String symbol,
+    String interval,
+    double open,
+    double high,
+    double low,
+    double close,
+    String volume,
+    String startTimestamp,
+    String timestamp,
+    String trades,
+    double vwap
+) {
+
+    /**
+     * Convert a closed bar; 64-bit fields are carried as strings so JavaScript clients don't lose precision.
+     */
+    public static CandleDTO from(Aggregate bar) {
+        return new CandleDTO(
+                bar.getSymbol(),
+                label(bar.getInterval()),
+                bar.getOpen(),
+                bar.getHigh(),
+                bar.getLow(),
+                bar.getClose(),
+                String.valueOf(bar.getVolume()),
+                String.valueOf(bar.getStartTimestamp()),
+                String.valueOf(bar.getTimestamp()),
+                String.valueOf(bar.getTrades()),
+                bar.getVwap()
+        );
+    }
+
+    /**
+     * Map a bar width as written by clients ({@code 1s}, {@code 1m}, {@code 5m}, {@code 1h}).
+     *
+     * @throws IllegalArgumentException for any other value
+     */
+    public static Interval interval(String label) {
+        return switch (label.trim().toLowerCase(Locale.ROOT)) {
+            case "1s" -> Interval.INTERVAL_1S;
+            case "1m" -> Interval.INTERVAL_1M;
+            case "5m" -> Interval.INTERVAL_5M;
+            case "1h" -> Interval.INTERVAL_1H;
+            default -> throw new IllegalArgumentException("Unknown interval: " + label + " (expected 1s, 1m, 5m or 1h)");
+        };
+    }
+
+    private static String label(Interval interval) {
+        return switch (interval) {
+            case INTERVAL_1S -> "1s";
+            case INTERVAL_1M -> "1m";
+            case INTERVAL_5M -> "5m";
+            case INTERVAL_1H -> "1h";
+            default -> "session";
+        };
+    }
+}
@@ -0,0 +1,37 @@
+package com.marketdata.gateway.model;
+
+import com.marketdata.proto.Mover;
+import com.marketdata.proto.MoverMetric;
+
+import java.util.Locale;
+
+public record MoverDTO(
+    String symbol,
+    double value,
+    AggregateDTO session
+) {
+
+    public static MoverDTO from(Mover mover) {
+        return new MoverDTO(
+                mover.getSymbol(),
+                mover.getValue(),
+                mover.hasSession() ? AggregateDTO.from(mover.getSession()) : null
+        );
+    }
+
+    /**
+     * Map a ranking as written by clients ({@code gainers}, {@code losers}, {@code volume}, {@code tickRate}).
+     *
+     * @throws IllegalArgumentException for any other value
+     */
+    public static MoverMetric metric(String label) {
+        return switch (label.trim().toLowerCase(Locale.ROOT)) {
+            case "gainers" -> MoverMetric.MOVER_GAINERS;
+            case "losers" -> MoverMetric.MOVER_LOSERS;
+            case "volume" -> MoverMetric.MOVER_VOLUME;
+            case "tickrate" -> MoverMetric.MOVER_TICK_RATE;
+            default -> throw new IllegalArgumentException(
+                    "Unknown metric: " + label + " (expected gainers, losers, volume or tickRate)");
+        };
+    }
+}
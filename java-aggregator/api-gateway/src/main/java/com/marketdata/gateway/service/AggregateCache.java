@@ -0,0 +1,199 @@
+package com.marketdata.gateway.service;
+
+import com.marketdata.gateway.config.AggregatorCluster;
+import com.marketdata.proto.Aggregate;
+import com.marketdata.proto.AggregateRequest;
+import com.marketdata.proto.PublishRate;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory replica of every aggregate, kept current by one long-lived
+ * {@code StreamAggregates} subscription to all symbols on each aggregator node, at
+ * {@code PUBLISH_REALTIME}.
+ *
+ * Reads are a map lookup. While a node's feed is down its symbols are kept but not
+ * served, so callers fall back to the blocking stub; the stream is re-opened with
+ * backoff and the node resends every symbol's current state on reconnect.
+ */
+@Service
+public class AggregateCache {
+
+    /**
+     * A replicated aggregate and when it arrived.
+     */
+    public record Entry(Aggregate aggregate, long receivedAtNanos) {
+        public long ageMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - receivedAtNanos);
+        }
+    }
+
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private final AggregatorCluster cluster;
+    private final boolean enabled;
+    private final Feed[] feeds;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reconnector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "aggregate-cache-feed");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile long lastUpdateNanos;
+    private volatile boolean shuttingDown;
+
+    public AggregateCache(AggregatorCluster cluster,
+                          @Value("${market.data.cache.enabled:true}") boolean enabled) {
+        this.cluster = cluster;
+        this.enabled = enabled;
+        this.feeds = new Feed[cluster.size()];
+        for (int node = 0; node < feeds.length; node++) {
+            feeds[node] = new Feed(node);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            for (Feed feed : feeds) {
+                feed.subscribe();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        shuttingDown = true;
+        reconnector.shutdownNow();
+        for (Feed feed : feeds) {
+            ClientCallStreamObserver<AggregateRequest> current = feed.call;
+            if (current != null) {
+                current.cancel("gateway shutting down", null);
+            }
+        }
+    }
+
+    /**
+     * @return the replicated entry, or null on a miss or while the owning node's feed is down
+     */
+    public Entry lookup(String symbol) {
+        return served(symbol) ? entries.get(symbol) : null;
+    }
+
+    /**
+     * @return the entries that are available, keyed by symbol, in request order
+     */
+    public Map<String, Entry> lookupAll(Collection<String> symbols) {
+        Map<String, Entry> hits = new LinkedHashMap<>();
+        for (String symbol : symbols) {
+            Entry entry = served(symbol) ? entries.get(symbol) : null;
+            if (entry != null) {
+                hits.put(symbol, entry);
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * @return true if the feed from every node is up
+     */
+    public boolean isConnected() {
+        for (Feed feed : feeds) {
+            if (!feed.connected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return milliseconds since the feed last delivered anything, or -1 if it never has
+     */
+    public long lastUpdateAgeMillis() {
+        long last = lastUpdateNanos;
+        return last == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - last);
+    }
+
+    private boolean served(String symbol) {
+        return feeds.length == 1 ? feeds[0].connected : feeds[cluster.ownerOf(symbol)].connected;
+    }
+
+    /**
+     * The all-symbols subscription to one node.
+     */
+    private final class Feed {
+        private final int node;
+        private volatile boolean connected;
+        private volatile ClientCallStreamObserver<AggregateRequest> call;
+        private volatile long backoffMs = 500;
+
+        Feed(int node) {
+            this.node = node;
+        }
+
+        void subscribe() {
+            // An empty symbol subscribes to every symbol; realtime regardless of the node's
+            // marketdata.publish.default, so cached reads are never throttled
+            AggregateRequest request = AggregateRequest.newBuilder()
+                    .setRate(PublishRate.PUBLISH_REALTIME)
+                    .build();
+            cluster.asyncStub(node).streamAggregates(request, new ClientResponseObserver<AggregateRequest, Aggregate>() {
+                @Override
+                public void beforeStart(ClientCallStreamObserver<AggregateRequest> requestStream) {
+                    call = requestStream;
+                }
+
+                @Override
+                public void onNext(Aggregate agg) {
+                    long now = System.nanoTime();
+                    entries.put(agg.getSymbol(), new Entry(agg, now));
+                    lastUpdateNanos = now;
+                    if (!connected) {
+                        connected = true;
+                        backoffMs = 500;
+                        System.out.println("Aggregate cache feed connected: " + cluster.node(node));
+                    }
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    System.err.println("Aggregate cache feed error from " + cluster.node(node) + ": " + t.getMessage());
+                    reconnect();
+                }
+
+                @Override
+                public void onCompleted() {
+                    System.out.println("Aggregate cache feed completed: " + cluster.node(node));
+                    reconnect();
+                }
+            });
+        }
+
+        synchronized void reconnect() {
+            connected = false;
+            if (shuttingDown) {
+                return;
+            }
+            long delay = backoffMs;
+            backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+            reconnector.schedule(this::subscribe, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+}
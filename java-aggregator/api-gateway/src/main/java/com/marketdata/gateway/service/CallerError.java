@@ -0,0 +1,24 @@
+package com.marketdata.gateway.service;
+
+import io.grpc.Status;
+
+import java.util.function.Predicate;
+
+/**
+ * Matches failures caused by the request itself: an argument the gateway rejected, or an
+ * {@code INVALID_ARGUMENT} status from a node. Retrying them cannot succeed and they say
+ * nothing about the backend's health, so the {@code marketData} circuit breaker ignores
+ * them (see application.properties) and the fallbacks rethrow them.
+ */
+public class CallerError implements Predicate<Throwable> {
+
+    @Override
+    public boolean test(Throwable t) {
+        return is(t);
+    }
+
+    public static boolean is(Throwable t) {
+        return t instanceof IllegalArgumentException
+                || Status.fromThrowable(t).getCode() == Status.Code.INVALID_ARGUMENT;
+    }
+}
@@ -0,0 +1,42 @@
+package com.marketdata.gateway.service;
+
+import com.marketdata.gateway.model.AggregateDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Front of {@link MarketDataClientService} that turns concurrent reads of the same symbol
+ * into one resilient backend call, so backend load (and retry and rate-limiter budget)
+ * follows the number of distinct symbols rather than the number of requests.
+ *
+ * It sits outside the resilience4j proxy: waiters share the outcome of one decorated call,
+ * including its fallback. Fallback placeholders are never reused after the call ends.
+ */
+@Service
+public class CoalescingMarketDataClient {
+
+    private final MarketDataClientService clientService;
+    private final SingleFlight<String, AggregateDTO> flights;
+
+    public CoalescingMarketDataClient(MarketDataClientService clientService,
+                                      @Value("${market.data.coalesce.freshnessMs:25}") long freshnessMs) {
+        this.clientService = clientService;
+        this.flights = new SingleFlight<>(freshnessMs, TimeUnit.MILLISECONDS,
+                dto -> !dto.equals(AggregateDTO.offline(dto.symbol())));
+    }
+
+    public AggregateDTO getAggregate(String symbol) {
+        return flights.get(symbol, clientService::getAggregate);
+    }
+
+    /**
+     * @return aggregates keyed by symbol, in request order; symbols without data are absent
+     */
+    public Map<String, AggregateDTO> getAggregates(Collection<String> symbols) {
+        return flights.getAll(symbols, clientService::getAggregates);
+    }
+}
@@ -1,30 +1,24 @@
 package com.marketdata.gateway.service;
 
 import com.marketdata.gateway.model.AggregateDTO;
-import com.marketdata.proto.Aggregate;
-import com.marketdata.proto.AggregateRequest;
-import com.marketdata.proto.MarketDataServiceGrpc;
-import io.grpc.stub.StreamObserver;
 import jakarta.annotation.PostConstruct;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 @Service
 public class GrpcStreamManager {
 
     private final SimpMessagingTemplate messagingTemplate;
-    private final MarketDataServiceGrpc.MarketDataServiceStub asyncStub;
+    private final SubscriptionMultiplexer multiplexer;
 
-    private final ExecutorService executor = Executors.newCachedThreadPool();
-    private final ConcurrentHashMap<String, Boolean> activeStreams = new ConcurrentHashMap<>();
+    // Unsubscribe handles, by symbol
+    private final ConcurrentHashMap<String, Runnable> activeStreams = new ConcurrentHashMap<>();
 
-    public GrpcStreamManager(MarketDataServiceGrpc.MarketDataServiceStub asyncStub,
+    public GrpcStreamManager(SubscriptionMultiplexer multiplexer,
                              SimpMessagingTemplate messagingTemplate) {
-        this.asyncStub = asyncStub;
+        this.multiplexer = multiplexer;
         this.messagingTemplate = messagingTemplate;
     }
 
@@ -38,42 +32,15 @@ public class GrpcStreamManager {
     }
 
     public void startStream(String symbol) {
-        if (activeStreams.containsKey(symbol)) {
-            return;
-        }
-        activeStreams.put(symbol, true);
-
-        AggregateRequest request = AggregateRequest.newBuilder()
-                .setSymbol(symbol)
-                .build();
-
-        asyncStub.streamAggregates(request, new StreamObserver<Aggregate>() {
-            @Override
-            public void onNext(Aggregate agg) {
-                AggregateDTO dto = new AggregateDTO(
-                        agg.getSymbol(),
-                        agg.getOpen(),
-                        agg.getHigh(),
-                        agg.getLow(),
-                        agg.getClose(),
-                        String.valueOf(agg.getVolume()),
-                        String.valueOf(agg.getTimestamp())
-                );
-                messagingTemplate.convertAndSend("/topic/market-data/" + symbol, dto);
-            }
-
-            @Override
-            public void onError(Throwable t) {
-                System.err.println("Stream error for " + symbol + ": " + t.getMessage());
-                activeStreams.remove(symbol);
-                // Simple retry mechanism could go here
-            }
+        // The multiplexer re-subscribes after upstream failures, so a topic stays fed once started
+        activeStreams.computeIfAbsent(symbol, s -> multiplexer.subscribe(s, agg ->
+                messagingTemplate.convertAndSend("/topic/market-data/" + s, AggregateDTO.from(agg))));
+    }
 
-            @Override
-            public void onCompleted() {
-                System.out.println("Stream completed for " + symbol);
-                activeStreams.remove(symbol);
-            }
-        });
+    public void stopStream(String symbol) {
+        Runnable unsubscribe = activeStreams.remove(symbol);
+        if (unsubscribe != null) {
+            unsubscribe.run();
+        }
     }
 }
@@ -1,21 +1,46 @@
 package com.marketdata.gateway.service;
 
+import com.marketdata.gateway.config.AggregatorCluster;
 import com.marketdata.gateway.model.AggregateDTO;
+import com.marketdata.gateway.model.CandleDTO;
+import com.marketdata.gateway.model.MoverDTO;
 import com.marketdata.proto.Aggregate;
+import com.marketdata.proto.AggregateList;
 import com.marketdata.proto.AggregateRequest;
-import com.marketdata.proto.MarketDataServiceGrpc;
+import com.marketdata.proto.AggregatesRequest;
+import com.marketdata.proto.CandleList;
+import com.marketdata.proto.CandlesRequest;
+import com.marketdata.proto.Interval;
+import com.marketdata.proto.Mover;
+import com.marketdata.proto.MoverMetric;
+import com.marketdata.proto.TopMovers;
+import com.marketdata.proto.TopMoversRequest;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.ratelimiter.annotation.RateLimiter;
 import io.github.resilience4j.retry.annotation.Retry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 @Service
 public class MarketDataClientService {
 
-    private final MarketDataServiceGrpc.MarketDataServiceBlockingStub marketDataStub;
+    private final AggregatorCluster cluster;
+    private final int moversMaxN;
 
-    public MarketDataClientService(MarketDataServiceGrpc.MarketDataServiceBlockingStub marketDataStub) {
-        this.marketDataStub = marketDataStub;
+    public MarketDataClientService(AggregatorCluster cluster,
+                                   @Value("${market.data.movers.maxN:100}") int moversMaxN) {
+        this.cluster = cluster;
+        this.moversMaxN = moversMaxN;
     }
 
     @CircuitBreaker(name = "marketData", fallbackMethod = "getAggregateFallback")
@@ -26,33 +51,169 @@ public class MarketDataClientService {
                 .setSymbol(symbol)
                 .build();
         
-        Aggregate agg = marketDataStub.getAggregate(request);
+        Aggregate agg = cluster.blockingStubFor(symbol).getAggregate(request);
         if (agg == null) return null;
 
-        return new AggregateDTO(
-                agg.getSymbol(),
-                agg.getOpen(),
-                agg.getHigh(),
-                agg.getLow(),
-                agg.getClose(),
-                String.valueOf(agg.getVolume()),
-                String.valueOf(agg.getTimestamp())
-        );
+        return AggregateDTO.from(agg);
+    }
+
+    /**
+     * Fetch many symbols with one GetAggregates call per owning node, in parallel.
+     * No symbols means every symbol on every node.
+     *
+     * @return aggregates keyed by symbol, in request order; symbols the aggregator has no data for are absent
+     */
+    @CircuitBreaker(name = "marketData", fallbackMethod = "getAggregatesFallback")
+    @Retry(name = "marketData")
+    @RateLimiter(name = "marketData")
+    public Map<String, AggregateDTO> getAggregates(Collection<String> symbols) {
+        List<CompletableFuture<AggregateList>> calls = new ArrayList<>();
+        if (symbols.isEmpty()) {
+            AggregatesRequest all = AggregatesRequest.getDefaultInstance();
+            for (int node = 0; node < cluster.size(); node++) {
+                calls.add(cluster.call(node, (stub, observer) -> stub.getAggregates(all, observer)));
+            }
+        } else {
+            cluster.partition(symbols).forEach((node, owned) -> {
+                AggregatesRequest request = AggregatesRequest.newBuilder()
+                        .addAllSymbols(owned)
+                        .build();
+                calls.add(cluster.call(node, (stub, observer) -> stub.getAggregates(request, observer)));
+            });
+        }
+
+        Map<String, AggregateDTO> found = new HashMap<>();
+        Map<String, AggregateDTO> result = new LinkedHashMap<>();
+        for (CompletableFuture<AggregateList> call : calls) {
+            AggregateList list;
+            try {
+                list = call.join();
+            } catch (CompletionException e) {
+                // Surface the gRPC status itself so retry and circuit breaker see it
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+            for (Aggregate agg : list.getAggregatesList()) {
+                (symbols.isEmpty() ? result : found).put(agg.getSymbol(), AggregateDTO.from(agg));
+            }
+        }
+        for (String symbol : symbols) {
+            AggregateDTO dto = found.get(symbol);
+            if (dto != null) {
+                result.put(symbol, dto);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Closed bars of one symbol starting in {@code [from, to)} (epoch nanoseconds, to 0 = open-ended),
+     * from the node that owns the symbol.
+     *
+     * @param limit keep only the most recent bars of the range; 0 keeps all
+     * @return bars oldest first
+     */
+    @CircuitBreaker(name = "marketData", fallbackMethod = "getCandlesFallback")
+    @Retry(name = "marketData")
+    @RateLimiter(name = "marketData")
+    public List<CandleDTO> getCandles(String symbol, Interval interval, long from, long to, int limit) {
+        CandlesRequest request = CandlesRequest.newBuilder()
+                .setSymbol(symbol)
+                .setInterval(interval)
+                .setFromTimestamp(from)
+                .setToTimestamp(to)
+                .setLimit(limit)
+                .build();
+
+        CandleList list = cluster.blockingStubFor(symbol).getCandles(request);
+        List<CandleDTO> result = new ArrayList<>(list.getCandlesCount());
+        for (Aggregate bar : list.getCandlesList()) {
+            result.add(CandleDTO.from(bar));
+        }
+        return result;
+    }
+
+    /**
+     * The top {@code n} symbols of a ranking across the cluster: each node ranks the symbols
+     * it owns, so the node lists are merged and cut to {@code n}.
+     *
+     * @return best first (lowest % change first for losers)
+     * @throws IllegalArgumentException if {@code n} is outside 1..{@code market.data.movers.maxN};
+     *         not retried or counted by the circuit breaker
+     */
+    @CircuitBreaker(name = "marketData", fallbackMethod = "getTopMoversFallback")
+    @Retry(name = "marketData")
+    @RateLimiter(name = "marketData")
+    public List<MoverDTO> getTopMovers(MoverMetric metric, int n) {
+        if (n < 1 || n > moversMaxN) {
+            throw new IllegalArgumentException("n must be between 1 and " + moversMaxN + ": " + n);
+        }
+        TopMoversRequest request = TopMoversRequest.newBuilder()
+                .setMetric(metric)
+                .setN(n)
+                .build();
+        List<CompletableFuture<TopMovers>> calls = new ArrayList<>();
+        for (int node = 0; node < cluster.size(); node++) {
+            calls.add(cluster.call(node, (stub, observer) -> stub.getTopMovers(request, observer)));
+        }
+
+        List<Mover> merged = new ArrayList<>();
+        for (CompletableFuture<TopMovers> call : calls) {
+            try {
+                merged.addAll(call.join().getMoversList());
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        Comparator<Mover> order = Comparator.comparingDouble(Mover::getValue);
+        if (metric != MoverMetric.MOVER_LOSERS) {
+            order = order.reversed();
+        }
+        merged.sort(order.thenComparing(Mover::getSymbol));
+
+        List<MoverDTO> result = new ArrayList<>(Math.min(n, merged.size()));
+        for (Mover mover : merged.subList(0, Math.min(n, merged.size()))) {
+            result.add(MoverDTO.from(mover));
+        }
+        return result;
     }
 
     // Fallback method must have same signature + Throwable
     public AggregateDTO getAggregateFallback(String symbol, Throwable t) {
+        rethrowCallerError(t);
         System.err.println("Fallback triggered for " + symbol + ": " + t.getMessage());
         // Return a safe default or empty object, or even null if acceptable
         // For now, let's return a dummy object to indicate offline mode
-        return new AggregateDTO(
-                symbol,
-                0.0,
-                0.0,
-                0.0,
-                0.0,
-                "0",
-                "0"
-        );
+        return AggregateDTO.offline(symbol);
+    }
+
+    public Map<String, AggregateDTO> getAggregatesFallback(Collection<String> symbols, Throwable t) {
+        rethrowCallerError(t);
+        System.err.println("Fallback triggered for " + symbols.size() + " symbols: " + t.getMessage());
+        Map<String, AggregateDTO> result = new LinkedHashMap<>();
+        for (String symbol : symbols) {
+            result.put(symbol, AggregateDTO.offline(symbol));
+        }
+        return result;
+    }
+
+    public List<CandleDTO> getCandlesFallback(String symbol, Interval interval, long from, long to, int limit,
+                                              Throwable t) {
+        rethrowCallerError(t);
+        System.err.println("Fallback triggered for candles of " + symbol + ": " + t.getMessage());
+        return List.of();
+    }
+
+    public List<MoverDTO> getTopMoversFallback(MoverMetric metric, int n, Throwable t) {
+        rethrowCallerError(t);
+        System.err.println("Fallback triggered for top movers " + metric + ": " + t.getMessage());
+        return List.of();
+    }
+
+    // A rejected request is the caller's mistake, not an outage: report it instead of a default
+    private static void rethrowCallerError(Throwable t) {
+        if (CallerError.is(t)) {
+            throw t instanceof IllegalArgumentException e ? e
+                    : new IllegalArgumentException(t.getMessage(), t);
+        }
     }
 }
@@ -0,0 +1,14 @@
+package com.marketdata.gateway.service;
+
+import java.util.function.Predicate;
+
+/**
+ * Retry predicate of the {@code marketData} instance: every failure except a {@link CallerError}.
+ */
+public class RetryableError implements Predicate<Throwable> {
+
+    @Override
+    public boolean test(Throwable t) {
+        return !CallerError.is(t);
+    }
+}
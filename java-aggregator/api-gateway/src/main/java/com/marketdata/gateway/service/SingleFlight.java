@@ -0,0 +1,176 @@
+package com.marketdata.gateway.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller runs the loader and every
+ * caller that arrives while it is running waits for and shares its result (or failure).
+ *
+ * A completed result is also reused for {@code freshness} afterwards, so a burst that
+ * arrives just after a load finishes doesn't trigger another one. Failures and values
+ * rejected by {@code reusable} are shared with waiters but never reused. Expired results
+ * are swept whenever a result is recorded and the last sweep is older than the
+ * freshness window, so keys that are never read again do not accumulate.
+ */
+public final class SingleFlight<K, V> {
+
+    private record Loaded<V>(V value, long loadedAtNanos) {
+    }
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Map<K, Loaded<V>> recent = new ConcurrentHashMap<>();
+    private final long freshnessNanos;
+    private final Predicate<V> reusable;
+    private final AtomicLong lastSweepNanos = new AtomicLong(System.nanoTime());
+
+    public SingleFlight(long freshness, TimeUnit unit, Predicate<V> reusable) {
+        this.freshnessNanos = unit.toNanos(freshness);
+        this.reusable = reusable;
+    }
+
+    /**
+     * Load one key, joining a load of it already in progress.
+     */
+    public V get(K key, Function<K, V> loader) {
+        Loaded<V> fresh = fresh(key);
+        if (fresh != null) {
+            return fresh.value();
+        }
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            return join(running);
+        }
+        try {
+            V value = loader.apply(key);
+            remember(key, value);
+            mine.complete(value);
+            return value;
+        } catch (Throwable e) {
+            // Errors too, or every waiter would hang on a future nobody completes
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Load many keys: keys already being loaded are joined, and the rest go to one call of
+     * {@code loader}. Keys the loader leaves out are absent from the result.
+     *
+     * @return loaded values in {@code keys} order
+     */
+    public Map<K, V> getAll(Collection<K> keys, Function<List<K>, Map<K, V>> loader) {
+        Map<K, V> found = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> joined = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> mine = new LinkedHashMap<>();
+        for (K key : new LinkedHashSet<>(keys)) {
+            Loaded<V> fresh = fresh(key);
+            if (fresh != null) {
+                found.put(key, fresh.value());
+                continue;
+            }
+            CompletableFuture<V> claim = new CompletableFuture<>();
+            CompletableFuture<V> running = inFlight.putIfAbsent(key, claim);
+            if (running != null) {
+                joined.put(key, running);
+            } else {
+                mine.put(key, claim);
+            }
+        }
+
+        if (!mine.isEmpty()) {
+            try {
+                Map<K, V> loaded = loader.apply(new ArrayList<>(mine.keySet()));
+                mine.forEach((key, claim) -> {
+                    V value = loaded.get(key);
+                    if (value != null) {
+                        remember(key, value);
+                        found.put(key, value);
+                    }
+                    claim.complete(value);
+                });
+            } catch (Throwable e) {
+                mine.values().forEach(claim -> claim.completeExceptionally(e));
+                throw e;
+            } finally {
+                mine.forEach(inFlight::remove);
+            }
+        }
+        joined.forEach((key, running) -> {
+            V value = join(running);
+            if (value != null) {
+                found.put(key, value);
+            }
+        });
+
+        Map<K, V> ordered = new LinkedHashMap<>();
+        for (K key : keys) {
+            V value = found.get(key);
+            if (value != null) {
+                ordered.put(key, value);
+            }
+        }
+        return ordered;
+    }
+
+    private Loaded<V> fresh(K key) {
+        if (freshnessNanos == 0) {
+            return null;
+        }
+        Loaded<V> loaded = recent.get(key);
+        if (loaded == null) {
+            return null;
+        }
+        if (System.nanoTime() - loaded.loadedAtNanos() > freshnessNanos) {
+            recent.remove(key, loaded);
+            return null;
+        }
+        return loaded;
+    }
+
+    // Recorded before the in-flight entry is removed, so no caller can miss both
+    private void remember(K key, V value) {
+        if (freshnessNanos > 0 && value != null && reusable.test(value)) {
+            long now = System.nanoTime();
+            recent.put(key, new Loaded<>(value, now));
+            sweep(now);
+        }
+    }
+
+    // At most one sweep per freshness window, run by whichever caller notices first
+    private void sweep(long now) {
+        long last = lastSweepNanos.get();
+        if (now - last < freshnessNanos || !lastSweepNanos.compareAndSet(last, now)) {
+            return;
+        }
+        recent.values().removeIf(loaded -> now - loaded.loadedAtNanos() > freshnessNanos);
+    }
+
+    private static <V> V join(CompletableFuture<V> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
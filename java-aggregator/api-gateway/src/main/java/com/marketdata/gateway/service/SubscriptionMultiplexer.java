@@ -0,0 +1,226 @@
+package com.marketdata.gateway.service;
+
+import com.marketdata.gateway.config.AggregatorCluster;
+import com.marketdata.proto.Aggregate;
+import com.marketdata.proto.PublishRate;
+import com.marketdata.proto.SubscriptionAction;
+import com.marketdata.proto.SubscriptionCommand;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Shares one upstream {@code Subscribe} stream per aggregator node among every gateway
+ * consumer; each symbol is added on the stream of the node that owns it.
+ *
+ * The first local listener of a symbol sends an ADD command upstream and the last one
+ * to leave sends REMOVE, so the aggregator holds one listener per symbol no matter how
+ * many browsers watch it. If a node's stream fails it is re-opened with backoff and
+ * every symbol still wanted from that node is re-added.
+ *
+ * Symbols are added at {@code market.data.publishRate}: browsers cannot use more than a
+ * few updates per second, so by default the aggregator coalesces each symbol to at
+ * most one update per fast interval before anything crosses the network.
+ */
+@Service
+public class SubscriptionMultiplexer {
+
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    @SuppressWarnings("unchecked")
+    private static final Consumer<Aggregate>[] NONE = new Consumer[0];
+
+    private final AggregatorCluster cluster;
+    private final PublishRate rate;
+
+    // Listener arrays are copy-on-write; changes happen under this monitor
+    private final Map<String, Consumer<Aggregate>[]> listeners = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService reconnector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "subscription-upstream");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // One Subscribe stream per aggregator node; null while that node is not connected
+    private final ClientCallStreamObserver<SubscriptionCommand>[] upstreams;
+    private final long[] backoffMs;
+    private boolean shuttingDown;
+
+    @SuppressWarnings("unchecked")
+    public SubscriptionMultiplexer(AggregatorCluster cluster,
+                                   @Value("${market.data.publishRate:fast}") String publishRate) {
+        this.cluster = cluster;
+        this.rate = PublishRate.valueOf("PUBLISH_" + publishRate.trim().toUpperCase(Locale.ROOT));
+        this.upstreams = new ClientCallStreamObserver[cluster.size()];
+        this.backoffMs = new long[cluster.size()];
+        Arrays.fill(backoffMs, 500);
+    }
+
+    /**
+     * Receive every update of a symbol until the returned handle is run.
+     * Listeners run on the gRPC callback thread and must not block.
+     */
+    public synchronized Runnable subscribe(String symbol, Consumer<Aggregate> listener) {
+        Consumer<Aggregate>[] current = listeners.getOrDefault(symbol, NONE);
+        Consumer<Aggregate>[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = listener;
+        listeners.put(symbol, next);
+        if (current.length == 0) {
+            send(SubscriptionAction.SUBSCRIPTION_ADD, symbol);
+        }
+        return () -> unsubscribe(symbol, listener);
+    }
+
+    /**
+     * @return symbols with at least one local listener
+     */
+    public int symbolCount() {
+        return listeners.size();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        shuttingDown = true;
+        reconnector.shutdownNow();
+        for (ClientCallStreamObserver<SubscriptionCommand> upstream : upstreams) {
+            if (upstream != null) {
+                upstream.cancel("gateway shutting down", null);
+            }
+        }
+    }
+
+    private synchronized void unsubscribe(String symbol, Consumer<Aggregate> listener) {
+        Consumer<Aggregate>[] current = listeners.get(symbol);
+        if (current == null) {
+            return;
+        }
+        int at = Arrays.asList(current).indexOf(listener);
+        if (at < 0) {
+            return;
+        }
+        if (current.length == 1) {
+            listeners.remove(symbol);
+            send(SubscriptionAction.SUBSCRIPTION_REMOVE, symbol);
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Consumer<Aggregate>[] next = new Consumer[current.length - 1];
+        System.arraycopy(current, 0, next, 0, at);
+        System.arraycopy(current, at + 1, next, at, current.length - at - 1);
+        listeners.put(symbol, next);
+    }
+
+    // Callers hold the monitor, which also serializes writes to the request streams
+    private void send(SubscriptionAction action, String symbol) {
+        if (shuttingDown) {
+            return;
+        }
+        int node = cluster.ownerOf(symbol);
+        if (upstreams[node] == null) {
+            if (action == SubscriptionAction.SUBSCRIPTION_ADD) {
+                // open() adds every wanted symbol of the node, including this one
+                open(node);
+            }
+            return;
+        }
+        upstreams[node].onNext(SubscriptionCommand.newBuilder()
+                .setAction(action)
+                .addSymbols(symbol)
+                .setRate(rate)
+                .build());
+    }
+
+    private void open(int node) {
+        cluster.asyncStub(node).subscribe(new ClientResponseObserver<SubscriptionCommand, Aggregate>() {
+            private ClientCallStreamObserver<SubscriptionCommand> call;
+            private boolean delivered;
+
+            @Override
+            public void beforeStart(ClientCallStreamObserver<SubscriptionCommand> requestStream) {
+                call = requestStream;
+                upstreams[node] = requestStream;
+            }
+
+            @Override
+            public void onNext(Aggregate agg) {
+                if (!delivered) {
+                    delivered = true;
+                    synchronized (SubscriptionMultiplexer.this) {
+                        backoffMs[node] = 500;
+                    }
+                }
+                Consumer<Aggregate>[] targets = listeners.get(agg.getSymbol());
+                if (targets == null) {
+                    return;
+                }
+                for (Consumer<Aggregate> target : targets) {
+                    try {
+                        target.accept(agg);
+                    } catch (RuntimeException e) {
+                        System.err.println("Subscriber failed for " + agg.getSymbol() + ": " + e.getMessage());
+                    }
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                System.err.println("Subscribe stream error from " + cluster.node(node) + ": " + t.getMessage());
+                reconnect(node, call);
+            }
+
+            @Override
+            public void onCompleted() {
+                System.out.println("Subscribe stream completed: " + cluster.node(node));
+                reconnect(node, call);
+            }
+        });
+
+        List<String> wanted = new ArrayList<>();
+        for (String symbol : listeners.keySet()) {
+            if (cluster.ownerOf(symbol) == node) {
+                wanted.add(symbol);
+            }
+        }
+        if (!wanted.isEmpty()) {
+            upstreams[node].onNext(SubscriptionCommand.newBuilder()
+                    .setAction(SubscriptionAction.SUBSCRIPTION_ADD)
+                    .addAllSymbols(wanted)
+                    .setRate(rate)
+                    .build());
+        }
+    }
+
+    private synchronized void reconnect(int node, ClientCallStreamObserver<SubscriptionCommand> failed) {
+        if (upstreams[node] != failed) {
+            // An older stream; a newer one is already in place
+            return;
+        }
+        upstreams[node] = null;
+        if (shuttingDown) {
+            return;
+        }
+        long delay = backoffMs[node];
+        backoffMs[node] = Math.min(backoffMs[node] * 2, MAX_BACKOFF_MS);
+        reconnector.schedule(() -> {
+            synchronized (this) {
+                if (upstreams[node] == null && !shuttingDown && !listeners.isEmpty()) {
+                    open(node);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+}
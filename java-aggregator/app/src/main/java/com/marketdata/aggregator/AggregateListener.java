@@ -0,0 +1,14 @@
+package com.marketdata.aggregator;
+
+/**
+ * Callback fired after a tick has been applied to a symbol's candles.
+ *
+ * Only the symbol id is passed so the ingest path allocates nothing; listeners that
+ * need the data read a snapshot back from the {@link Aggregator}.
+ * Runs on the ingesting thread, so implementations must be quick and must not block.
+ */
+@FunctionalInterface
+public interface AggregateListener {
+
+    void onUpdate(int symbolId);
+}
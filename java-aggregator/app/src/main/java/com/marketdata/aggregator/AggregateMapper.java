@@ -0,0 +1,40 @@
+package com.marketdata.aggregator;
+
+import com.marketdata.proto.Aggregate;
+import com.marketdata.proto.Ewma;
+
+/**
+ * Conversion from engine snapshots to the wire {@link Aggregate} message.
+ */
+final class AggregateMapper {
+
+    private AggregateMapper() {
+    }
+
+    static Aggregate toAggregate(Candle candle) {
+        Aggregate.Builder builder = Aggregate.newBuilder()
+                .setSymbol(candle.symbol())
+                .setInterval(candle.interval().toProto())
+                .setOpen(candle.open())
+                .setHigh(candle.high())
+                .setLow(candle.low())
+                .setClose(candle.close())
+                .setVolume(candle.volume())
+                .setStartTimestamp(candle.startTimestamp())
+                .setTimestamp(candle.timestamp())
+                .setTrades(candle.trades())
+                .setVwap(candle.vwap());
+        PriceAnalytics analytics = candle.analytics();
+        if (analytics != null) {
+            for (int k = 0; k < analytics.ewma().length; k++) {
+                builder.addEwma(Ewma.newBuilder()
+                        .setHalfLifeMs(analytics.ewmaHalfLivesMillis()[k])
+                        .setValue(analytics.ewma()[k])
+                        .build());
+            }
+            builder.setVolatility(analytics.volatility())
+                    .setVolatilityReturns(analytics.returns());
+        }
+        return builder.build();
+    }
+}
@@ -1,26 +1,70 @@
 package com.marketdata.aggregator;
 
 import com.marketdata.proto.Tick;
-import java.util.Map;
+import com.marketdata.proto.TickBatch;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.function.Consumer;
 
 /**
  * Thread-safe Aggregation Engine.
- * Maintains real-time statistics (OHLCV) for market symbols using atomic operations for performance.
+ * Maintains real-time statistics (OHLCV, VWAP and trade count) for market symbols, both as
+ * a cumulative SESSION candle and as rolling interval bars (1s/1m/5m/1h) keyed off the
+ * exchange timestamp, plus per-symbol price EWMAs and rolling volatility.
  *
- * This class ensures that high-velocity updates from multiple gRPC threads
- * are aggregated correctly.
+ * Symbols are interned to dense ids and their candles are updated in place in a
+ * primitive {@link CandleStore}, so ingesting a tick for a known symbol allocates nothing.
+ * Candle records are only created when a snapshot is read.
  */
-public class Aggregator {
+public class Aggregator implements TickSink {
+
+    /** Closed bars kept per symbol and interval. */
+    public static final int DEFAULT_HISTORY_DEPTH = 60;
+
+    private final CandleStore store;
+    private final SymbolTable symbols;
+    private final ProducerTable producers = new ProducerTable();
+    private final int historyDepth;
+
+    // Append-only tick journal; attached after startup replay, null when disabled
+    private volatile TickJournal journal;
+    // Producer sequences restored before the journal was attached
+    private volatile Map<String, Long> journalBase = Map.of();
 
-    // Store per-symbol aggregate state as immutable Candle records
-    private final Map<String, Candle> candles = new ConcurrentHashMap<>();
-    
-    // Listeners for real-time updates
-    private final List<Consumer<Candle>> listeners = new CopyOnWriteArrayList<>();
+    // Listeners for real-time updates, indexed by symbol id
+    private final SubscriptionRegistry subscriptions = new SubscriptionRegistry();
+
+    // Registries holding listeners for symbols that had not traded when they subscribed
+    private final CopyOnWriteArrayList<SubscriptionRegistry> registries = new CopyOnWriteArrayList<>(List.of(subscriptions));
+
+    public Aggregator() {
+        this(DEFAULT_HISTORY_DEPTH);
+    }
+
+    /**
+     * @param historyDepth number of closed bars retained per symbol and interval
+     */
+    public Aggregator(int historyDepth) {
+        this(historyDepth, AnalyticsSettings.DEFAULT);
+    }
+
+    /**
+     * @param historyDepth number of closed bars retained per symbol and interval
+     * @param analytics EWMA half-lives and volatility window kept per symbol
+     */
+    public Aggregator(int historyDepth, AnalyticsSettings analytics) {
+        if (historyDepth < 1) {
+            throw new IllegalArgumentException("historyDepth must be positive: " + historyDepth);
+        }
+        this.historyDepth = historyDepth;
+        this.store = new CandleStore(historyDepth, analytics);
+        this.symbols = new SymbolTable(store::reserve, this::attachWaiting);
+    }
 
     /**
      * Process an incoming tick.
@@ -29,56 +73,312 @@ public class Aggregator {
      * @param tick The incoming market tick
      */
     public void onTick(Tick tick) {
-        String symbol = tick.getSymbol();
-        double price = tick.getPrice();
-        long volume = tick.getVolume();
-        long timestamp = tick.getExchangeTimestamp(); 
-
-        candles.compute(symbol, (k, current) -> {
-            if (current == null) {
-                return new Candle(symbol, price, price, price, price, volume, timestamp);
-            }
-            
-            // Accumulate stats
-            double newHigh = Math.max(current.high(), price);
-            double newLow = Math.min(current.low(), price);
-            long newVolume = current.volume() + volume;
-            
-            return new Candle(symbol, current.open(), newHigh, newLow, price, newVolume, timestamp);
-        });
-        
+        onTick(symbols.intern(tick.getSymbol()), tick.getPrice(), tick.getVolume(), tick.getExchangeTimestamp());
+    }
+
+    @Override
+    public void onTick(int symbolId, double price, long volume, long exchangeTimestamp, long ingestTimestamp) {
+        onTick(symbolId, price, volume, exchangeTimestamp);
+    }
+
+    @Override
+    public void onTick(int symbolId, double price, long volume, long exchangeTimestamp, long ingestTimestamp,
+                       int producer, long sequence) {
+        store.update(symbolId, price, volume, exchangeTimestamp, journal, producer, sequence);
+        subscriptions.dispatch(symbolId);
+    }
+
+    /**
+     * Process a tick for an already interned symbol.
+     *
+     * @param symbolId Id from {@link #internSymbol(String)}
+     * @param price Trade price
+     * @param volume Trade quantity
+     * @param timestamp Exchange timestamp (epoch nanoseconds)
+     */
+    public void onTick(int symbolId, double price, long volume, long timestamp) {
+        store.update(symbolId, price, volume, timestamp, journal, ProducerTable.NONE, 0);
+
         // Notify listeners of the new state
-        Candle updated = candles.get(symbol);
-        if (updated != null) {
-            notifyListeners(updated);
+        subscriptions.dispatch(symbolId);
+    }
+
+    /**
+     * Apply a columnar batch in a single pass, then notify each symbol's listeners once.
+     * The batch is validated up front, so a malformed batch applies nothing.
+     *
+     * @param batch Columnar ticks
+     * @param symbolIds Interned ids of {@code batch.getSymbolsList()}, in dictionary order
+     * @return Number of ticks applied
+     * @throws IllegalArgumentException if the columns disagree in length or an index is out of range
+     */
+    @Override
+    public int onBatch(TickBatch batch, int[] symbolIds) {
+        int n = validateBatch(batch);
+        int dictionary = batch.getSymbolsCount();
+
+        TickJournal attached = journal;
+        for (int i = 0; i < n; i++) {
+            store.update(symbolIds[batch.getSymbolIndex(i)],
+                    batch.getPrice(i), batch.getVolume(i), batch.getExchangeTimestamp(i), attached,
+                    ProducerTable.NONE, 0);
+        }
+
+        // One notification per symbol in the batch rather than per tick
+        for (int i = 0; i < dictionary; i++) {
+            subscriptions.dispatch(symbolIds[i]);
+        }
+        return n;
+    }
+
+    /**
+     * Check that a batch's columns line up and every symbol index is in range.
+     *
+     * @return Number of ticks in the batch
+     * @throws IllegalArgumentException if the batch is malformed
+     */
+    static int validateBatch(TickBatch batch) {
+        int n = batch.getSymbolIndexCount();
+        int dictionary = batch.getSymbolsCount();
+        if (batch.getPriceCount() != n || batch.getVolumeCount() != n || batch.getExchangeTimestampCount() != n
+                || (batch.getIngestTimestampCount() != 0 && batch.getIngestTimestampCount() != n)) {
+            throw new IllegalArgumentException("TickBatch columns have different lengths");
+        }
+        for (int i = 0; i < n; i++) {
+            int index = batch.getSymbolIndex(i);
+            if (index < 0 || index >= dictionary) {
+                throw new IllegalArgumentException("TickBatch symbol_index out of range: " + index);
+            }
         }
+        return n;
+    }
+
+    /**
+     * Apply a tick on behalf of the only thread that writes this symbol, without
+     * notifying listeners (the caller batches notifications via {@link #dispatch(int)}).
+     *
+     * @param producer producer id journaled with the tick, or {@link ProducerTable#NONE}
+     */
+    void applyExclusive(int symbolId, double price, long volume, long timestamp, int producer, long sequence) {
+        store.updateExclusive(symbolId, price, volume, timestamp, journal, producer, sequence);
+    }
+
+    /**
+     * Apply a tick read back from the journal: not re-journaled, listeners not notified.
+     */
+    void applyReplayed(int symbolId, double price, long volume, long timestamp, long journalSeq) {
+        store.replay(symbolId, price, volume, timestamp, journalSeq);
+    }
+
+    /**
+     * @return one past the journal sequence of the symbol's last applied tick, 0 if none;
+     *         replay skips ticks below it because a loaded snapshot already contains them
+     */
+    long appliedSeq(int symbolId) {
+        return store.appliedSeq(symbolId);
     }
 
     /**
-     * Get a snapshot of the current state for a symbol.
+     * Write one symbol's candles (live bars and closed-bar history) from a consistent point.
+     *
+     * @param scratch reusable buffer of at least {@link #stateWords()} longs
+     */
+    void writeSymbolState(int symbolId, long[] scratch, DataOutput out) throws IOException {
+        long applied = store.copyState(symbolId, scratch);
+        out.writeLong(applied);
+        store.writeState(scratch, out);
+    }
+
+    /**
+     * Restore one symbol's candles written by {@link #writeSymbolState}.
+     */
+    void readSymbolState(int symbolId, DataInput in, int version) throws IOException {
+        long applied = in.readLong();
+        store.readState(symbolId, applied, in, version);
+    }
+
+    int stateWords() {
+        return store.stateWords();
+    }
+
+    /**
+     * Start journaling every accepted tick. Call once, after replay and before ingestion starts.
+     */
+    public void attachJournal(TickJournal journal) {
+        this.journalBase = producers.sequences();
+        this.journal = journal;
+    }
+
+    /**
+     * @return a journal sequence below which every tick is already in the store, with each
+     *         producer's sequence as of that point; without a journal, 0 and the current
+     *         producer sequences
+     */
+    TickJournal.Checkpoint journalCheckpoint() {
+        TickJournal attached = journal;
+        if (attached == null) {
+            return new TickJournal.Checkpoint(0, producers.sequences());
+        }
+        TickJournal.Checkpoint written = attached.checkpoint();
+        Map<String, Long> merged = new LinkedHashMap<>(journalBase);
+        written.producers().forEach((name, sequence) -> merged.merge(name, sequence, ProducerTable::later));
+        return new TickJournal.Checkpoint(written.seq(), merged);
+    }
+
+    /**
+     * @return last applied sequence per ingest producer
+     */
+    ProducerTable producers() {
+        return producers;
+    }
+
+    /**
+     * Notify the listeners of one symbol.
+     */
+    void dispatch(int symbolId) {
+        subscriptions.dispatch(symbolId);
+    }
+
+    /**
+     * @return the dense id for a symbol, assigning one if it has not been seen before
+     */
+    public int internSymbol(String symbol) {
+        return symbols.intern(symbol);
+    }
+
+    /**
+     * @return the id of a known symbol, or -1 if the symbol has never been seen
+     */
+    public int symbolId(String symbol) {
+        return symbols.idOf(symbol);
+    }
+
+    public String symbolName(int symbolId) {
+        return symbols.name(symbolId);
+    }
+
+    /**
+     * @return number of interned symbols; valid ids are {@code 0..symbolCount()-1}
+     */
+    public int symbolCount() {
+        return symbols.size();
+    }
+
+    /**
+     * Get a snapshot of the cumulative session state for a symbol.
      *
      * @param symbol Ticker symbol (e.g., "AAPL")
      * @return Candle Record containing the snapshot
      */
     public Candle getSnapshot(String symbol) {
-        return candles.get(symbol);
+        return getSnapshot(symbol, CandleInterval.SESSION);
     }
-    
+
     /**
-     * Register a listener to receive updates for all symbols.
-     * @param listener The consumer to be called with the updated Candle
-     */
-    public void registerListener(Consumer<Candle> listener) {
-        listeners.add(listener);
-    }
-    
-    private void notifyListeners(Candle candle) {
-        for (Consumer<Candle> listener : listeners) {
-            try {
-                listener.accept(candle);
-            } catch (Exception e) {
-                // Ignore listener errors to prevent affecting the ingestion flow
-            }
+     * Get a snapshot of the live bar for a symbol and interval.
+     *
+     * @param symbol Ticker symbol (e.g., "AAPL")
+     * @param interval Bar width
+     * @return Candle Record containing the snapshot, or null if the symbol has no ticks
+     */
+    public Candle getSnapshot(String symbol, CandleInterval interval) {
+        int id = symbols.idOf(symbol);
+        return id < 0 ? null : store.snapshot(id, symbol, interval);
+    }
+
+    /**
+     * Get a snapshot of the live bar for an interned symbol.
+     *
+     * @return Candle Record containing the snapshot, or null if the symbol has no ticks
+     */
+    public Candle getSnapshot(int symbolId, CandleInterval interval) {
+        return store.snapshot(symbolId, symbols.name(symbolId), interval);
+    }
+
+    /**
+     * Get the most recently closed bars for a symbol and interval.
+     *
+     * @param symbol Ticker symbol (e.g., "AAPL")
+     * @param interval Bar width (SESSION never closes and always yields an empty list)
+     * @param limit Maximum number of bars to return
+     * @return Closed candles, oldest first
+     */
+    public List<Candle> getClosedBars(String symbol, CandleInterval interval, int limit) {
+        int id = symbols.idOf(symbol);
+        if (id < 0) {
+            return Collections.emptyList();
         }
+        return store.closedBars(id, symbol, interval, limit);
+    }
+
+    /**
+     * Get the most recently closed bars for an interned symbol.
+     *
+     * @return Closed candles, oldest first
+     */
+    public List<Candle> getClosedBars(int symbolId, CandleInterval interval, int limit) {
+        return store.closedBars(symbolId, symbols.name(symbolId), interval, limit);
+    }
+
+    /**
+     * @return closed bars retained per symbol and interval
+     */
+    public int historyDepth() {
+        return historyDepth;
+    }
+
+    /**
+     * Cheap, unsynchronized read of the bucket index of a symbol's live bar. It changes
+     * whenever a bar closes, so pollers can skip symbols whose bars have not rolled.
+     */
+    public long liveBucket(int symbolId, CandleInterval interval) {
+        return store.liveBucket(symbolId, interval);
+    }
+
+    /**
+     * Register a listener for one symbol. Ticks for other symbols never reach it.
+     *
+     * @param symbol Ticker symbol; one that has not traded yet is not interned, the
+     *               listener is attached when its first tick arrives
+     * @param listener Called with the symbol's id after each of its ticks
+     * @return Handle that removes the listener
+     */
+    public Subscription subscribe(String symbol, AggregateListener listener) {
+        return subscribe(subscriptions, symbol, listener);
+    }
+
+    /**
+     * Register a listener for one symbol in another registry (e.g. a throttled publish
+     * tier), attached lazily like {@link #subscribe(String, AggregateListener)}.
+     */
+    Subscription subscribe(SubscriptionRegistry registry, String symbol, AggregateListener listener) {
+        // Registered before the lookup, so a symbol interned in between is attached by one of the two
+        registries.addIfAbsent(registry);
+        return registry.subscribe(symbol, symbols::idOf, listener);
+    }
+
+    // First sighting of a symbol, with its id already visible to lookups
+    private void attachWaiting(String symbol, int symbolId) {
+        for (SubscriptionRegistry registry : registries) {
+            registry.attach(symbol, symbolId);
+        }
+    }
+
+    /**
+     * Register a listener to receive updates for all symbols.
+     *
+     * @param listener Called with the id of every symbol that receives a tick
+     * @return Handle that removes the listener
+     */
+    public Subscription subscribeAll(AggregateListener listener) {
+        return subscriptions.subscribeAll(listener);
+    }
+
+    /**
+     * @return number of single-symbol listeners currently registered for a symbol
+     */
+    public int subscriberCount(String symbol) {
+        int id = symbols.idOf(symbol);
+        return id < 0 ? 0 : subscriptions.subscriberCount(id);
     }
 }
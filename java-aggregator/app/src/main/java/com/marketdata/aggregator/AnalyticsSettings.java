@@ -0,0 +1,32 @@
+package com.marketdata.aggregator;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Per-symbol price analytics maintained by the {@link Aggregator} on every tick.
+ *
+ * @param ewmaHalfLives one time-decayed moving average of the price per half-life; empty disables them
+ * @param volatilityWindow span of the rolling volatility, ending at the symbol's last tick
+ * @param volatilityBuckets sub-buckets the window slides by; 0 disables volatility
+ */
+public record AnalyticsSettings(List<Duration> ewmaHalfLives, Duration volatilityWindow, int volatilityBuckets) {
+
+    /** EWMAs with 1 s, 10 s and 60 s half-lives; volatility over 5 minutes in 5-second buckets. */
+    public static final AnalyticsSettings DEFAULT = new AnalyticsSettings(
+            List.of(Duration.ofSeconds(1), Duration.ofSeconds(10), Duration.ofSeconds(60)),
+            Duration.ofMinutes(5), 60);
+
+    public AnalyticsSettings {
+        ewmaHalfLives = List.copyOf(ewmaHalfLives);
+        for (Duration halfLife : ewmaHalfLives) {
+            if (halfLife.isNegative() || halfLife.isZero()) {
+                throw new IllegalArgumentException("EWMA half-life must be positive: " + halfLife);
+            }
+        }
+        if (volatilityBuckets < 0 || (volatilityBuckets > 0 && volatilityWindow.toNanos() < volatilityBuckets)) {
+            throw new IllegalArgumentException("Invalid volatility window " + volatilityWindow
+                    + " with " + volatilityBuckets + " buckets");
+        }
+    }
+}
@@ -8,10 +8,15 @@ package com.marketdata.aggregator;
  */
 public record Candle(
     String symbol,
+    CandleInterval interval,
     double open,
     double high,
     double low,
     double close,
     long volume,
-    long timestamp // Start time of this candle
+    long startTimestamp, // Start time of this candle (bucket start, or first tick for SESSION)
+    long timestamp,      // Exchange timestamp of the last tick folded into this candle
+    long trades,         // Ticks folded into this candle
+    double vwap,         // Volume-weighted average price (close if the candle has no volume)
+    PriceAnalytics analytics // Symbol-wide statistics for live snapshots; null for closed bars
 ) {}
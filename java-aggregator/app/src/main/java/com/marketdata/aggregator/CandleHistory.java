@@ -0,0 +1,274 @@
+package com.marketdata.aggregator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent history of closed bars, one {@link CandleSeries} file per symbol and
+ * interval under {@code <dir>/<interval>/<symbol>.candles}.
+ *
+ * A harvester thread checks every symbol's live bucket once per {@value #HARVEST_MILLIS} ms
+ * with a plain read; only symbols whose bar rolled since the last pass have their closed
+ * bars copied out of the {@link Aggregator}'s ring and the new ones appended, so ingestion
+ * is never slowed down. The ring must hold more bars than close between two passes,
+ * which the default depth does for every interval.
+ *
+ * Appended bars are buffered per series and sealed into the file when a block fills,
+ * when the oldest buffered bar has waited long enough, and on close. The wait is
+ * {@code sealSeconds}, but at least the time half the aggregator's ring of bars takes to
+ * close, so slow intervals such as 1h still write blocks of many bars rather than one.
+ * Buffered bars are still served by queries but are lost from the files if the process
+ * dies; journal replay and snapshots restore only the in-memory ring, from which the bars
+ * still in it are harvested again.
+ *
+ * At most {@value #MAPPED_SERIES} series keep their file mapped between queries; the
+ * least recently queried one is released when another is mapped.
+ */
+public final class CandleHistory implements AutoCloseable {
+
+    private static final long HARVEST_MILLIS = 1000;
+    private static final String SUFFIX = ".candles";
+    private static final int MAPPED_SERIES = 256;
+
+    private final Path directory;
+    private final Aggregator aggregator;
+    private final CandleInterval[] intervals;
+    private final long[] sealNanos;
+    private final Map<CandleInterval, Map<String, CandleSeries>> series = new EnumMap<>(CandleInterval.class);
+
+    // Series queried most recently last; guarded by itself
+    private final Map<CandleSeries, Boolean> mapped = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CandleSeries, Boolean> eldest) {
+            if (size() > MAPPED_SERIES) {
+                eldest.getKey().release();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    // Harvester state: live bucket last seen per persisted interval and symbol id
+    private long[][] seenBucket;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param intervals bar widths to persist; SESSION never closes and is rejected
+     * @param sealSeconds shortest time a closed bar may stay buffered before a partial
+     *        block is written
+     */
+    public CandleHistory(Path directory, Aggregator aggregator, Collection<CandleInterval> intervals,
+                         int sealSeconds) throws IOException {
+        if (sealSeconds < 1) {
+            throw new IllegalArgumentException("sealSeconds must be positive: " + sealSeconds);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.aggregator = aggregator;
+        this.intervals = intervals.stream().distinct().toArray(CandleInterval[]::new);
+        this.sealNanos = new long[CandleInterval.values().length];
+        int batch = Math.max(1, Math.min(CandleSeries.BLOCK_BARS, aggregator.historyDepth() / 2));
+        for (CandleInterval interval : this.intervals) {
+            if (!interval.rollsOver()) {
+                throw new IllegalArgumentException("Interval " + interval + " has no closed bars to persist");
+            }
+            sealNanos[interval.ordinal()] = Math.max(TimeUnit.SECONDS.toNanos(sealSeconds),
+                    interval.widthNanos() * batch);
+            Files.createDirectories(directory.resolve(interval.label()));
+            series.put(interval, new ConcurrentHashMap<>());
+        }
+        this.seenBucket = new long[this.intervals.length][1024];
+    }
+
+    /**
+     * Harvest closed bars every {@value #HARVEST_MILLIS} ms on a background thread.
+     */
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "candle-history");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                harvest();
+            } catch (RuntimeException e) {
+                System.err.println("[HISTORY] harvest failed: " + e);
+            }
+        }, HARVEST_MILLIS, HARVEST_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return true if closed bars of {@code interval} are written to disk
+     */
+    public boolean persists(CandleInterval interval) {
+        return series.containsKey(interval);
+    }
+
+    /**
+     * Closed bars of a symbol whose start lies in {@code [from, to)}, oldest first: those
+     * on disk or buffered, followed by any that so far exist only in the aggregator's ring.
+     * The live bar is never included.
+     *
+     * @param limit keep only the most recent {@code limit} bars of the range; 0 keeps all
+     */
+    public List<Candle> query(String symbol, CandleInterval interval, long from, long to, int limit)
+            throws IOException {
+        List<Candle> bars = new ArrayList<>();
+        long stored = Long.MIN_VALUE;
+        CandleSeries history = persists(interval) ? lookup(interval, symbol) : null;
+        if (history != null) {
+            stored = history.query(from, to, bars);
+            synchronized (mapped) {
+                mapped.put(history, Boolean.TRUE);
+            }
+        }
+        for (Candle bar : aggregator.getClosedBars(symbol, interval, aggregator.historyDepth())) {
+            long start = bar.startTimestamp();
+            if (start > stored && start >= from && start < to) {
+                bars.add(bar);
+            }
+        }
+        if (limit > 0 && bars.size() > limit) {
+            return new ArrayList<>(bars.subList(bars.size() - limit, bars.size()));
+        }
+        return bars;
+    }
+
+    /**
+     * Append the bars closed since the last pass. Called by the harvester thread, and
+     * once more on close.
+     */
+    synchronized void harvest() {
+        int count = aggregator.symbolCount();
+        if (seenBucket.length > 0 && seenBucket[0].length < count) {
+            for (int k = 0; k < seenBucket.length; k++) {
+                seenBucket[k] = Arrays.copyOf(seenBucket[k], Math.max(count, seenBucket[k].length * 2));
+            }
+        }
+        int depth = aggregator.historyDepth();
+        for (int id = 0; id < count; id++) {
+            for (int k = 0; k < intervals.length; k++) {
+                long bucket = aggregator.liveBucket(id, intervals[k]);
+                if (bucket == seenBucket[k][id]) {
+                    continue;
+                }
+                seenBucket[k][id] = bucket;
+                String symbol = aggregator.symbolName(id);
+                try {
+                    CandleSeries target = open(intervals[k], symbol);
+                    long last = target.lastStart();
+                    for (Candle bar : aggregator.getClosedBars(id, intervals[k], depth)) {
+                        if (bar.startTimestamp() > last) {
+                            target.append(bar);
+                        }
+                    }
+                } catch (IOException | UncheckedIOException e) {
+                    // Retried on the next pass
+                    seenBucket[k][id] = Long.MIN_VALUE;
+                    System.err.println("[HISTORY] " + symbol + " " + intervals[k].label() + ": " + e.getMessage());
+                }
+            }
+        }
+
+        long now = System.nanoTime();
+        for (Map.Entry<CandleInterval, Map<String, CandleSeries>> byInterval : series.entrySet()) {
+            long wait = sealNanos[byInterval.getKey().ordinal()];
+            for (CandleSeries open : byInterval.getValue().values()) {
+                if (open.tailBars() > 0 && now - open.tailSinceNanos() >= wait) {
+                    seal(open);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop harvesting, pick up the bars closed since the last pass and write every
+     * buffered bar to disk.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            harvest();
+            for (Map<String, CandleSeries> byInterval : series.values()) {
+                byInterval.values().forEach(CandleHistory::seal);
+            }
+        }
+    }
+
+    private static void seal(CandleSeries open) {
+        try {
+            open.seal();
+        } catch (IOException e) {
+            System.err.println("[HISTORY] seal failed: " + e.getMessage());
+        }
+    }
+
+    private CandleSeries open(CandleInterval interval, String symbol) throws IOException {
+        try {
+            return series.get(interval).computeIfAbsent(symbol, s -> {
+                try {
+                    return CandleSeries.open(file(interval, s), s, interval);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Queries for symbols with no file do not register a series
+    private CandleSeries lookup(CandleInterval interval, String symbol) throws IOException {
+        CandleSeries found = series.get(interval).get(symbol);
+        if (found != null || !Files.exists(file(interval, symbol))) {
+            return found;
+        }
+        return open(interval, symbol);
+    }
+
+    private Path file(CandleInterval interval, String symbol) {
+        return directory.resolve(interval.label()).resolve(fileName(symbol) + SUFFIX);
+    }
+
+    /**
+     * Symbols are kept to letters, digits, '-', '_' and non-leading '.'; every other
+     * UTF-8 byte is written as {@code %XX}, so names such as {@code BTC/USD} stay in one directory.
+     */
+    static String fileName(String symbol) {
+        StringBuilder name = new StringBuilder(symbol.length());
+        for (byte b : symbol.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            boolean plain = (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || (c == '.' && name.length() > 0);
+            if (plain) {
+                name.append(c);
+            } else {
+                name.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(c & 0xF, 16)));
+            }
+        }
+        return name.toString();
+    }
+}
@@ -0,0 +1,87 @@
+package com.marketdata.aggregator;
+
+import com.marketdata.proto.Interval;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bar widths maintained by the {@link Aggregator}.
+ *
+ * SESSION is the cumulative candle since process start and never rolls over.
+ * All other intervals are bucketed on the tick's exchange timestamp (epoch nanoseconds).
+ */
+public enum CandleInterval {
+    SESSION(0, Interval.INTERVAL_SESSION, "session"),
+    SECOND_1(TimeUnit.SECONDS.toNanos(1), Interval.INTERVAL_1S, "1s"),
+    MINUTE_1(TimeUnit.MINUTES.toNanos(1), Interval.INTERVAL_1M, "1m"),
+    MINUTE_5(TimeUnit.MINUTES.toNanos(5), Interval.INTERVAL_5M, "5m"),
+    HOUR_1(TimeUnit.HOURS.toNanos(1), Interval.INTERVAL_1H, "1h");
+
+    private static final CandleInterval[] VALUES = values();
+
+    private final long widthNanos;
+    private final Interval proto;
+    private final String label;
+
+    CandleInterval(long widthNanos, Interval proto, String label) {
+        this.widthNanos = widthNanos;
+        this.proto = proto;
+        this.label = label;
+    }
+
+    /**
+     * @return bucket width in nanoseconds, or 0 for SESSION
+     */
+    public long widthNanos() {
+        return widthNanos;
+    }
+
+    public boolean rollsOver() {
+        return widthNanos > 0;
+    }
+
+    public Interval toProto() {
+        return proto;
+    }
+
+    /**
+     * @return short name used in configuration and file names ({@code 1s}, {@code 1m}, ...)
+     */
+    public String label() {
+        return label;
+    }
+
+    /**
+     * @throws IllegalArgumentException for an unknown label
+     */
+    public static CandleInterval fromLabel(String label) {
+        for (CandleInterval value : VALUES) {
+            if (value.label.equalsIgnoreCase(label.trim())) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Unknown interval: " + label);
+    }
+
+    /**
+     * Map a wire interval to the engine interval.
+     *
+     * @throws IllegalArgumentException for values this server does not know
+     */
+    public static CandleInterval fromProto(Interval interval) {
+        for (CandleInterval value : VALUES) {
+            if (value.proto == interval) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported interval: " + interval);
+    }
+
+    static CandleInterval byOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    static int count() {
+        return VALUES.length;
+    }
+}
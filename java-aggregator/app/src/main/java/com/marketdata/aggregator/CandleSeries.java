@@ -0,0 +1,535 @@
+package com.marketdata.aggregator;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only on-disk history of one symbol's closed bars at one interval.
+ *
+ * Bars are buffered in an in-memory tail and sealed into compressed, columnar blocks of
+ * up to {@value #BLOCK_BARS} bars. The tail starts empty and grows with the bars it
+ * holds, so idle series cost only their block index. Sealed blocks are appended to the
+ * file and never rewritten; readers map the file read-only, binary-search an in-memory
+ * index of block start times and decode only the blocks a range touches. The mapping is
+ * kept between queries until {@link #release()} drops it.
+ *
+ * One thread appends and seals while any number of threads query. The writer fills
+ * arrays past the published length only and then publishes a new immutable
+ * {@link State}, so readers never see a partially written bar or block.
+ *
+ * File layout (big-endian):
+ * <pre>
+ *   header : int magic, int version, long widthNanos
+ *   block  : int bars, int payloadBytes, long firstStart, long lastStart, payload
+ * </pre>
+ * The payload holds one column after another, each covering every bar of the block:
+ * <pre>
+ *   start        : zigzag varints of the first gap, then of each gap's change (0 while bars are contiguous)
+ *   open..close  : double bits XORed with the previous bar's value, as a control byte
+ *                  (leading zero bytes &lt;&lt; 4 | trailing zero bytes) and the bytes between;
+ *                  0x88 alone means unchanged
+ *   volume       : zigzag varint of the change from the previous bar
+ *   last         : zigzag varint of the last tick's time minus the bar start
+ *   trades       : zigzag varint of the change from the previous bar (version 2)
+ *   vwap         : XOR-encoded like the prices (version 2)
+ * </pre>
+ * A file keeps the version it was created with; bars read from a version 1 file report
+ * no trades and their typical price (high + low + close) / 3 as VWAP.
+ * A block cut short by a crash is truncated away when the file is reopened.
+ */
+final class CandleSeries {
+
+    static final int MAGIC = 0x4D444348; // "MDCH"
+    static final int VERSION = 2;
+    static final int FILE_HEADER_BYTES = 16;
+    static final int BLOCK_HEADER_BYTES = 24;
+    static final int BLOCK_BARS = 256;
+
+    // Tail fields per bar; prices as raw double bits
+    private static final int START = 0;
+    private static final int LAST = 1;
+    private static final int OPEN = 2;
+    private static final int HIGH = 3;
+    private static final int LOW = 4;
+    private static final int CLOSE = 5;
+    private static final int VOLUME = 6;
+    private static final int TRADES = 7;
+    private static final int VWAP = 8;
+    private static final int BAR = 9;
+
+    private static final byte UNCHANGED = (byte) 0x88;
+    private static final long[] NO_BARS = new long[0];
+    private static final int MIN_TAIL_BARS = 8;
+
+    /**
+     * What readers see: {@code blocks} entries of the index arrays, {@code fileLength}
+     * bytes of the file and {@code tailBars} bars of the tail.
+     */
+    private record State(int blocks, long[] firstStart, long[] lastStart, int[] offset, int[] bars,
+                         int fileLength, long[] tail, int tailBars, long lastBarStart) {}
+
+    private record Mapping(ByteBuffer buffer, int length) {}
+
+    private final Path file;
+    private final String symbol;
+    private final CandleInterval interval;
+    private final int version;
+
+    private volatile State state;
+    private volatile Mapping mapping;
+
+    // Writer-only: when the oldest buffered bar was appended
+    private long tailSinceNanos;
+
+    private CandleSeries(Path file, String symbol, CandleInterval interval, int version, State state) {
+        this.file = file;
+        this.symbol = symbol;
+        this.interval = interval;
+        this.version = version;
+        this.state = state;
+    }
+
+    /**
+     * Open the history in {@code file}, or an empty one if the file does not exist yet
+     * (it is created by the first {@link #seal()}).
+     *
+     * @throws IOException if the file is unreadable or holds another interval's bars
+     */
+    static CandleSeries open(Path file, String symbol, CandleInterval interval) throws IOException {
+        long[] firstStart = new long[16];
+        long[] lastStart = new long[16];
+        int[] offset = new int[16];
+        int[] bars = new int[16];
+        int blocks = 0;
+        long pos = 0;
+        int version = VERSION;
+
+        if (Files.exists(file)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long size = channel.size();
+                if (size >= FILE_HEADER_BYTES) {
+                    ByteBuffer header = readFully(channel, 0, FILE_HEADER_BYTES);
+                    if (header.getInt() != MAGIC) {
+                        throw new IOException("Not a candle history file: " + file);
+                    }
+                    version = header.getInt();
+                    if (version < 1 || version > VERSION) {
+                        throw new IOException("Unsupported candle history version " + version + ": " + file);
+                    }
+                    if (header.getLong() != interval.widthNanos()) {
+                        throw new IOException("Candle history " + file + " holds another interval than " + interval);
+                    }
+                    pos = FILE_HEADER_BYTES;
+                    while (pos + BLOCK_HEADER_BYTES <= size) {
+                        ByteBuffer block = readFully(channel, pos, BLOCK_HEADER_BYTES);
+                        int count = block.getInt();
+                        int length = block.getInt();
+                        if (count <= 0 || count > BLOCK_BARS || length < 0
+                                || pos + BLOCK_HEADER_BYTES + length > size) {
+                            break;
+                        }
+                        if (blocks == firstStart.length) {
+                            firstStart = Arrays.copyOf(firstStart, blocks * 2);
+                            lastStart = Arrays.copyOf(lastStart, blocks * 2);
+                            offset = Arrays.copyOf(offset, blocks * 2);
+                            bars = Arrays.copyOf(bars, blocks * 2);
+                        }
+                        firstStart[blocks] = block.getLong();
+                        lastStart[blocks] = block.getLong();
+                        offset[blocks] = (int) pos;
+                        bars[blocks] = count;
+                        blocks++;
+                        pos += BLOCK_HEADER_BYTES + length;
+                    }
+                }
+                if (pos < size) {
+                    System.err.println("[HISTORY] truncating " + (size - pos) + " trailing bytes of " + file);
+                    channel.truncate(pos);
+                }
+            }
+        }
+
+        long lastBarStart = blocks == 0 ? Long.MIN_VALUE : lastStart[blocks - 1];
+        if (pos == 0) {
+            // Empty or truncated to nothing: rewritten with the current header
+            version = VERSION;
+        }
+        return new CandleSeries(file, symbol, interval, version, new State(blocks, firstStart, lastStart, offset, bars,
+                (int) pos, NO_BARS, 0, lastBarStart));
+    }
+
+    /**
+     * @return start of the newest bar stored or buffered, or {@link Long#MIN_VALUE} if none
+     */
+    long lastStart() {
+        return state.lastBarStart();
+    }
+
+    /**
+     * @return bars buffered and not yet sealed into the file
+     */
+    int tailBars() {
+        return state.tailBars();
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when the oldest buffered bar was appended
+     */
+    long tailSinceNanos() {
+        return tailSinceNanos;
+    }
+
+    /**
+     * Buffer a closed bar, sealing the tail first if it is full. Writer thread only.
+     *
+     * @throws IllegalArgumentException if the bar does not start after {@link #lastStart()}
+     */
+    void append(Candle bar) throws IOException {
+        State s = state;
+        if (bar.startTimestamp() <= s.lastBarStart()) {
+            throw new IllegalArgumentException("Bar at " + bar.startTimestamp() + " does not follow " + s.lastBarStart());
+        }
+        if (s.tailBars() == BLOCK_BARS) {
+            seal();
+            s = state;
+        }
+        if (s.tailBars() == 0) {
+            tailSinceNanos = System.nanoTime();
+        }
+        long[] tail = s.tail();
+        int at = s.tailBars() * BAR;
+        if (at == tail.length) {
+            // Readers of the previous state keep the old array, which is never written again
+            tail = Arrays.copyOf(tail, Math.min(BLOCK_BARS, Math.max(MIN_TAIL_BARS, s.tailBars() * 2)) * BAR);
+        }
+        tail[at + START] = bar.startTimestamp();
+        tail[at + LAST] = bar.timestamp();
+        tail[at + OPEN] = Double.doubleToRawLongBits(bar.open());
+        tail[at + HIGH] = Double.doubleToRawLongBits(bar.high());
+        tail[at + LOW] = Double.doubleToRawLongBits(bar.low());
+        tail[at + CLOSE] = Double.doubleToRawLongBits(bar.close());
+        tail[at + VOLUME] = bar.volume();
+        tail[at + TRADES] = bar.trades();
+        tail[at + VWAP] = Double.doubleToRawLongBits(bar.vwap());
+        state = new State(s.blocks(), s.firstStart(), s.lastStart(), s.offset(), s.bars(),
+                s.fileLength(), tail, s.tailBars() + 1, bar.startTimestamp());
+    }
+
+    /**
+     * Encode the buffered bars as one block, append it to the file and force it to disk.
+     * Writer thread only.
+     */
+    void seal() throws IOException {
+        State s = state;
+        int n = s.tailBars();
+        if (n == 0) {
+            return;
+        }
+        ByteSink payload = encode(s.tail(), n, version);
+        boolean fresh = s.fileLength() == 0;
+        int blockAt = fresh ? FILE_HEADER_BYTES : s.fileLength();
+        long end = (long) blockAt + BLOCK_HEADER_BYTES + payload.size;
+        if (end > Integer.MAX_VALUE) {
+            throw new IOException("Candle history file full: " + file);
+        }
+
+        ByteBuffer out = ByteBuffer.allocate((int) (end - s.fileLength()));
+        if (fresh) {
+            out.putInt(MAGIC).putInt(version).putLong(interval.widthNanos());
+        }
+        out.putInt(n)
+                .putInt(payload.size)
+                .putLong(s.tail()[START])
+                .putLong(s.tail()[(n - 1) * BAR + START])
+                .put(payload.bytes, 0, payload.size)
+                .flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long position = s.fileLength();
+            while (out.hasRemaining()) {
+                position += channel.write(out, position);
+            }
+            channel.force(false);
+        }
+
+        int blocks = s.blocks();
+        long[] firstStart = s.firstStart();
+        long[] lastStart = s.lastStart();
+        int[] offset = s.offset();
+        int[] bars = s.bars();
+        if (blocks == firstStart.length) {
+            firstStart = Arrays.copyOf(firstStart, blocks * 2);
+            lastStart = Arrays.copyOf(lastStart, blocks * 2);
+            offset = Arrays.copyOf(offset, blocks * 2);
+            bars = Arrays.copyOf(bars, blocks * 2);
+        }
+        firstStart[blocks] = s.tail()[START];
+        lastStart[blocks] = s.tail()[(n - 1) * BAR + START];
+        offset[blocks] = blockAt;
+        bars[blocks] = n;
+        // Readers of the previous state keep the old tail array, so it is not reused
+        state = new State(blocks + 1, firstStart, lastStart, offset, bars,
+                (int) end, NO_BARS, 0, s.lastBarStart());
+    }
+
+    /**
+     * Add the bars whose start lies in {@code [from, to)} to {@code out}, oldest first.
+     *
+     * @return start of the newest bar the query could see, or {@link Long#MIN_VALUE} if none;
+     *         bars after it may still be only in memory
+     */
+    long query(long from, long to, List<Candle> out) throws IOException {
+        State s = state;
+
+        // First block that can hold a bar at or after from
+        int lo = 0;
+        int hi = s.blocks();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (s.lastStart()[mid] < from) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo < s.blocks() && s.firstStart()[lo] < to) {
+            ByteBuffer map = mapped(s.fileLength());
+            long[] columns = new long[BLOCK_BARS * BAR];
+            for (int b = lo; b < s.blocks() && s.firstStart()[b] < to; b++) {
+                int n = s.bars()[b];
+                decode(map, s.offset()[b], n, columns, version);
+                emit(columns, n, from, to, out);
+            }
+        }
+        emit(s.tail(), s.tailBars(), from, to, out);
+        return s.lastBarStart();
+    }
+
+    private void emit(long[] bars, int n, long from, long to, List<Candle> out) {
+        for (int i = 0; i < n; i++) {
+            int at = i * BAR;
+            long start = bars[at + START];
+            if (start >= to) {
+                return;
+            }
+            if (start >= from) {
+                out.add(new Candle(symbol, interval,
+                        Double.longBitsToDouble(bars[at + OPEN]), Double.longBitsToDouble(bars[at + HIGH]),
+                        Double.longBitsToDouble(bars[at + LOW]), Double.longBitsToDouble(bars[at + CLOSE]),
+                        bars[at + VOLUME], start, bars[at + LAST], bars[at + TRADES],
+                        Double.longBitsToDouble(bars[at + VWAP]), null));
+            }
+        }
+    }
+
+    /**
+     * Drop the read mapping; the next query that decodes a block maps the file again.
+     * Queries still holding the old buffer keep it valid until they finish.
+     */
+    synchronized void release() {
+        mapping = null;
+    }
+
+    private ByteBuffer mapped(int length) throws IOException {
+        Mapping m = mapping;
+        if (m == null || m.length() < length) {
+            synchronized (this) {
+                m = mapping;
+                if (m == null || m.length() < length) {
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+                        m = new Mapping(buffer, length);
+                        mapping = m;
+                    }
+                }
+            }
+        }
+        return m.buffer();
+    }
+
+    // Encoding
+
+    private static ByteSink encode(long[] tail, int n, int version) {
+        ByteSink out = new ByteSink(n * 16);
+        long prevDelta = 0;
+        for (int i = 1; i < n; i++) {
+            long delta = tail[i * BAR + START] - tail[(i - 1) * BAR + START];
+            out.putVarint(zigzag(delta - prevDelta));
+            prevDelta = delta;
+        }
+        for (int field = OPEN; field <= CLOSE; field++) {
+            long prev = 0;
+            for (int i = 0; i < n; i++) {
+                long bits = tail[i * BAR + field];
+                out.putXor(bits ^ prev);
+                prev = bits;
+            }
+        }
+        long prevVolume = 0;
+        for (int i = 0; i < n; i++) {
+            long volume = tail[i * BAR + VOLUME];
+            out.putVarint(zigzag(volume - prevVolume));
+            prevVolume = volume;
+        }
+        for (int i = 0; i < n; i++) {
+            out.putVarint(zigzag(tail[i * BAR + LAST] - tail[i * BAR + START]));
+        }
+        if (version >= 2) {
+            long prevTrades = 0;
+            for (int i = 0; i < n; i++) {
+                long trades = tail[i * BAR + TRADES];
+                out.putVarint(zigzag(trades - prevTrades));
+                prevTrades = trades;
+            }
+            long prev = 0;
+            for (int i = 0; i < n; i++) {
+                long bits = tail[i * BAR + VWAP];
+                out.putXor(bits ^ prev);
+                prev = bits;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Decode the block at {@code blockAt} into {@code bars} (tail layout). Uses absolute
+     * reads only, so concurrent queries can share the mapped buffer.
+     */
+    private static void decode(ByteBuffer map, int blockAt, int n, long[] bars, int version) throws IOException {
+        long first = map.getLong(blockAt + 8);
+        int[] pos = {blockAt + BLOCK_HEADER_BYTES};
+
+        bars[START] = first;
+        long delta = 0;
+        for (int i = 1; i < n; i++) {
+            delta += unzigzag(varint(map, pos));
+            bars[i * BAR + START] = bars[(i - 1) * BAR + START] + delta;
+        }
+        for (int field = OPEN; field <= CLOSE; field++) {
+            long prev = 0;
+            for (int i = 0; i < n; i++) {
+                prev ^= xor(map, pos);
+                bars[i * BAR + field] = prev;
+            }
+        }
+        long volume = 0;
+        for (int i = 0; i < n; i++) {
+            volume += unzigzag(varint(map, pos));
+            bars[i * BAR + VOLUME] = volume;
+        }
+        for (int i = 0; i < n; i++) {
+            bars[i * BAR + LAST] = bars[i * BAR + START] + unzigzag(varint(map, pos));
+        }
+        if (version >= 2) {
+            long trades = 0;
+            for (int i = 0; i < n; i++) {
+                trades += unzigzag(varint(map, pos));
+                bars[i * BAR + TRADES] = trades;
+            }
+            long prev = 0;
+            for (int i = 0; i < n; i++) {
+                prev ^= xor(map, pos);
+                bars[i * BAR + VWAP] = prev;
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                int at = i * BAR;
+                double typical = (Double.longBitsToDouble(bars[at + HIGH]) + Double.longBitsToDouble(bars[at + LOW])
+                        + Double.longBitsToDouble(bars[at + CLOSE])) / 3;
+                bars[at + TRADES] = 0;
+                bars[at + VWAP] = Double.doubleToRawLongBits(typical);
+            }
+        }
+    }
+
+    private static long varint(ByteBuffer map, int[] pos) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = map.get(pos[0]++);
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt candle history: varint too long");
+    }
+
+    private static long xor(ByteBuffer map, int[] pos) {
+        int control = map.get(pos[0]++) & 0xFF;
+        int lead = control >>> 4;
+        int trail = control & 0x0F;
+        if (lead >= 8) {
+            return 0;
+        }
+        long value = 0;
+        for (int k = 8 - lead - trail; k > 0; k--) {
+            value = value << 8 | (map.get(pos[0]++) & 0xFF);
+        }
+        return value << (8 * trail);
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of " + channel);
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Growable byte array for one block's payload.
+     */
+    private static final class ByteSink {
+        byte[] bytes;
+        int size;
+
+        ByteSink(int capacity) {
+            this.bytes = new byte[Math.max(capacity, 64)];
+        }
+
+        void put(byte b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = b;
+        }
+
+        void putVarint(long v) {
+            while ((v & ~0x7FL) != 0) {
+                put((byte) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            put((byte) v);
+        }
+
+        void putXor(long x) {
+            if (x == 0) {
+                put(UNCHANGED);
+                return;
+            }
+            int lead = Long.numberOfLeadingZeros(x) >>> 3;
+            int trail = Long.numberOfTrailingZeros(x) >>> 3;
+            put((byte) (lead << 4 | trail));
+            for (int shift = 56 - 8 * lead; shift >= 8 * trail; shift -= 8) {
+                put((byte) (x >>> shift));
+            }
+        }
+    }
+}
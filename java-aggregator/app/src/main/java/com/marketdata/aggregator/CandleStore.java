@@ -0,0 +1,687 @@
+package com.marketdata.aggregator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Symbol-indexed OHLCV store backed by primitive arrays.
+ *
+ * Every symbol id owns a fixed-size block of longs holding, per interval, the live bar
+ * and a ring of closed bars (prices are stored as raw double bits), followed by the
+ * symbol's price analytics: one time-decayed EWMA per configured half-life and a ring
+ * of volatility buckets (count, sum and sum of squares of tick log returns) with their
+ * running totals, all updated in constant time per tick. Blocks are grouped
+ * into pages of {@value #PAGE_SIZE} symbols that are allocated when a symbol is first
+ * interned, so updates touch existing memory only and allocate nothing.
+ *
+ * Each symbol is guarded by a seqlock: writers CAS the sequence from even to odd,
+ * mutate in place and release it at the next even value; readers copy the fields and
+ * retry if the sequence moved, so snapshots are consistent without blocking writers.
+ */
+final class CandleStore {
+
+    static final int PAGE_SHIFT = 6;
+    static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    /** Upper bound on interned symbols. */
+    static final int MAX_SYMBOLS = 1 << 20;
+
+    // Sequences are spaced a cache line apart so writers of neighbouring symbols don't false-share
+    private static final int SEQ_SPACING = 8;
+    // Slot next to each sequence holding one past the journal seq of the symbol's last applied tick
+    private static final int APPLIED = 1;
+
+    // Interval block header
+    private static final int BUCKET = 0;
+    private static final int HEAD = 1;
+    private static final int SIZE = 2;
+    private static final int LIVE = 3;
+    private static final int HEADER = 4;
+
+    // Bar fields
+    private static final int OPEN = 0;
+    private static final int HIGH = 1;
+    private static final int LOW = 2;
+    private static final int CLOSE = 3;
+    private static final int VOLUME = 4;
+    private static final int START = 5;
+    private static final int LAST = 6;
+    private static final int NOTIONAL = 7;
+    private static final int TRADES = 8;
+    private static final int BAR = 9;
+    // Bar fields written by snapshot version 1
+    static final int BAR_V1 = 7;
+
+    // Analytics block: last price and time, a seen flag, the newest volatility bucket,
+    // then one EWMA per half-life, the volatility buckets and their totals (not persisted)
+    private static final int A_PRICE = 0;
+    private static final int A_TIME = 1;
+    private static final int A_SEEN = 2;
+    private static final int A_BUCKET = 3;
+    private static final int A_EWMA = 4;
+    private static final int V_COUNT = 0;
+    private static final int V_SUM = 1;
+    private static final int V_SUMSQ = 2;
+    private static final int V_FIELDS = 3;
+
+    private static final VarHandle SEQ = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private static final CandleInterval[] INTERVALS = CandleInterval.values();
+
+    private final long[] width = new long[INTERVALS.length];
+    private final int[] capacity = new int[INTERVALS.length];
+    private final int[] blockOffset = new int[INTERVALS.length];
+    private final int stride;
+
+    private final long[] ewmaHalfLivesNanos;
+    private final long[] ewmaHalfLivesMillis;
+    private final double[] ewmaDecay;
+    private final long volBucketNanos;
+    private final int volBuckets;
+    private final int analyticsOffset;
+    private final int volOffset;
+    private final int totalsOffset;
+    private final int analyticsWords;
+
+    private final AtomicReferenceArray<Page> pages = new AtomicReferenceArray<>(MAX_SYMBOLS >> PAGE_SHIFT);
+
+    /**
+     * @param depth closed bars retained per symbol for each rolling interval
+     */
+    CandleStore(int depth, AnalyticsSettings analytics) {
+        int offset = 0;
+        for (CandleInterval interval : INTERVALS) {
+            int i = interval.ordinal();
+            width[i] = interval.widthNanos();
+            capacity[i] = interval.rollsOver() ? depth : 0;
+            blockOffset[i] = offset;
+            offset += HEADER + BAR * (1 + capacity[i]);
+        }
+
+        int ewmas = analytics.ewmaHalfLives().size();
+        ewmaHalfLivesNanos = new long[ewmas];
+        ewmaHalfLivesMillis = new long[ewmas];
+        ewmaDecay = new double[ewmas];
+        for (int k = 0; k < ewmas; k++) {
+            ewmaHalfLivesNanos[k] = analytics.ewmaHalfLives().get(k).toNanos();
+            ewmaHalfLivesMillis[k] = analytics.ewmaHalfLives().get(k).toMillis();
+            ewmaDecay[k] = Math.log(2) / ewmaHalfLivesNanos[k];
+        }
+        volBuckets = analytics.volatilityBuckets();
+        volBucketNanos = volBuckets > 0 ? analytics.volatilityWindow().toNanos() / volBuckets : 0;
+        analyticsOffset = offset;
+        volOffset = A_EWMA + ewmas;
+        totalsOffset = volOffset + V_FIELDS * volBuckets;
+        analyticsWords = totalsOffset + V_FIELDS;
+        offset += analyticsWords;
+
+        if ((long) offset * PAGE_SIZE > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("History depth too large: " + depth);
+        }
+        this.stride = offset;
+    }
+
+    /**
+     * Make sure storage exists for a symbol id. Called once per id before it is published.
+     */
+    void reserve(int id) {
+        if (id >= MAX_SYMBOLS) {
+            throw new IllegalStateException("Symbol capacity exhausted (" + MAX_SYMBOLS + ")");
+        }
+        int p = id >>> PAGE_SHIFT;
+        if (pages.get(p) == null) {
+            pages.compareAndSet(p, null, new Page(stride));
+        }
+    }
+
+    /**
+     * Fold a tick into every interval of a symbol.
+     * Ticks older than an interval's live bucket are dropped for that interval only.
+     * Safe for concurrent writers of the same symbol.
+     *
+     * @param journal if not null, the tick's journal sequence is claimed inside the write
+     *                section, so the journal order of a symbol's ticks always matches the
+     *                order applied; it is staged after the section ends, so a full journal
+     *                ring never holds the seqlock
+     * @param producer producer id journaled with the tick, or {@link ProducerTable#NONE}
+     */
+    void update(int id, double price, long qty, long timestamp, TickJournal journal,
+                int producer, long producerSeq) {
+        Page page = pages.get(id >>> PAGE_SHIFT);
+        int slot = id & PAGE_MASK;
+        int seqIdx = slot * SEQ_SPACING;
+
+        long journalSeq = -1;
+        long seq = beginWrite(page.seq, seqIdx);
+        try {
+            if (journal != null) {
+                journalSeq = journal.claim();
+                page.seq[seqIdx + APPLIED] = journalSeq + 1;
+            }
+            foldAll(page.data, slot * stride, price, qty, timestamp);
+        } finally {
+            SEQ.setRelease(page.seq, seqIdx, seq + 2);
+            if (journalSeq >= 0) {
+                journal.publish(journalSeq, id, price, qty, timestamp, producer, producerSeq);
+            }
+        }
+    }
+
+    /**
+     * Fold a tick read back from the journal and record its sequence as applied.
+     */
+    void replay(int id, double price, long qty, long timestamp, long journalSeq) {
+        Page page = pages.get(id >>> PAGE_SHIFT);
+        int slot = id & PAGE_MASK;
+        int seqIdx = slot * SEQ_SPACING;
+
+        long seq = beginWrite(page.seq, seqIdx);
+        try {
+            page.seq[seqIdx + APPLIED] = journalSeq + 1;
+            foldAll(page.data, slot * stride, price, qty, timestamp);
+        } finally {
+            SEQ.setRelease(page.seq, seqIdx, seq + 2);
+        }
+    }
+
+    /**
+     * @return one past the journal sequence of the last tick applied to a symbol, 0 if none
+     */
+    long appliedSeq(int id) {
+        Page page = pages.get(id >>> PAGE_SHIFT);
+        return page == null ? 0 : (long) SEQ.getAcquire(page.seq, (id & PAGE_MASK) * SEQ_SPACING + APPLIED);
+    }
+
+    /**
+     * Same as {@link #update} for a caller that is the only writer of this symbol
+     * (a sharded ingest thread): the sequence is bumped without a CAS.
+     */
+    void updateExclusive(int id, double price, long qty, long timestamp, TickJournal journal,
+                         int producer, long producerSeq) {
+        Page page = pages.get(id >>> PAGE_SHIFT);
+        int slot = id & PAGE_MASK;
+        int seqIdx = slot * SEQ_SPACING;
+
+        long seq = (long) SEQ.getOpaque(page.seq, seqIdx);
+        SEQ.setOpaque(page.seq, seqIdx, seq + 1);
+        VarHandle.storeStoreFence();
+        long journalSeq = -1;
+        if (journal != null) {
+            journalSeq = journal.claim();
+            page.seq[seqIdx + APPLIED] = journalSeq + 1;
+        }
+        foldAll(page.data, slot * stride, price, qty, timestamp);
+        SEQ.setRelease(page.seq, seqIdx, seq + 2);
+        if (journalSeq >= 0) {
+            journal.publish(journalSeq, id, price, qty, timestamp, producer, producerSeq);
+        }
+    }
+
+    private void foldAll(long[] d, int base, double price, long qty, long timestamp) {
+        for (int i = 0; i < INTERVALS.length; i++) {
+            fold(d, base + blockOffset[i], width[i], capacity[i], price, qty, timestamp);
+        }
+        foldAnalytics(d, base + analyticsOffset, price, timestamp);
+    }
+
+    private void foldAnalytics(long[] d, int a, double price, long timestamp) {
+        long bits = Double.doubleToRawLongBits(price);
+        if (d[a + A_SEEN] == 0) {
+            d[a + A_SEEN] = 1;
+            d[a + A_PRICE] = bits;
+            d[a + A_TIME] = timestamp;
+            for (int k = 0; k < ewmaDecay.length; k++) {
+                d[a + A_EWMA + k] = bits;
+            }
+            if (volBuckets > 0) {
+                d[a + A_BUCKET] = Math.floorDiv(timestamp, volBucketNanos);
+            }
+            return;
+        }
+
+        // EWMAs decay with the time since the previous tick; a late tick carries no weight
+        long lastTime = d[a + A_TIME];
+        long elapsed = timestamp - lastTime;
+        if (elapsed > 0) {
+            for (int k = 0; k < ewmaDecay.length; k++) {
+                double ewma = Double.longBitsToDouble(d[a + A_EWMA + k]);
+                double alpha = -Math.expm1(-elapsed * ewmaDecay[k]);
+                d[a + A_EWMA + k] = Double.doubleToRawLongBits(ewma + alpha * (price - ewma));
+            }
+            d[a + A_TIME] = timestamp;
+        }
+
+        double last = Double.longBitsToDouble(d[a + A_PRICE]);
+        d[a + A_PRICE] = bits;
+        if (volBuckets == 0 || !(last > 0 && price > 0)) {
+            return;
+        }
+        // Slide the window: buckets skipped since the newest one leave the totals and are
+        // cleared (at most all of them)
+        int t = a + totalsOffset;
+        long bucket = Math.floorDiv(Math.max(timestamp, lastTime), volBucketNanos);
+        long newest = d[a + A_BUCKET];
+        if (bucket > newest) {
+            long cleared = Math.min(bucket - newest, volBuckets);
+            for (long j = 1; j <= cleared; j++) {
+                int at = a + volOffset + (int) Math.floorMod(newest + j, (long) volBuckets) * V_FIELDS;
+                add(d, t, -d[at + V_COUNT], -Double.longBitsToDouble(d[at + V_SUM]),
+                        -Double.longBitsToDouble(d[at + V_SUMSQ]));
+                d[at + V_COUNT] = 0;
+                d[at + V_SUM] = 0;
+                d[at + V_SUMSQ] = 0;
+            }
+            if (Math.floorDiv(bucket, (long) volBuckets) != Math.floorDiv(newest, (long) volBuckets)) {
+                // Once per window the totals are summed afresh so rounding cannot build up
+                sumBuckets(d, a);
+            }
+            d[a + A_BUCKET] = bucket;
+            newest = bucket;
+        }
+        double r = Math.log(price / last);
+        int at = a + volOffset + (int) Math.floorMod(newest, (long) volBuckets) * V_FIELDS;
+        add(d, at, 1, r, r * r);
+        add(d, t, 1, r, r * r);
+    }
+
+    // Add to a (count, sum, sum of squares) triple; an empty one is reset exactly to zero
+    private static void add(long[] d, int at, long count, double sum, double sumSq) {
+        d[at + V_COUNT] += count;
+        if (d[at + V_COUNT] == 0) {
+            d[at + V_SUM] = 0;
+            d[at + V_SUMSQ] = 0;
+            return;
+        }
+        d[at + V_SUM] = Double.doubleToRawLongBits(Double.longBitsToDouble(d[at + V_SUM]) + sum);
+        d[at + V_SUMSQ] = Double.doubleToRawLongBits(Double.longBitsToDouble(d[at + V_SUMSQ]) + sumSq);
+    }
+
+    // Recompute the totals of the analytics block at a from its volatility buckets
+    private void sumBuckets(long[] d, int a) {
+        long n = 0;
+        double sum = 0;
+        double sumSq = 0;
+        for (int j = 0; j < volBuckets; j++) {
+            int at = a + volOffset + j * V_FIELDS;
+            n += d[at + V_COUNT];
+            sum += Double.longBitsToDouble(d[at + V_SUM]);
+            sumSq += Double.longBitsToDouble(d[at + V_SUMSQ]);
+        }
+        int t = a + totalsOffset;
+        d[t + V_COUNT] = n;
+        d[t + V_SUM] = Double.doubleToRawLongBits(n == 0 ? 0 : sum);
+        d[t + V_SUMSQ] = Double.doubleToRawLongBits(n == 0 ? 0 : sumSq);
+    }
+
+    private static long beginWrite(long[] seqs, int idx) {
+        for (;;) {
+            long seq = (long) SEQ.getVolatile(seqs, idx);
+            if ((seq & 1) == 0 && SEQ.compareAndSet(seqs, idx, seq, seq + 1)) {
+                return seq;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void fold(long[] d, int b, long width, int capacity,
+                             double price, long qty, long timestamp) {
+        long bucket = width > 0 ? Math.floorDiv(timestamp, width) : 0;
+        boolean live = d[b + LIVE] != 0;
+        if (live && bucket < d[b + BUCKET]) {
+            return;
+        }
+
+        int bar = b + HEADER;
+        long bits = Double.doubleToRawLongBits(price);
+
+        if (!live || bucket > d[b + BUCKET]) {
+            if (live && capacity > 0) {
+                // Close the live bar into the ring
+                int head = (int) d[b + HEAD];
+                System.arraycopy(d, bar, d, bar + BAR * (1 + head), BAR);
+                d[b + HEAD] = (head + 1) % capacity;
+                if (d[b + SIZE] < capacity) {
+                    d[b + SIZE]++;
+                }
+            }
+            d[b + LIVE] = 1;
+            d[b + BUCKET] = bucket;
+            d[bar + OPEN] = bits;
+            d[bar + HIGH] = bits;
+            d[bar + LOW] = bits;
+            d[bar + CLOSE] = bits;
+            d[bar + VOLUME] = qty;
+            d[bar + START] = width > 0 ? bucket * width : timestamp;
+            d[bar + LAST] = timestamp;
+            d[bar + NOTIONAL] = Double.doubleToRawLongBits(price * qty);
+            d[bar + TRADES] = 1;
+            return;
+        }
+
+        if (price > Double.longBitsToDouble(d[bar + HIGH])) {
+            d[bar + HIGH] = bits;
+        }
+        if (price < Double.longBitsToDouble(d[bar + LOW])) {
+            d[bar + LOW] = bits;
+        }
+        d[bar + CLOSE] = bits;
+        d[bar + VOLUME] += qty;
+        d[bar + LAST] = timestamp;
+        d[bar + NOTIONAL] = Double.doubleToRawLongBits(Double.longBitsToDouble(d[bar + NOTIONAL]) + price * qty);
+        d[bar + TRADES]++;
+    }
+
+    /**
+     * @return a consistent copy of the live bar, or null if the symbol has no ticks; only
+     *         SESSION bars carry the symbol's {@link PriceAnalytics}
+     */
+    Candle snapshot(int id, String symbol, CandleInterval interval) {
+        Page page = pages.get(id >>> PAGE_SHIFT);
+        if (page == null) {
+            return null;
+        }
+        int slot = id & PAGE_MASK;
+        int seqIdx = slot * SEQ_SPACING;
+        int b = slot * stride + blockOffset[interval.ordinal()];
+        int bar = b + HEADER;
+        long[] d = page.data;
+        int a = slot * stride + analyticsOffset;
+        int t = a + totalsOffset;
+        boolean session = interval == CandleInterval.SESSION;
+        double[] ewma = session ? new double[ewmaDecay.length] : null;
+
+        for (;;) {
+            long seq = (long) SEQ.getVolatile(page.seq, seqIdx);
+            if ((seq & 1) == 0) {
+                long live = d[b + LIVE];
+                long open = d[bar + OPEN];
+                long high = d[bar + HIGH];
+                long low = d[bar + LOW];
+                long close = d[bar + CLOSE];
+                long volume = d[bar + VOLUME];
+                long start = d[bar + START];
+                long last = d[bar + LAST];
+                long notional = d[bar + NOTIONAL];
+                long trades = d[bar + TRADES];
+                long seen = 0;
+                long n = 0;
+                double sum = 0;
+                double sumSq = 0;
+                if (session) {
+                    seen = d[a + A_SEEN];
+                    for (int k = 0; k < ewma.length; k++) {
+                        ewma[k] = Double.longBitsToDouble(d[a + A_EWMA + k]);
+                    }
+                    // Exchange-time window ending at the symbol's newest bucket, as the totals already are
+                    if (volBuckets > 0) {
+                        n = d[t + V_COUNT];
+                        sum = Double.longBitsToDouble(d[t + V_SUM]);
+                        sumSq = Double.longBitsToDouble(d[t + V_SUMSQ]);
+                    }
+                }
+                VarHandle.acquireFence();
+                if (seq == (long) SEQ.getVolatile(page.seq, seqIdx)) {
+                    if (live == 0) {
+                        return null;
+                    }
+                    // Null until the first tick after analytics were reset by a snapshot with another configuration
+                    PriceAnalytics analytics = seen == 0 ? null
+                            : new PriceAnalytics(ewmaHalfLivesMillis, ewma, volatility(n, sum, sumSq), n);
+                    return new Candle(symbol, interval,
+                            Double.longBitsToDouble(open), Double.longBitsToDouble(high),
+                            Double.longBitsToDouble(low), Double.longBitsToDouble(close),
+                            volume, start, last, trades,
+                            vwap(notional, volume, close), analytics);
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private static double vwap(long notional, long volume, long close) {
+        return volume > 0 ? Double.longBitsToDouble(notional) / volume : Double.longBitsToDouble(close);
+    }
+
+    private static double volatility(long n, double sum, double sumSq) {
+        return n < 2 ? 0 : Math.sqrt(Math.max(0, (sumSq - sum * sum / n) / (n - 1)));
+    }
+
+    /**
+     * @return the bucket of an interval's live bar as last written, read without the
+     *         seqlock; a hint for pollers that only need to notice that a bar closed
+     */
+    long liveBucket(int id, CandleInterval interval) {
+        Page page = pages.get(id >>> PAGE_SHIFT);
+        if (page == null) {
+            return 0;
+        }
+        int b = (id & PAGE_MASK) * stride + blockOffset[interval.ordinal()];
+        return (long) SEQ.getOpaque(page.data, b + BUCKET);
+    }
+
+    /**
+     * @return up to {@code limit} most recent closed bars, oldest first
+     */
+    List<Candle> closedBars(int id, String symbol, CandleInterval interval, int limit) {
+        int cap = capacity[interval.ordinal()];
+        Page page = pages.get(id >>> PAGE_SHIFT);
+        if (page == null || cap == 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+        int slot = id & PAGE_MASK;
+        int seqIdx = slot * SEQ_SPACING;
+        int b = slot * stride + blockOffset[interval.ordinal()];
+        int ring = b + HEADER + BAR;
+        long[] d = page.data;
+        long[] copy = new long[BAR * cap];
+
+        int head;
+        int size;
+        for (;;) {
+            long seq = (long) SEQ.getVolatile(page.seq, seqIdx);
+            if ((seq & 1) == 0) {
+                head = (int) d[b + HEAD];
+                size = (int) d[b + SIZE];
+                System.arraycopy(d, ring, copy, 0, copy.length);
+                VarHandle.acquireFence();
+                if (seq == (long) SEQ.getVolatile(page.seq, seqIdx)) {
+                    break;
+                }
+            }
+            Thread.onSpinWait();
+        }
+
+        int n = Math.min(limit, size);
+        List<Candle> bars = new ArrayList<>(n);
+        for (int i = n; i > 0; i--) {
+            int at = Math.floorMod(head - i, cap) * BAR;
+            bars.add(new Candle(symbol, interval,
+                    Double.longBitsToDouble(copy[at + OPEN]), Double.longBitsToDouble(copy[at + HIGH]),
+                    Double.longBitsToDouble(copy[at + LOW]), Double.longBitsToDouble(copy[at + CLOSE]),
+                    copy[at + VOLUME], copy[at + START], copy[at + LAST], copy[at + TRADES],
+                    vwap(copy[at + NOTIONAL], copy[at + VOLUME], copy[at + CLOSE]), null));
+        }
+        return bars;
+    }
+
+    /**
+     * Copy a symbol's whole block from a consistent point, without blocking its writers.
+     *
+     * @param dst at least {@link #stateWords()} longs
+     * @return the symbol's applied journal sequence at that point
+     */
+    long copyState(int id, long[] dst) {
+        Page page = pages.get(id >>> PAGE_SHIFT);
+        int slot = id & PAGE_MASK;
+        int seqIdx = slot * SEQ_SPACING;
+        for (;;) {
+            long seq = (long) SEQ.getVolatile(page.seq, seqIdx);
+            if ((seq & 1) == 0) {
+                long applied = page.seq[seqIdx + APPLIED];
+                System.arraycopy(page.data, slot * stride, dst, 0, stride);
+                VarHandle.acquireFence();
+                if (seq == (long) SEQ.getVolatile(page.seq, seqIdx)) {
+                    return applied;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * @return longs in one symbol's block
+     */
+    int stateWords() {
+        return stride;
+    }
+
+    /**
+     * Write a block copied by {@link #copyState} in a compact form: per interval the
+     * live flag, bucket, live bar and only the closed bars actually held, oldest first;
+     * then the analytics layout (half-lives, bucket width and count) and block, less the
+     * volatility totals, which are summed again from the buckets when read.
+     */
+    void writeState(long[] block, DataOutput out) throws IOException {
+        for (int i = 0; i < INTERVALS.length; i++) {
+            int b = blockOffset[i];
+            int size = (int) block[b + SIZE];
+            out.writeLong(block[b + LIVE]);
+            out.writeLong(block[b + BUCKET]);
+            writeBar(block, b + HEADER, out);
+            out.writeInt(size);
+            for (int k = size; k > 0; k--) {
+                int at = Math.floorMod((int) block[b + HEAD] - k, capacity[i]);
+                writeBar(block, b + HEADER + BAR * (1 + at), out);
+            }
+        }
+        out.writeInt(ewmaHalfLivesNanos.length);
+        for (long halfLife : ewmaHalfLivesNanos) {
+            out.writeLong(halfLife);
+        }
+        out.writeLong(volBucketNanos);
+        out.writeInt(volBuckets);
+        for (int w = 0; w < totalsOffset; w++) {
+            out.writeLong(block[analyticsOffset + w]);
+        }
+    }
+
+    /**
+     * Replace a symbol's state with one written by {@link #writeState}. If the snapshot
+     * kept more closed bars than this store does, only the most recent are restored.
+     * Analytics written with a different configuration, or by a version 1 snapshot,
+     * start over from the next tick.
+     */
+    void readState(int id, long appliedSeq, DataInput in, int version) throws IOException {
+        int fields = version == 1 ? BAR_V1 : BAR;
+        long[] block = new long[stride];
+        long[] bar = new long[BAR];
+        for (int i = 0; i < INTERVALS.length; i++) {
+            int b = blockOffset[i];
+            int cap = capacity[i];
+            block[b + LIVE] = in.readLong();
+            block[b + BUCKET] = in.readLong();
+            readBar(in, block, b + HEADER, fields);
+            int size = in.readInt();
+            if (size < 0) {
+                throw new IOException("Corrupt snapshot: negative bar count");
+            }
+            int head = 0;
+            int kept = 0;
+            for (int k = 0; k < size; k++) {
+                readBar(in, bar, 0, fields);
+                if (k >= size - cap) {
+                    System.arraycopy(bar, 0, block, b + HEADER + BAR * (1 + head), BAR);
+                    head = (head + 1) % cap;
+                    kept++;
+                }
+            }
+            block[b + HEAD] = head;
+            block[b + SIZE] = kept;
+        }
+        if (version >= 2) {
+            readAnalytics(in, block);
+        }
+
+        Page page = pages.get(id >>> PAGE_SHIFT);
+        int slot = id & PAGE_MASK;
+        int seqIdx = slot * SEQ_SPACING;
+        long seq = beginWrite(page.seq, seqIdx);
+        try {
+            page.seq[seqIdx + APPLIED] = appliedSeq;
+            System.arraycopy(block, 0, page.data, slot * stride, stride);
+        } finally {
+            SEQ.setRelease(page.seq, seqIdx, seq + 2);
+        }
+    }
+
+    /**
+     * @return number of intervals per block; a snapshot is only readable with the same layout
+     */
+    static int intervalCount() {
+        return INTERVALS.length;
+    }
+
+    private static void writeBar(long[] d, int at, DataOutput out) throws IOException {
+        for (int f = 0; f < BAR; f++) {
+            out.writeLong(d[at + f]);
+        }
+    }
+
+    private static void readBar(DataInput in, long[] d, int at, int fields) throws IOException {
+        for (int f = 0; f < fields; f++) {
+            d[at + f] = in.readLong();
+        }
+        if (fields == BAR_V1) {
+            // Version 1 kept no notional: seed it from the typical price, trade count unknown (0)
+            double typical = (Double.longBitsToDouble(d[at + HIGH]) + Double.longBitsToDouble(d[at + LOW])
+                    + Double.longBitsToDouble(d[at + CLOSE])) / 3;
+            d[at + NOTIONAL] = Double.doubleToRawLongBits(typical * d[at + VOLUME]);
+            d[at + TRADES] = 0;
+        }
+    }
+
+    private void readAnalytics(DataInput in, long[] block) throws IOException {
+        int ewmas = in.readInt();
+        if (ewmas < 0) {
+            throw new IOException("Corrupt snapshot: negative EWMA count");
+        }
+        boolean same = ewmas == ewmaHalfLivesNanos.length;
+        for (int k = 0; k < ewmas; k++) {
+            long halfLife = in.readLong();
+            same = same && halfLife == ewmaHalfLivesNanos[k];
+        }
+        long bucketNanos = in.readLong();
+        int buckets = in.readInt();
+        if (buckets < 0) {
+            throw new IOException("Corrupt snapshot: negative volatility bucket count");
+        }
+        same &= bucketNanos == volBucketNanos && buckets == volBuckets;
+        long words = A_EWMA + ewmas + (long) V_FIELDS * buckets;
+        for (long w = 0; w < words; w++) {
+            long value = in.readLong();
+            if (same) {
+                block[analyticsOffset + (int) w] = value;
+            }
+        }
+        if (same) {
+            sumBuckets(block, analyticsOffset);
+        }
+    }
+
+    private static final class Page {
+        final long[] seq = new long[PAGE_SIZE * SEQ_SPACING];
+        final long[] data;
+
+        Page(int stride) {
+            this.data = new long[PAGE_SIZE * stride];
+        }
+    }
+}
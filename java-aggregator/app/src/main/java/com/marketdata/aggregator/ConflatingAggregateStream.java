@@ -0,0 +1,320 @@
+package com.marketdata.aggregator;
+
+import com.marketdata.proto.Aggregate;
+import io.grpc.stub.ServerCallStreamObserver;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Backpressure-aware delivery of aggregates to one server-streaming call.
+ *
+ * Each watched symbol has a conflation slot that only records "changed since last send".
+ * The ingest thread flips that flag and, at most once per drain, hands the stream to
+ * the delivery executor; the drain reads the newest candle for every changed symbol
+ * and writes it only while the transport reports {@code isReady()}. A slow client
+ * therefore receives the latest candle per symbol instead of a growing backlog, and
+ * never stalls ingestion. Cancellation unsubscribes immediately.
+ *
+ * Symbols can be added and removed while the call is open, each at its own interval
+ * and publish tier. A throttled tier's slots are fed by the {@link PublishScheduler}
+ * instead of the aggregator, so a slot is marked at most once per tier interval.
+ */
+final class ConflatingAggregateStream {
+
+    private final Aggregator aggregator;
+    private final PublishScheduler publisher;
+    private final ServerCallStreamObserver<Aggregate> observer;
+    private final Executor executor;
+    private final CandleInterval interval;
+    private final PublishScheduler.Tier tier;
+
+    // Keyed by symbol and interval; guarded by itself
+    private final Map<SlotKey, Slot> slots = new HashMap<>();
+    private final AtomicReference<Slot> dirty = new AtomicReference<>();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private Subscription wildcard;
+
+    // Set by terminate(); delivered by the drain so it never races onNext
+    private final AtomicBoolean terminalPending = new AtomicBoolean();
+    private volatile Throwable terminalError;
+
+    /**
+     * @param publisher source of throttled tiers; null if only {@code REALTIME} is served
+     * @param interval bar delivered by {@link #watch(String)} and {@link #watchAll()}
+     * @param tier publish tier of {@link #watch(String)} and {@link #watchAll()}
+     */
+    ConflatingAggregateStream(Aggregator aggregator,
+                              PublishScheduler publisher,
+                              ServerCallStreamObserver<Aggregate> observer,
+                              Executor executor,
+                              CandleInterval interval,
+                              PublishScheduler.Tier tier) {
+        this.aggregator = aggregator;
+        this.publisher = publisher;
+        this.observer = observer;
+        this.executor = executor;
+        this.interval = interval;
+        this.tier = tier;
+
+        // Must be installed before the service method returns
+        observer.setOnReadyHandler(this::schedule);
+        observer.setOnCancelHandler(this::close);
+    }
+
+    /**
+     * Start delivering a symbol. Its current state (if any) is sent on the next drain.
+     */
+    void watch(String symbol) {
+        watch(symbol, interval, tier);
+    }
+
+    /**
+     * Start delivering one interval of a symbol at a publish tier; a no-op if it is
+     * already watched at that tier, and a switch to the new tier otherwise. A symbol
+     * that has not traded yet is not interned; it is delivered from its first tick.
+     */
+    void watch(String symbol, CandleInterval barInterval, PublishScheduler.Tier rate) {
+        SlotKey key = new SlotKey(symbol, barInterval);
+        Slot slot = new Slot(aggregator.symbolId(symbol), barInterval, rate);
+        Slot replaced;
+        synchronized (slots) {
+            if (closed.get()) {
+                return;
+            }
+            replaced = slots.get(key);
+            if (replaced != null && replaced.rate == rate) {
+                return;
+            }
+            slots.put(key, slot);
+            slot.subscription = publisher == null
+                    ? aggregator.subscribe(symbol, slot)
+                    : publisher.subscribe(symbol, rate, slot);
+        }
+        if (replaced != null) {
+            replaced.removed = true;
+            replaced.subscription.cancel();
+        }
+        if (slot.symbolId >= 0) {
+            slot.onUpdate(slot.symbolId);
+        }
+    }
+
+    /**
+     * Stop delivering one interval of a symbol; an update already queued is dropped.
+     */
+    void unwatch(String symbol, CandleInterval barInterval) {
+        Slot slot;
+        synchronized (slots) {
+            slot = slots.remove(new SlotKey(symbol, barInterval));
+        }
+        if (slot != null) {
+            slot.removed = true;
+            slot.subscription.cancel();
+        }
+    }
+
+    /**
+     * Deliver every symbol, including ones first seen later, through a single wildcard
+     * listener. Slots are created on a symbol's first update; all symbols known now are
+     * sent on the next drain.
+     */
+    void watchAll() {
+        AllSymbols all = new AllSymbols();
+        synchronized (slots) {
+            if (closed.get()) {
+                return;
+            }
+            wildcard = publisher == null ? aggregator.subscribeAll(all) : publisher.subscribeAll(tier, all);
+        }
+        int known = aggregator.symbolCount();
+        for (int id = 0; id < known; id++) {
+            all.onUpdate(id);
+        }
+    }
+
+    /**
+     * Unsubscribe every slot. Safe to call more than once and from any thread.
+     */
+    void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        synchronized (slots) {
+            for (Slot slot : slots.values()) {
+                slot.subscription.cancel();
+            }
+            slots.clear();
+            if (wildcard != null) {
+                wildcard.cancel();
+            }
+        }
+    }
+
+    /**
+     * Unsubscribe and end the call: completed if {@code error} is null, failed otherwise.
+     * The terminal signal is sent from the drain, after any in-flight {@code onNext}.
+     */
+    void terminate(Throwable error) {
+        terminalError = error;
+        if (terminalPending.compareAndSet(false, true)) {
+            close();
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        if (wip.getAndIncrement() == 0) {
+            executor.execute(this::drainLoop);
+        }
+    }
+
+    private void drainLoop() {
+        int missed = 1;
+        do {
+            drain();
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void drain() {
+        if (closed.get()) {
+            if (terminalPending.compareAndSet(true, false)) {
+                try {
+                    Throwable error = terminalError;
+                    if (error == null) {
+                        observer.onCompleted();
+                    } else {
+                        observer.onError(error);
+                    }
+                } catch (RuntimeException e) {
+                    // Call already cancelled
+                }
+            }
+            return;
+        }
+        if (!observer.isReady()) {
+            // onReadyHandler reschedules once the transport has room again
+            return;
+        }
+        Slot slot = dirty.getAndSet(null);
+        while (slot != null) {
+            if (closed.get()) {
+                return;
+            }
+            if (!observer.isReady()) {
+                // Put back this slot and everything after it; their flags are still set
+                requeue(slot);
+                return;
+            }
+            Slot next = slot.next;
+            slot.next = null;
+
+            if (slot.removed) {
+                slot = next;
+                continue;
+            }
+
+            // Clear before reading so an update racing with the send marks the slot again
+            slot.pending.set(false);
+            Candle candle = aggregator.getSnapshot(slot.symbolId, slot.interval);
+            if (candle != null) {
+                try {
+                    observer.onNext(AggregateMapper.toAggregate(candle));
+                } catch (RuntimeException e) {
+                    // Call already closed underneath us
+                    close();
+                    return;
+                }
+            }
+            slot = next;
+        }
+    }
+
+    private void requeue(Slot chain) {
+        while (chain != null) {
+            Slot next = chain.next;
+            push(chain);
+            chain = next;
+        }
+    }
+
+    private void push(Slot slot) {
+        Slot head;
+        do {
+            head = dirty.get();
+            slot.next = head;
+        } while (!dirty.compareAndSet(head, slot));
+    }
+
+    /**
+     * Wildcard listener fanning updates out to per-symbol slots, indexed by symbol id.
+     */
+    private final class AllSymbols implements AggregateListener {
+        private volatile Slot[] byId = new Slot[64];
+
+        @Override
+        public void onUpdate(int symbolId) {
+            Slot[] table = byId;
+            Slot slot = symbolId < table.length ? table[symbolId] : null;
+            if (slot == null) {
+                slot = create(symbolId);
+            }
+            slot.onUpdate(symbolId);
+        }
+
+        private synchronized Slot create(int symbolId) {
+            Slot[] table = byId;
+            if (symbolId >= table.length) {
+                table = Arrays.copyOf(table, Math.max(symbolId + 1, table.length * 2));
+            }
+            Slot slot = table[symbolId];
+            if (slot == null) {
+                slot = new Slot(symbolId, interval, tier);
+                table[symbolId] = slot;
+            }
+            byId = table;
+            return slot;
+        }
+    }
+
+    private record SlotKey(String symbol, CandleInterval interval) {}
+
+    /**
+     * Conflation slot for one symbol. It is its own listener and its own node in the
+     * dirty stack, so marking it changed allocates nothing.
+     */
+    private final class Slot implements AggregateListener {
+        // -1 until a symbol that had not traded when watched receives its first tick
+        volatile int symbolId;
+        final CandleInterval interval;
+        final PublishScheduler.Tier rate;
+        final AtomicBoolean pending = new AtomicBoolean();
+        Subscription subscription;
+        volatile boolean removed;
+        Slot next;
+
+        Slot(int symbolId, CandleInterval interval, PublishScheduler.Tier rate) {
+            this.symbolId = symbolId;
+            this.interval = interval;
+            this.rate = rate;
+        }
+
+        @Override
+        public void onUpdate(int updatedId) {
+            if (symbolId < 0) {
+                symbolId = updatedId;
+            }
+            if (!pending.get() && pending.compareAndSet(false, true)) {
+                push(this);
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.marketdata.aggregator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cheap wall-clock nanoseconds, comparable with the epoch-nanosecond timestamps stamped
+ * by the C++ ingestion layer. Anchored once to {@code currentTimeMillis} and advanced
+ * with {@code nanoTime}, so it neither allocates nor goes backwards.
+ */
+final class EpochClock {
+
+    private static final long BASE_EPOCH_NANOS = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    private static final long BASE_NANO_TIME = System.nanoTime();
+
+    private EpochClock() {
+    }
+
+    static long epochNanos() {
+        return BASE_EPOCH_NANOS + (System.nanoTime() - BASE_NANO_TIME);
+    }
+}
@@ -1,21 +1,160 @@
 package com.marketdata.aggregator;
 
+import com.marketdata.cluster.SymbolRing;
 import io.grpc.Server;
-import io.grpc.ServerBuilder;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 public class GrpcServer {
 
     public static void main(String[] args) throws Exception {
-        int port = 50051;
+        ServerConfig config = ServerConfig.load(args);
+        int port = config.port();
 
-        Server server = ServerBuilder
-                .forPort(port)
-                .addService(new MarketDataServiceImpl())
+        Aggregator aggregator = new Aggregator(Aggregator.DEFAULT_HISTORY_DEPTH, config.analytics());
+
+        // Rebuild state from the latest snapshot plus the journal before any client can connect
+        Path journalDir = config.journalDir().isEmpty() ? null : Path.of(config.journalDir());
+        SnapshotManager snapshots = null;
+        long replayFrom = 0;
+        if (!config.snapshotDir().isEmpty()) {
+            snapshots = new SnapshotManager(Path.of(config.snapshotDir()), aggregator, journalDir, config.snapshotRetain());
+            long started = System.nanoTime();
+            SnapshotManager.LoadResult loaded = snapshots.loadLatest();
+            if (loaded != null) {
+                replayFrom = loaded.startSeq();
+                System.out.printf("Loaded %d symbols from %s in %d ms%n",
+                        loaded.symbols(), loaded.file().getFileName(), (System.nanoTime() - started) / 1_000_000);
+            }
+        }
+
+        TickJournal journal = null;
+        if (journalDir != null) {
+            long started = System.nanoTime();
+            TickJournal.ReplayResult replay = TickJournal.replay(journalDir, aggregator, replayFrom);
+            System.out.printf("Replayed %d ticks from %d journal segments in %d ms%n",
+                    replay.ticks(), replay.segments(), (System.nanoTime() - started) / 1_000_000);
+
+            journal = new TickJournal(journalDir, replay.nextSeq(), aggregator::symbolName,
+                    aggregator.producers()::name, (long) config.journalSegmentMb() << 20, config.journalBufferSize(),
+                    config.journalFsync(), config.journalFsyncIntervalMs());
+            aggregator.attachJournal(journal);
+            System.out.println("Tick journal enabled: " + journalDir.toAbsolutePath() + " (fsync " + config.journalFsync() + ")");
+        }
+        if (snapshots != null) {
+            snapshots.start(config.snapshotIntervalSeconds());
+        }
+
+        IngestMetrics metrics = new IngestMetrics(config.metricsSampleEvery());
+        MetricsReporter reporter = new MetricsReporter(metrics, aggregator, config);
+        if (config.metricsPort() > 0) {
+            reporter.startEndpoint(config.metricsPort());
+        }
+
+        TickSink sink = aggregator;
+        ShardedIngestPipeline pipeline = null;
+        if (config.ingestShards() > 0) {
+            pipeline = new ShardedIngestPipeline(aggregator, config.ingestShards(), config.ingestRingSize(), metrics);
+            sink = pipeline;
+            System.out.println("Sharded ingestion enabled: " + pipeline.shardCount() + " writer threads");
+        }
+
+        CandleHistory history = null;
+        if (!config.historyDir().isEmpty()) {
+            history = new CandleHistory(Path.of(config.historyDir()), aggregator,
+                    config.historyIntervals(), config.historySealSeconds());
+            history.start();
+            System.out.println("Candle history enabled: " + Path.of(config.historyDir()).toAbsolutePath()
+                    + " " + config.historyIntervals());
+        }
+
+        MoverIndex movers = null;
+        if (config.moversIntervalMs() > 0) {
+            movers = new MoverIndex(aggregator, config.moversMaxN(), config.moversRateWindowSeconds());
+            movers.start(config.moversIntervalMs());
+        }
+
+        PublishScheduler publisher = null;
+        if (config.publishTickMs() > 0) {
+            publisher = new PublishScheduler(aggregator, config.publishFastMs(), config.publishSlowMs(),
+                    config.publishTickMs());
+            publisher.start();
+        } else if (config.publishDefault() != PublishScheduler.Tier.REALTIME) {
+            throw new IllegalArgumentException("marketdata.publish.default " + config.publishDefault()
+                    + " needs marketdata.publish.tickMs > 0");
+        }
+
+        MarketDataServiceImpl service = new MarketDataServiceImpl(aggregator, sink, metrics);
+        service.configureIngest(config.ingestWindow(), config.ingestAckIntervalMs());
+        if (history != null) {
+            service.attachHistory(history);
+        }
+        if (movers != null) {
+            service.attachMovers(movers);
+        }
+        if (publisher != null) {
+            service.attachPublisher(publisher, config.publishDefault());
+            System.out.println("Publish tiers: fast " + config.publishFastMs() + " ms, slow " + config.publishSlowMs()
+                    + " ms, default " + config.publishDefault().name().toLowerCase(Locale.ROOT));
+        }
+        if (!config.clusterNodes().isEmpty()) {
+            SymbolRing ring = SymbolRing.parse(config.clusterNodes());
+            int self = ring.nodes().indexOf(config.clusterSelf());
+            if (self < 0) {
+                throw new IllegalArgumentException("marketdata.cluster.self " + config.clusterSelf()
+                        + " is not one of marketdata.cluster.nodes " + ring.nodes());
+            }
+            service.restrictToPartition(ring, self);
+            System.out.println("Cluster node " + (self + 1) + " of " + ring.size() + ": " + config.clusterSelf());
+        }
+
+        TransportSettings transportSettings = config.transport();
+        NettyTransport transport = new NettyTransport(transportSettings);
+        Server server = transport.builder(port)
+                .addService(service)
                 .build();
+        System.out.println("gRPC transport: " + transportSettings.describe());
 
         server.start();
         System.out.println("gRPC Aggregation Server started on port " + port);
 
+        ShardedIngestPipeline ingest = pipeline;
+        TickJournal attached = journal;
+        SnapshotManager checkpoints = snapshots;
+        CandleHistory candles = history;
+        MoverIndex ranking = movers;
+        PublishScheduler throttle = publisher;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.shutdown();
+            try {
+                server.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            transport.close();
+            if (ingest != null) {
+                ingest.close();
+            }
+            if (candles != null) {
+                candles.close();
+            }
+            if (ranking != null) {
+                ranking.close();
+            }
+            if (throttle != null) {
+                throttle.close();
+            }
+            // Final snapshot while the journal is still open, so its covered sequence matches what is flushed
+            if (checkpoints != null) {
+                checkpoints.close();
+            }
+            if (attached != null) {
+                attached.close();
+            }
+            reporter.close();
+        }, "shutdown"));
+
         server.awaitTermination();
     }
 }
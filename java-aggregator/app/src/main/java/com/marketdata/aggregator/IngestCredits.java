@@ -0,0 +1,69 @@
+package com.marketdata.aggregator;
+
+import io.grpc.stub.ServerCallStreamObserver;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Manual inbound flow control for one ingest call.
+ *
+ * At most {@code window} messages are requested and not yet processed. Each processed
+ * message is replaced by a new request only while the {@link TickSink} has capacity;
+ * otherwise the credit is withheld and released by a timer once the sink has drained.
+ * A burst from the sender then waits in its own buffers and the HTTP/2 window instead
+ * of piling up in this heap.
+ */
+final class IngestCredits {
+
+    private static final long RECHECK_MICROS = 500;
+
+    private final ServerCallStreamObserver<?> call;
+    private final TickSink sink;
+    private final int window;
+    private final ScheduledExecutorService timer;
+    private final AtomicInteger withheld = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * Switches the call to manual flow control; must be called before the service method returns.
+     */
+    IngestCredits(ServerCallStreamObserver<?> call, TickSink sink, int window, ScheduledExecutorService timer) {
+        this.call = call;
+        this.sink = sink;
+        this.window = window;
+        this.timer = timer;
+        call.disableAutoRequest();
+        call.request(window);
+    }
+
+    /**
+     * One message has been handed to the sink.
+     */
+    void processed() {
+        if (withheld.get() == 0 && sink.hasCapacity()) {
+            call.request(1);
+        } else if (withheld.getAndIncrement() == 0) {
+            timer.schedule(this::release, RECHECK_MICROS, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    void close() {
+        closed = true;
+    }
+
+    private void release() {
+        if (closed) {
+            return;
+        }
+        if (!sink.hasCapacity()) {
+            timer.schedule(this::release, RECHECK_MICROS, TimeUnit.MICROSECONDS);
+            return;
+        }
+        int credits = withheld.getAndSet(0);
+        if (credits > 0) {
+            call.request(credits);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.marketdata.aggregator;
+
+import com.marketdata.proto.TickBatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hot-path metrics for tick ingestion.
+ *
+ * Counting is a single atomic add per tick (per stream and per symbol id); latencies
+ * are only timed on one tick in {@code sampleEvery} per stream so the clock reads stay
+ * off most ticks. Nothing here allocates or does I/O on the tick path: rates and
+ * percentiles are derived by {@link MetricsReporter} when a report is taken.
+ */
+public final class IngestMetrics {
+
+    private static final int COUNTER_PAGE_SHIFT = 10;
+    private static final int COUNTER_PAGE_SIZE = 1 << COUNTER_PAGE_SHIFT;
+
+    private final int sampleMask;
+    private final AtomicLong streamIds = new AtomicLong();
+    private final Map<Long, StreamMeter> streams = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<AtomicLongArray> symbolTicks =
+            new AtomicReferenceArray<>(CandleStore.MAX_SYMBOLS >> COUNTER_PAGE_SHIFT);
+    private final LongAdder totalTicks = new LongAdder();
+
+    private final LatencyHistogram onTickLatency = new LatencyHistogram();
+    private final LatencyHistogram ingestToPublishLatency = new LatencyHistogram();
+
+    /**
+     * @param sampleEvery time one tick in this many per stream (rounded up to a power of two)
+     */
+    public IngestMetrics(int sampleEvery) {
+        int every = Integer.highestOneBit(Math.max(1, sampleEvery - 1)) << 1;
+        this.sampleMask = sampleEvery <= 1 ? 0 : every - 1;
+    }
+
+    /**
+     * Register a new ingest stream. Call {@link StreamMeter#close()} when it ends.
+     */
+    public StreamMeter openStream(String kind) {
+        long id = streamIds.incrementAndGet();
+        StreamMeter meter = new StreamMeter(id, kind + "-" + id);
+        streams.put(id, meter);
+        return meter;
+    }
+
+    void countSymbol(int symbolId, long ticks) {
+        int p = symbolId >>> COUNTER_PAGE_SHIFT;
+        AtomicLongArray page = symbolTicks.get(p);
+        if (page == null) {
+            symbolTicks.compareAndSet(p, null, new AtomicLongArray(COUNTER_PAGE_SIZE));
+            page = symbolTicks.get(p);
+        }
+        page.addAndGet(symbolId & (COUNTER_PAGE_SIZE - 1), ticks);
+    }
+
+    /**
+     * @return true if a run of ticks numbered {@code before+1 .. after} contains one that
+     *         should be sampled (i.e. crosses a multiple of the sampling period)
+     */
+    boolean sampled(long before, long after) {
+        return (before & ~sampleMask) != (after & ~sampleMask);
+    }
+
+    /**
+     * Record the time from C++ ingest to an update being published; ignored if unset.
+     */
+    void recordIngestToPublish(long ingestTimestamp) {
+        if (ingestTimestamp > 0) {
+            ingestToPublishLatency.record(EpochClock.epochNanos() - ingestTimestamp);
+        }
+    }
+
+    long symbolTicks(int symbolId) {
+        AtomicLongArray page = symbolTicks.get(symbolId >>> COUNTER_PAGE_SHIFT);
+        return page == null ? 0 : page.get(symbolId & (COUNTER_PAGE_SIZE - 1));
+    }
+
+    long totalTicks() {
+        return totalTicks.sum();
+    }
+
+    List<StreamMeter> streams() {
+        return new ArrayList<>(streams.values());
+    }
+
+    LatencyHistogram onTickLatency() {
+        return onTickLatency;
+    }
+
+    LatencyHistogram ingestToPublishLatency() {
+        return ingestToPublishLatency;
+    }
+
+    /**
+     * Per-stream tick counter. Written only by the stream's own (serialized) callbacks.
+     */
+    public final class StreamMeter implements AutoCloseable {
+        private final long id;
+        private final String name;
+        private final AtomicLong ticks = new AtomicLong();
+
+        private StreamMeter(long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        /**
+         * Count one tick for this stream and its symbol.
+         *
+         * @return true if the caller should time this tick
+         */
+        public boolean onTick(int symbolId) {
+            long n = ticks.get() + 1;
+            ticks.lazySet(n);
+            totalTicks.increment();
+            countSymbol(symbolId, 1);
+            return (n & sampleMask) == 0;
+        }
+
+        /**
+         * Count a whole batch: one add per stream and one per symbol in its dictionary.
+         *
+         * @param symbolIds interned dictionary of the batch
+         * @param perSymbol scratch space, at least as long as the dictionary
+         * @return true if the caller should record this batch's latency sample
+         */
+        public boolean onBatch(TickBatch batch, int[] symbolIds, long[] perSymbol) {
+            int dictionary = batch.getSymbolsCount();
+            Arrays.fill(perSymbol, 0, dictionary, 0);
+            int n = batch.getSymbolIndexCount();
+            for (int i = 0; i < n; i++) {
+                perSymbol[batch.getSymbolIndex(i)]++;
+            }
+            for (int i = 0; i < dictionary; i++) {
+                if (perSymbol[i] > 0) {
+                    countSymbol(symbolIds[i], perSymbol[i]);
+                }
+            }
+
+            long before = ticks.get();
+            long after = before + n;
+            ticks.lazySet(after);
+            totalTicks.add(n);
+            return sampled(before, after);
+        }
+
+        /**
+         * Record the sampled cost of {@code Aggregator.onTick} and, if the tick carries an
+         * ingest timestamp, the time from C++ ingest to the update being published.
+         */
+        public void recordSample(long onTickNanos, long ingestTimestamp) {
+            onTickLatency.record(onTickNanos);
+            recordIngestToPublish(ingestTimestamp);
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public long ticks() {
+            return ticks.get();
+        }
+
+        @Override
+        public void close() {
+            streams.remove(id);
+        }
+    }
+}
@@ -1,64 +1,193 @@
 package com.marketdata.aggregator;
 
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 
-import com.marketdata.proto.Tick;
+import com.marketdata.cluster.SymbolRing;
 import com.marketdata.proto.Ack;
+import com.marketdata.proto.Aggregate;
+import com.marketdata.proto.AggregateList;
+import com.marketdata.proto.AggregateRequest;
+import com.marketdata.proto.AggregatesRequest;
+import com.marketdata.proto.CandleList;
+import com.marketdata.proto.CandlesRequest;
+import com.marketdata.proto.IngestAck;
+import com.marketdata.proto.Interval;
 import com.marketdata.proto.MarketDataServiceGrpc;
+import com.marketdata.proto.Mover;
+import com.marketdata.proto.PublishRate;
+import com.marketdata.proto.SubscriptionCommand;
+import com.marketdata.proto.Tick;
+import com.marketdata.proto.TickBatch;
+import com.marketdata.proto.TopMovers;
+import com.marketdata.proto.TopMoversRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class MarketDataServiceImpl
         extends MarketDataServiceGrpc.MarketDataServiceImplBase {
 
     // Main Aggregation Engine (Phase 4)
     // Shared across all client streams to maintain a "Global Market State"
-    private final Aggregator aggregator = new Aggregator();
+    private final Aggregator aggregator;
+
+    // Where ingest streams hand ticks: the aggregator itself or a sharded pipeline in front of it
+    private final TickSink sink;
+
+    // Counters and sampled latencies for the ingest path (no per-tick logging)
+    private final IngestMetrics metrics;
+
+    // Set when this server is one node of a partitioned cluster; ticks for other nodes' symbols are refused
+    private SymbolRing ring;
+    private int self;
 
+    // Closed bars on disk; null serves GetCandles from the in-memory ring only
+    private CandleHistory history;
+
+    // Ranked top movers; null answers GetTopMovers and StreamTopMovers with FAILED_PRECONDITION
+    private MoverIndex movers;
+
+    // Throttled publish tiers; null serves every stream in REALTIME, whatever rate it asks for
+    private PublishScheduler publisher;
+    private PublishScheduler.Tier defaultTier = PublishScheduler.Tier.REALTIME;
+    private volatile boolean warnedUnthrottled;
+
+    // Inbound flow control and acks of the ingest calls
+    private int ingestWindow = 256;
+    private long ackIntervalMillis = 100;
+    private final ScheduledExecutorService ingestTimer = Executors.newSingleThreadScheduledExecutor(
+            daemonThreads("ingest-timer-"));
+
+    // Drains conflated StreamAggregates slots off the ingest threads
+    private final ExecutorService deliveryExecutor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), daemonThreads("aggregate-delivery-"));
+
+    public MarketDataServiceImpl() {
+        this(new Aggregator(), new IngestMetrics(64));
+    }
+
+    public MarketDataServiceImpl(Aggregator aggregator, IngestMetrics metrics) {
+        this(aggregator, aggregator, metrics);
+    }
+
+    public MarketDataServiceImpl(Aggregator aggregator, TickSink sink, IngestMetrics metrics) {
+        this.aggregator = aggregator;
+        this.sink = sink;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Accept ticks only for symbols that {@code ring} assigns to node {@code self}.
+     * Call once, before the server starts.
+     */
+    public void restrictToPartition(SymbolRing ring, int self) {
+        this.ring = ring;
+        this.self = self;
+    }
+
+    /**
+     * Serve {@code GetCandles} from a persistent history. Call once, before the server starts.
+     */
+    public void attachHistory(CandleHistory history) {
+        this.history = history;
+    }
+
+    /**
+     * Serve {@code GetTopMovers} and {@code StreamTopMovers} from a ranked index. Call once,
+     * before the server starts.
+     */
+    public void attachMovers(MoverIndex movers) {
+        this.movers = movers;
+    }
+
+    /**
+     * Serve throttled publish tiers from {@code publisher}; {@code defaultTier} applies to
+     * streams that do not ask for a rate. Call once, before the server starts.
+     */
+    public void attachPublisher(PublishScheduler publisher, PublishScheduler.Tier defaultTier) {
+        this.publisher = publisher;
+        this.defaultTier = defaultTier;
+    }
+
+    /**
+     * @param window messages (ticks or batches) an ingest call may have requested but not yet processed
+     * @param ackIntervalMillis period of the cumulative acks sent on {@code IngestTicks}
+     */
+    public void configureIngest(int window, long ackIntervalMillis) {
+        if (window < 1 || ackIntervalMillis < 1) {
+            throw new IllegalArgumentException("window and ackIntervalMillis must be positive");
+        }
+        this.ingestWindow = window;
+        this.ackIntervalMillis = ackIntervalMillis;
+    }
 
     @Override
     public StreamObserver<Tick> streamTicks(
             StreamObserver<Ack> responseObserver) {
 
+        IngestMetrics.StreamMeter meter = metrics.openStream("ticks");
+        IngestCredits credits = new IngestCredits((ServerCallStreamObserver<Ack>) responseObserver,
+                sink, ingestWindow, ingestTimer);
+
         return new StreamObserver<>() {
 
             long count = 0;
-            // Create a per-stream aggregator (or this could be shared globally if we want global state)
-            // For Phase 4, let's assume we want a global view, so we should inject it.
-            // But for simplicity in this step, I'll instantiate a static/shared one or just one here.
-            // Let's make it an instance field of the service to persist across streams if needed,
-            // but for now, to keep it simple and clean:
-            
+            boolean failed = false;
+
             @Override
             public void onNext(Tick tick) {
+                if (failed) {
+                    return;
+                }
+                int symbolId = admit(tick.getSymbol());
+                if (symbolId < 0) {
+                    failed = true;
+                    credits.close();
+                    meter.close();
+                    responseObserver.onError(misrouted(tick.getSymbol()));
+                    return;
+                }
                 count++;
-                
-                // Update Aggregates (Thread-safe)
-                aggregator.onTick(tick);
-                
-                // Get Real-time Snapshot
-                Candle candle = aggregator.getSnapshot(tick.getSymbol());
-                
-                System.out.println(
-                        "[RECEIVED] symbol=" + tick.getSymbol()
-                        + " price=" + tick.getPrice()
-                        + " volume=" + tick.getVolume()
-                );
-                
-                if (candle != null) {
-                     System.out.println(
-                        "[AGGREGATE] symbol=" + candle.symbol()
-                        + " OHLC=[" + candle.open() + ", " + candle.high() + ", " + candle.low() + ", " + candle.close() + "]"
-                        + " vol=" + candle.volume()
-                    );
+
+                // Update Aggregates (Thread-safe); time only a sample of ticks
+                if (meter.onTick(symbolId)) {
+                    long start = System.nanoTime();
+                    sink.onTick(symbolId, tick.getPrice(), tick.getVolume(),
+                            tick.getExchangeTimestamp(), tick.getIngestTimestamp());
+                    // An asynchronous sink records ingest-to-publish itself once the tick is applied
+                    meter.recordSample(System.nanoTime() - start,
+                            sink.isSynchronous() ? tick.getIngestTimestamp() : 0);
+                } else {
+                    sink.onTick(symbolId, tick.getPrice(), tick.getVolume(),
+                            tick.getExchangeTimestamp(), tick.getIngestTimestamp());
                 }
+                credits.processed();
             }
 
             @Override
             public void onError(Throwable t) {
+                credits.close();
+                meter.close();
                 System.err.println("[ERROR] stream failed: " + t.getMessage());
             }
 
             @Override
             public void onCompleted() {
+                credits.close();
+                meter.close();
+                if (failed) {
+                    return;
+                }
                 System.out.println("[STREAM CLOSED] total_ticks=" + count);
 
                 Ack ack = Ack.newBuilder()
@@ -73,79 +202,456 @@ public class MarketDataServiceImpl
     }
 
     @Override
-    public void getAggregate(com.marketdata.proto.AggregateRequest request,
-                             io.grpc.stub.StreamObserver<com.marketdata.proto.Aggregate> responseObserver) {
-        Candle candle = aggregator.getSnapshot(request.getSymbol());
+    public StreamObserver<TickBatch> streamTickBatches(
+            StreamObserver<Ack> responseObserver) {
+
+        IngestMetrics.StreamMeter meter = metrics.openStream("batches");
+        IngestCredits credits = new IngestCredits((ServerCallStreamObserver<Ack>) responseObserver,
+                sink, ingestWindow, ingestTimer);
+
+        return new StreamObserver<>() {
+
+            long count = 0;
+            boolean failed = false;
+
+            // Per-stream scratch, grown to the largest dictionary seen
+            int[] symbolIds = new int[64];
+            long[] perSymbol = new long[64];
+
+            @Override
+            public void onNext(TickBatch batch) {
+                if (failed) {
+                    return;
+                }
+                int dictionary = batch.getSymbolsCount();
+                if (dictionary > symbolIds.length) {
+                    symbolIds = new int[Integer.highestOneBit(dictionary) << 1];
+                    perSymbol = new long[symbolIds.length];
+                }
+                for (int i = 0; i < dictionary; i++) {
+                    symbolIds[i] = admit(batch.getSymbols(i));
+                    if (symbolIds[i] < 0) {
+                        failed = true;
+                        credits.close();
+                        meter.close();
+                        responseObserver.onError(misrouted(batch.getSymbols(i)));
+                        return;
+                    }
+                }
+
+                int applied;
+                long start = System.nanoTime();
+                try {
+                    applied = sink.onBatch(batch, symbolIds);
+                } catch (IllegalArgumentException e) {
+                    failed = true;
+                    credits.close();
+                    meter.close();
+                    responseObserver.onError(Status.INVALID_ARGUMENT
+                            .withDescription(e.getMessage())
+                            .asRuntimeException());
+                    return;
+                }
+                long elapsed = System.nanoTime() - start;
+                count += applied;
+
+                if (applied > 0 && meter.onBatch(batch, symbolIds, perSymbol)) {
+                    long ingest = sink.isSynchronous() && batch.getIngestTimestampCount() == applied
+                            ? batch.getIngestTimestamp(applied - 1)
+                            : 0;
+                    meter.recordSample(elapsed / applied, ingest);
+                }
+                credits.processed();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                credits.close();
+                meter.close();
+                System.err.println("[ERROR] batch stream failed: " + t.getMessage());
+            }
+
+            @Override
+            public void onCompleted() {
+                credits.close();
+                meter.close();
+                if (failed) {
+                    return;
+                }
+                System.out.println("[STREAM CLOSED] total_ticks=" + count);
+
+                responseObserver.onNext(Ack.newBuilder()
+                        .setSuccess(true)
+                        .setMessage("Received " + count + " ticks")
+                        .build());
+                responseObserver.onCompleted();
+            }
+        };
+    }
+
+    @Override
+    public StreamObserver<Tick> ingestTicks(StreamObserver<IngestAck> responseObserver) {
+        return new SequencedTickStream(
+                (ServerCallStreamObserver<IngestAck>) responseObserver,
+                sink,
+                metrics.openStream("ingest"),
+                this::admit,
+                this::misrouted,
+                aggregator.producers(),
+                ingestWindow,
+                ackIntervalMillis,
+                ingestTimer);
+    }
+
+    @Override
+    public void getAggregate(AggregateRequest request,
+                             StreamObserver<Aggregate> responseObserver) {
+        CandleInterval interval = resolveInterval(request.getInterval(), responseObserver);
+        if (interval == null) {
+            return;
+        }
+
+        Candle candle = aggregator.getSnapshot(request.getSymbol(), interval);
 
         if (candle == null) {
-            responseObserver.onError(io.grpc.Status.NOT_FOUND
+            responseObserver.onError(Status.NOT_FOUND
                     .withDescription("Symbol not found: " + request.getSymbol())
                     .asRuntimeException());
             return;
         }
 
-        com.marketdata.proto.Aggregate agg = com.marketdata.proto.Aggregate.newBuilder()
-                .setSymbol(candle.symbol())
-                .setOpen(candle.open())
-                .setHigh(candle.high())
-                .setLow(candle.low())
-                .setClose(candle.close())
-                .setVolume(candle.volume())
-                .setTimestamp(candle.timestamp())
-                .build();
+        responseObserver.onNext(AggregateMapper.toAggregate(candle));
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void getAggregates(AggregatesRequest request,
+                              StreamObserver<AggregateList> responseObserver) {
+        CandleInterval interval = resolveInterval(request.getInterval(), responseObserver);
+        if (interval == null) {
+            return;
+        }
+
+        AggregateList.Builder response = AggregateList.newBuilder();
+        if (request.getSymbolsCount() == 0) {
+            // Every known symbol that has traded, in id order
+            int count = aggregator.symbolCount();
+            for (int id = 0; id < count; id++) {
+                Candle candle = aggregator.getSnapshot(id, interval);
+                if (candle != null) {
+                    response.addAggregates(AggregateMapper.toAggregate(candle));
+                }
+            }
+        } else {
+            for (String symbol : request.getSymbolsList()) {
+                Candle candle = aggregator.getSnapshot(symbol, interval);
+                if (candle == null) {
+                    response.addMissing(symbol);
+                } else {
+                    response.addAggregates(AggregateMapper.toAggregate(candle));
+                }
+            }
+        }
 
-        responseObserver.onNext(agg);
+        responseObserver.onNext(response.build());
         responseObserver.onCompleted();
     }
 
     @Override
-    public void streamAggregates(com.marketdata.proto.AggregateRequest request,
-                                 io.grpc.stub.StreamObserver<com.marketdata.proto.Aggregate> responseObserver) {
-        String symbol = request.getSymbol();
-        
-        // Register a listener for updates
-        aggregator.registerListener(candle -> {
-            if (candle.symbol().equals(symbol)) {
-                com.marketdata.proto.Aggregate agg = com.marketdata.proto.Aggregate.newBuilder()
-                        .setSymbol(candle.symbol())
-                        .setOpen(candle.open())
-                        .setHigh(candle.high())
-                        .setLow(candle.low())
-                        .setClose(candle.close())
-                        .setVolume(candle.volume())
-                        .setTimestamp(candle.timestamp())
-                        .build();
-                
+    public void streamAggregates(AggregateRequest request,
+                                 StreamObserver<Aggregate> responseObserver) {
+        CandleInterval interval = resolveInterval(request.getInterval(), responseObserver);
+        if (interval == null) {
+            return;
+        }
+        PublishScheduler.Tier tier;
+        try {
+            tier = resolveTier(request.getRate());
+        } catch (StatusRuntimeException e) {
+            responseObserver.onError(e);
+            return;
+        }
+
+        // Conflated, isReady()-gated delivery; unsubscribes as soon as the client cancels
+        ConflatingAggregateStream stream = new ConflatingAggregateStream(
+                aggregator,
+                publisher,
+                (ServerCallStreamObserver<Aggregate>) responseObserver,
+                deliveryExecutor,
+                interval,
+                tier);
+        if (request.getSymbol().isEmpty()) {
+            stream.watchAll();
+        } else {
+            stream.watch(request.getSymbol());
+        }
+    }
+
+    @Override
+    public StreamObserver<SubscriptionCommand> subscribe(
+            StreamObserver<Aggregate> responseObserver) {
+        // One conflating stream serves every symbol this call adds
+        ConflatingAggregateStream stream = new ConflatingAggregateStream(
+                aggregator,
+                publisher,
+                (ServerCallStreamObserver<Aggregate>) responseObserver,
+                deliveryExecutor,
+                CandleInterval.SESSION,
+                defaultTier);
+
+        return new StreamObserver<>() {
+            @Override
+            public void onNext(SubscriptionCommand command) {
+                CandleInterval interval;
                 try {
-                    synchronized(responseObserver) {
-                         responseObserver.onNext(agg);
+                    interval = CandleInterval.fromProto(command.getInterval());
+                } catch (IllegalArgumentException e) {
+                    stream.terminate(Status.INVALID_ARGUMENT
+                            .withDescription(e.getMessage())
+                            .asRuntimeException());
+                    return;
+                }
+
+                switch (command.getAction()) {
+                    case SUBSCRIPTION_ADD -> {
+                        PublishScheduler.Tier requested;
+                        try {
+                            requested = resolveTier(command.getRate());
+                        } catch (StatusRuntimeException e) {
+                            // A rate is only a preference; the shared stream is not failed over it
+                            requested = resolveTier(PublishRate.PUBLISH_DEFAULT);
+                        }
+                        PublishScheduler.Tier tier = requested;
+                        command.getSymbolsList().forEach(symbol -> stream.watch(symbol, interval, tier));
                     }
-                } catch (Exception e) {
-                    // Stream likely closed
-                    System.err.println("Failed to send update: " + e.getMessage());
+                    case SUBSCRIPTION_REMOVE -> command.getSymbolsList().forEach(symbol -> stream.unwatch(symbol, interval));
+                    default -> stream.terminate(Status.INVALID_ARGUMENT
+                            .withDescription("Unknown subscription action: " + command.getActionValue())
+                            .asRuntimeException());
                 }
             }
+
+            @Override
+            public void onError(Throwable t) {
+                stream.close();
+            }
+
+            @Override
+            public void onCompleted() {
+                stream.terminate(null);
+            }
+        };
+    }
+
+    @Override
+    public void getCandles(CandlesRequest request,
+                           StreamObserver<CandleList> responseObserver) {
+        CandleInterval interval = resolveInterval(request.getInterval(), responseObserver);
+        if (interval == null) {
+            return;
+        }
+        if (!interval.rollsOver()) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription("Interval " + request.getInterval() + " has no closed bars")
+                    .asRuntimeException());
+            return;
+        }
+        long to = request.getToTimestamp() > 0 ? request.getToTimestamp() : Long.MAX_VALUE;
+
+        List<Candle> bars;
+        try {
+            if (history != null) {
+                bars = history.query(request.getSymbol(), interval, request.getFromTimestamp(), to, request.getLimit());
+            } else {
+                bars = new ArrayList<>();
+                for (Candle bar : aggregator.getClosedBars(request.getSymbol(), interval, aggregator.historyDepth())) {
+                    if (bar.startTimestamp() >= request.getFromTimestamp() && bar.startTimestamp() < to) {
+                        bars.add(bar);
+                    }
+                }
+                if (request.getLimit() > 0 && bars.size() > request.getLimit()) {
+                    bars = bars.subList(bars.size() - request.getLimit(), bars.size());
+                }
+            }
+        } catch (IOException e) {
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Candle history unreadable: " + e.getMessage())
+                    .withCause(e)
+                    .asRuntimeException());
+            return;
+        }
+
+        CandleList.Builder response = CandleList.newBuilder();
+        for (Candle bar : bars) {
+            response.addCandles(AggregateMapper.toAggregate(bar));
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void getTopMovers(TopMoversRequest request,
+                             StreamObserver<TopMovers> responseObserver) {
+        MoverIndex.Metric metric = resolveMetric(request, responseObserver);
+        if (metric == null) {
+            return;
+        }
+        responseObserver.onNext(toTopMovers(metric, movers.top(metric, request.getN())));
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void streamTopMovers(TopMoversRequest request,
+                                StreamObserver<TopMovers> responseObserver) {
+        MoverIndex.Metric metric = resolveMetric(request, responseObserver);
+        if (metric == null) {
+            return;
+        }
+        ServerCallStreamObserver<TopMovers> call =
+                (ServerCallStreamObserver<TopMovers>) responseObserver;
+        AtomicReference<Subscription> watching =
+                new AtomicReference<>();
+        call.setOnCancelHandler(() -> {
+            Subscription subscription = watching.getAndSet(null);
+            if (subscription != null) {
+                subscription.cancel();
+            }
         });
-        
-        // Note: In a real implementation we would need a way to unregister listeners 
-        // when the client cancels or disconnects. For this phase, we'll keep it simple 
-        // and acknowledge that this leaks a listener per connection.
-        
-        // Send initial state immediately if exists
-        Candle initial = aggregator.getSnapshot(symbol);
-        if (initial != null) {
-             com.marketdata.proto.Aggregate agg = com.marketdata.proto.Aggregate.newBuilder()
-                    .setSymbol(initial.symbol())
-                    .setOpen(initial.open())
-                    .setHigh(initial.high())
-                    .setLow(initial.low())
-                    .setClose(initial.close())
-                    .setVolume(initial.volume())
-                    .setTimestamp(initial.timestamp())
-                    .build();
-             synchronized(responseObserver) {
-                responseObserver.onNext(agg);
-             }
+
+        // A slow client is offered only the newest ranking once it drains
+        watching.set(movers.watch(metric, request.getN(), top -> {
+            if (call.isCancelled()) {
+                return true;
+            }
+            if (!call.isReady()) {
+                return false;
+            }
+            call.onNext(toTopMovers(metric, top));
+            return true;
+        }));
+        if (call.isCancelled()) {
+            Subscription subscription = watching.getAndSet(null);
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+    }
+
+    // Id of an incoming tick's symbol, or -1 if another node of the cluster owns it
+    private int admit(String symbol) {
+        if (ring == null) {
+            return aggregator.internSymbol(symbol);
+        }
+        int id = aggregator.symbolId(symbol);
+        if (id >= 0) {
+            return id;
+        }
+        return ring.ownerOf(symbol) == self ? aggregator.internSymbol(symbol) : -1;
+    }
+
+    private StatusRuntimeException misrouted(String symbol) {
+        return Status.FAILED_PRECONDITION
+                .withDescription("Symbol " + symbol + " belongs to node " + ring.nodes().get(ring.ownerOf(symbol))
+                        + ", not " + ring.nodes().get(self))
+                .asRuntimeException();
+    }
+
+    /**
+     * Map the request's interval, failing the call with INVALID_ARGUMENT if it is unknown.
+     *
+     * @return the interval, or null if the call has already been failed
+     */
+    private static CandleInterval resolveInterval(Interval requested,
+                                                  StreamObserver<?> responseObserver) {
+        try {
+            return CandleInterval.fromProto(requested);
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription(e.getMessage())
+                    .asRuntimeException());
+            return null;
+        }
+    }
+
+    /**
+     * Map a requested publish rate to a tier, applying the server default. Without a
+     * publisher every rate is served in REALTIME: a client asking for fewer updates
+     * still gets correct, if more frequent, ones.
+     *
+     * @throws StatusRuntimeException INVALID_ARGUMENT for an unknown rate
+     */
+    private PublishScheduler.Tier resolveTier(PublishRate rate) {
+        PublishScheduler.Tier tier;
+        try {
+            tier = PublishScheduler.Tier.fromProto(rate, defaultTier);
+        } catch (IllegalArgumentException e) {
+            throw Status.INVALID_ARGUMENT
+                    .withDescription(e.getMessage())
+                    .asRuntimeException();
+        }
+        if (tier != PublishScheduler.Tier.REALTIME && publisher == null) {
+            if (!warnedUnthrottled) {
+                warnedUnthrottled = true;
+                System.out.println("[PUBLISH] " + tier + " requested but throttled tiers are disabled"
+                        + " (marketdata.publish.tickMs=0); serving REALTIME");
+            }
+            return PublishScheduler.Tier.REALTIME;
+        }
+        return tier;
+    }
+
+    /**
+     * Map a top-movers request, failing the call if movers are disabled, the metric is
+     * unknown or {@code n} is outside 1..maxN.
+     *
+     * @return the metric, or null if the call has already been failed
+     */
+    private MoverIndex.Metric resolveMetric(TopMoversRequest request,
+                                            StreamObserver<?> responseObserver) {
+        if (movers == null) {
+            responseObserver.onError(Status.FAILED_PRECONDITION
+                    .withDescription("Top movers are disabled on this node")
+                    .asRuntimeException());
+            return null;
         }
+        if (request.getN() < 1 || request.getN() > movers.maxN()) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription("n must be between 1 and " + movers.maxN() + ": " + request.getN())
+                    .asRuntimeException());
+            return null;
+        }
+        try {
+            return MoverIndex.Metric.fromProto(request.getMetric());
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription(e.getMessage())
+                    .asRuntimeException());
+            return null;
+        }
+    }
+
+    private TopMovers toTopMovers(MoverIndex.Metric metric, List<MoverIndex.Entry> top) {
+        TopMovers.Builder response = TopMovers.newBuilder()
+                .setMetric(metric.toProto());
+        for (MoverIndex.Entry entry : top) {
+            Mover.Builder mover = Mover.newBuilder()
+                    .setSymbol(entry.symbol())
+                    .setValue(entry.value());
+            Candle session = aggregator.getSnapshot(entry.symbolId(), CandleInterval.SESSION);
+            if (session != null) {
+                mover.setSession(AggregateMapper.toAggregate(session));
+            }
+            response.addMovers(mover.build());
+        }
+        return response.build();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 }
@@ -0,0 +1,188 @@
+package com.marketdata.aggregator;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns {@link IngestMetrics} into rates and percentiles off the hot path.
+ *
+ * A single background thread samples the counters every period, derives ticks/s per
+ * stream and per symbol plus windowed latency percentiles, optionally prints a one-line
+ * summary, and keeps the rendered text for {@code GET /metrics}.
+ */
+public final class MetricsReporter implements AutoCloseable {
+
+    private static final int TOP_SYMBOLS_IN_LOG = 5;
+
+    private final IngestMetrics metrics;
+    private final Aggregator aggregator;
+    private final boolean logSummary;
+    private final ScheduledExecutorService scheduler;
+    private HttpServer http;
+
+    // Previous sample, touched only by the scheduler thread
+    private long lastSampleNanos = System.nanoTime();
+    private long lastTotal;
+    private long[] lastSymbolTicks = new long[0];
+    private final Map<String, Long> lastStreamTicks = new HashMap<>();
+    private LatencyHistogram.Snapshot lastOnTick;
+    private LatencyHistogram.Snapshot lastIngestToPublish;
+
+    private volatile String rendered = "";
+
+    public MetricsReporter(IngestMetrics metrics, Aggregator aggregator, ServerConfig config) {
+        this.metrics = metrics;
+        this.aggregator = aggregator;
+        this.logSummary = config.metricsLogIntervalSeconds() > 0;
+        this.lastOnTick = metrics.onTickLatency().snapshot();
+        this.lastIngestToPublish = metrics.ingestToPublishLatency().snapshot();
+
+        int period = logSummary ? config.metricsLogIntervalSeconds() : 10;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::sample, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Serve the latest report as plain text on {@code GET /metrics}.
+     */
+    public void startEndpoint(int port) throws IOException {
+        http = HttpServer.create(new InetSocketAddress(port), 0);
+        http.createContext("/metrics", exchange -> {
+            byte[] body = rendered.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        http.start();
+        System.out.println("Metrics endpoint on http://localhost:" + port + "/metrics");
+    }
+
+    private void sample() {
+        try {
+            long now = System.nanoTime();
+            double seconds = Math.max(1e-9, (now - lastSampleNanos) / 1e9);
+            lastSampleNanos = now;
+
+            StringBuilder out = new StringBuilder(4096);
+
+            long total = metrics.totalTicks();
+            double totalRate = (total - lastTotal) / seconds;
+            lastTotal = total;
+            gauge(out, "marketdata_ticks_total", null, total);
+            gauge(out, "marketdata_ticks_per_second", null, totalRate);
+
+            Map<String, Long> seen = new HashMap<>();
+            for (IngestMetrics.StreamMeter stream : metrics.streams()) {
+                long ticks = stream.ticks();
+                long previous = lastStreamTicks.getOrDefault(stream.name(), 0L);
+                String label = "stream=\"" + stream.name() + "\"";
+                gauge(out, "marketdata_stream_ticks_total", label, ticks);
+                gauge(out, "marketdata_stream_ticks_per_second", label, (ticks - previous) / seconds);
+                seen.put(stream.name(), ticks);
+            }
+            lastStreamTicks.clear();
+            lastStreamTicks.putAll(seen);
+
+            int symbolCount = aggregator.symbolCount();
+            long[] symbolTicks = new long[symbolCount];
+            List<int[]> ranked = new ArrayList<>();
+            for (int id = 0; id < symbolCount; id++) {
+                long ticks = metrics.symbolTicks(id);
+                long previous = id < lastSymbolTicks.length ? lastSymbolTicks[id] : 0;
+                symbolTicks[id] = ticks;
+                if (ticks == 0) {
+                    continue;
+                }
+                String label = "symbol=\"" + aggregator.symbolName(id) + "\"";
+                gauge(out, "marketdata_symbol_ticks_total", label, ticks);
+                gauge(out, "marketdata_symbol_ticks_per_second", label, (ticks - previous) / seconds);
+                ranked.add(new int[] {id, (int) Math.min(Integer.MAX_VALUE, ticks - previous)});
+            }
+            long[] previousSymbolTicks = lastSymbolTicks;
+            lastSymbolTicks = symbolTicks;
+
+            LatencyHistogram.Snapshot onTick = metrics.onTickLatency().snapshot();
+            LatencyHistogram.Snapshot onTickWindow = onTick.minus(lastOnTick);
+            lastOnTick = onTick;
+            histogram(out, "marketdata_ontick_latency_nanos", onTickWindow);
+
+            LatencyHistogram.Snapshot ingest = metrics.ingestToPublishLatency().snapshot();
+            LatencyHistogram.Snapshot ingestWindow = ingest.minus(lastIngestToPublish);
+            lastIngestToPublish = ingest;
+            histogram(out, "marketdata_ingest_to_publish_latency_nanos", ingestWindow);
+
+            rendered = out.toString();
+
+            if (logSummary) {
+                ranked.sort((a, b) -> Integer.compare(b[1], a[1]));
+                StringBuilder top = new StringBuilder();
+                for (int i = 0; i < Math.min(TOP_SYMBOLS_IN_LOG, ranked.size()); i++) {
+                    int id = ranked.get(i)[0];
+                    long before = id < previousSymbolTicks.length ? previousSymbolTicks[id] : 0;
+                    top.append(i == 0 ? "" : " ")
+                            .append(aggregator.symbolName(id)).append('=')
+                            .append(String.format(Locale.ROOT, "%.0f", (symbolTicks[id] - before) / seconds));
+                }
+                System.out.println(String.format(Locale.ROOT,
+                        "[METRICS] ticks/s=%.0f streams=%d symbols=%d onTick_ns(p50/p99/max)=%d/%d/%d"
+                                + " ingest_to_publish_us(p50/p99)=%d/%d top=[%s]",
+                        totalRate, seen.size(), symbolCount,
+                        onTickWindow.percentile(0.50), onTickWindow.percentile(0.99), onTickWindow.max(),
+                        ingestWindow.percentile(0.50) / 1000, ingestWindow.percentile(0.99) / 1000,
+                        top));
+            }
+        } catch (RuntimeException e) {
+            // Never let a reporting bug kill the scheduler
+            System.err.println("[METRICS] report failed: " + e);
+        }
+    }
+
+    private static void gauge(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(String.format(Locale.ROOT, "%.2f", value));
+        }
+        out.append('\n');
+    }
+
+    private static void histogram(StringBuilder out, String name, LatencyHistogram.Snapshot window) {
+        for (double q : Arrays.asList(0.5, 0.9, 0.99, 0.999)) {
+            gauge(out, name, "quantile=\"" + q + "\"", window.percentile(q));
+        }
+        gauge(out, name + "_max", null, window.max());
+        gauge(out, name + "_count", null, window.count());
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        if (http != null) {
+            http.stop(0);
+        }
+    }
+}
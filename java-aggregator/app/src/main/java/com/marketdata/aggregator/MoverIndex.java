@@ -0,0 +1,331 @@
+package com.marketdata.aggregator;
+
+import com.marketdata.proto.MoverMetric;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Ranked indexes of the session's top movers: by % change from the session open (gainers
+ * and losers), by session volume and by recent tick rate.
+ *
+ * The ingest path only sets a per-symbol dirty bit. A ranking thread wakes every period,
+ * re-scores just the symbols that ticked since its last pass and moves them within
+ * ordered sets, so a pass costs O(changed symbols * log symbols) however many symbols
+ * are quiet. The tick rate is forward-decayed: each symbol accumulates
+ * {@code ticks * e^((t - landmark) / window)}, and because every symbol decays by the
+ * same factor the order of quiet symbols never needs touching.
+ *
+ * After each pass the top {@code maxN} of every metric is published for
+ * {@link #top(Metric, int)}, and watchers registered with {@link #watch} are called
+ * only when their top-N membership or order changed.
+ */
+public final class MoverIndex implements AutoCloseable {
+
+    public enum Metric {
+        GAINERS(MoverMetric.MOVER_GAINERS),
+        LOSERS(MoverMetric.MOVER_LOSERS),
+        VOLUME(MoverMetric.MOVER_VOLUME),
+        TICK_RATE(MoverMetric.MOVER_TICK_RATE);
+
+        private static final Metric[] VALUES = values();
+
+        private final MoverMetric proto;
+
+        Metric(MoverMetric proto) {
+            this.proto = proto;
+        }
+
+        public MoverMetric toProto() {
+            return proto;
+        }
+
+        /**
+         * @throws IllegalArgumentException for values this server does not know
+         */
+        public static Metric fromProto(MoverMetric metric) {
+            for (Metric value : VALUES) {
+                if (value.proto == metric) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported mover metric: " + metric);
+        }
+    }
+
+    /**
+     * One ranked symbol.
+     *
+     * @param value % change from the session open, session volume, or ticks per second
+     */
+    public record Entry(int symbolId, String symbol, double value) {}
+
+    /**
+     * Receives a watched top-N whenever its membership or order changes. Calls for one
+     * index never overlap; they run on the ranking thread and must not block.
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * @return false if the update could not be delivered now (e.g. the transport is
+         *         not ready); the newest top-N is offered again after the next pass
+         */
+        boolean onChange(List<Entry> top);
+    }
+
+    // A published top-maxN, best first
+    private record Ranking(int[] ids, double[] values) {}
+
+    private static final Ranking EMPTY = new Ranking(new int[0], new double[0]);
+    private static final VarHandle DIRTY = MethodHandles.arrayElementVarHandle(long[].class);
+    // Rescale the forward-decayed rates before e^(age / window) gets large
+    private static final double MAX_DECAY_EXPONENT = 50;
+
+    private final Aggregator aggregator;
+    private final int maxN;
+    private final long rateWindowNanos;
+    private final long[] dirty = new long[CandleStore.MAX_SYMBOLS >>> 6];
+    private final List<Watcher> watchers = new CopyOnWriteArrayList<>();
+    private volatile Ranking[] published = {EMPTY, EMPTY, EMPTY, EMPTY};
+    private final Subscription feed;
+    private ScheduledExecutorService scheduler;
+
+    // Ranking thread state, indexed by symbol id
+    private double[] change = new double[1024];
+    private double[] volume = new double[1024];
+    private double[] rate = new double[1024];
+    private long[] trades = new long[1024];
+    private boolean[] ranked = new boolean[1024];
+    private long landmarkNanos = System.nanoTime();
+    private final TreeSet<Integer> byChange = new TreeSet<>(order(() -> change));
+    private final TreeSet<Integer> byVolume = new TreeSet<>(order(() -> volume));
+    private final TreeSet<Integer> byRate = new TreeSet<>(order(() -> rate));
+
+    /**
+     * @param maxN longest top-N served
+     * @param rateWindowSeconds time constant of the decayed tick rate
+     */
+    public MoverIndex(Aggregator aggregator, int maxN, int rateWindowSeconds) {
+        if (maxN < 1 || rateWindowSeconds < 1) {
+            throw new IllegalArgumentException("maxN and rateWindowSeconds must be positive");
+        }
+        this.aggregator = aggregator;
+        this.maxN = maxN;
+        this.rateWindowNanos = TimeUnit.SECONDS.toNanos(rateWindowSeconds);
+        // Symbols restored from a snapshot are ranked on the first pass
+        for (int id = 0; id < aggregator.symbolCount(); id++) {
+            markDirty(id);
+        }
+        this.feed = aggregator.subscribeAll(this::markDirty);
+    }
+
+    /**
+     * Re-rank every {@code periodMillis} on a background thread.
+     */
+    public void start(long periodMillis) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mover-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                rank();
+            } catch (RuntimeException e) {
+                System.err.println("[MOVERS] ranking failed: " + e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public int maxN() {
+        return maxN;
+    }
+
+    /**
+     * @return up to {@code n} symbols, best first, as of the last pass
+     */
+    public List<Entry> top(Metric metric, int n) {
+        Ranking ranking = published[metric.ordinal()];
+        int count = Math.min(n, ranking.ids().length);
+        List<Entry> top = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int id = ranking.ids()[i];
+            top.add(new Entry(id, aggregator.symbolName(id), ranking.values()[i]));
+        }
+        return top;
+    }
+
+    /**
+     * Call {@code listener} with the current top {@code n} and then, from the ranking
+     * thread, whenever its membership or order changes.
+     */
+    public synchronized Subscription watch(Metric metric, int n, Listener listener) {
+        Watcher watcher = new Watcher(metric, Math.min(n, maxN), listener);
+        watchers.add(watcher);
+        watcher.offer(published[metric.ordinal()]);
+        return () -> watchers.remove(watcher);
+    }
+
+    @Override
+    public void close() {
+        feed.cancel();
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    // Ingest thread: one plain read, and an atomic OR only for the first tick since the last pass
+    private void markDirty(int symbolId) {
+        int word = symbolId >>> 6;
+        long bit = 1L << symbolId;
+        if (((long) DIRTY.getOpaque(dirty, word) & bit) == 0) {
+            DIRTY.getAndBitwiseOr(dirty, word, bit);
+        }
+    }
+
+    /**
+     * Re-score the symbols that ticked since the last pass, publish and notify watchers.
+     */
+    synchronized void rank() {
+        long now = System.nanoTime();
+        int count = aggregator.symbolCount();
+        grow(count);
+        if ((now - landmarkNanos) / (double) rateWindowNanos > MAX_DECAY_EXPONENT) {
+            rescaleRates(now);
+        }
+        double weight = Math.exp((now - landmarkNanos) / (double) rateWindowNanos);
+
+        for (int word = 0; word <= (count - 1) >>> 6; word++) {
+            if ((long) DIRTY.getOpaque(dirty, word) == 0) {
+                continue;
+            }
+            long bits = (long) DIRTY.getAndSet(dirty, word, 0L);
+            while (bits != 0) {
+                int id = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                rescore(id, weight);
+            }
+        }
+
+        // Decayed rate -> ticks per second now
+        double toRate = 1 / (weight * (rateWindowNanos / 1e9));
+        Ranking[] next = new Ranking[Metric.VALUES.length];
+        next[Metric.GAINERS.ordinal()] = publish(byChange.descendingIterator(), change, 1);
+        next[Metric.LOSERS.ordinal()] = publish(byChange.iterator(), change, 1);
+        next[Metric.VOLUME.ordinal()] = publish(byVolume.descendingIterator(), volume, 1);
+        next[Metric.TICK_RATE.ordinal()] = publish(byRate.descendingIterator(), rate, toRate);
+        published = next;
+
+        for (Watcher watcher : watchers) {
+            watcher.offer(next[watcher.metric.ordinal()]);
+        }
+    }
+
+    private void rescore(int id, double weight) {
+        Candle session = aggregator.getSnapshot(id, CandleInterval.SESSION);
+        if (session == null) {
+            return;
+        }
+        if (ranked[id]) {
+            byChange.remove(id);
+            byVolume.remove(id);
+            byRate.remove(id);
+        }
+        change[id] = session.open() != 0 ? (session.close() - session.open()) / session.open() * 100 : 0;
+        volume[id] = session.volume();
+        rate[id] += (session.trades() - trades[id]) * weight;
+        trades[id] = session.trades();
+        ranked[id] = true;
+        byChange.add(id);
+        byVolume.add(id);
+        byRate.add(id);
+    }
+
+    private void rescaleRates(long now) {
+        double factor = Math.exp(-(now - landmarkNanos) / (double) rateWindowNanos);
+        List<Integer> ids = new ArrayList<>(byRate);
+        byRate.clear();
+        for (int id : ids) {
+            rate[id] *= factor;
+        }
+        byRate.addAll(ids);
+        landmarkNanos = now;
+    }
+
+    private Ranking publish(Iterator<Integer> best, double[] scores, double scale) {
+        int[] ids = new int[maxN];
+        double[] values = new double[maxN];
+        int n = 0;
+        while (n < maxN && best.hasNext()) {
+            int id = best.next();
+            ids[n] = id;
+            values[n] = scores[id] * scale;
+            n++;
+        }
+        return new Ranking(Arrays.copyOf(ids, n), Arrays.copyOf(values, n));
+    }
+
+    private void grow(int count) {
+        if (count <= change.length) {
+            return;
+        }
+        int size = Math.max(count, change.length * 2);
+        change = Arrays.copyOf(change, size);
+        volume = Arrays.copyOf(volume, size);
+        rate = Arrays.copyOf(rate, size);
+        trades = Arrays.copyOf(trades, size);
+        ranked = Arrays.copyOf(ranked, size);
+    }
+
+    // Ascending by score, ties by id; reads the current array so it survives grow()
+    private static Comparator<Integer> order(Supplier<double[]> scores) {
+        return (a, b) -> {
+            int byScore = Double.compare(scores.get()[a], scores.get()[b]);
+            return byScore != 0 ? byScore : Integer.compare(a, b);
+        };
+    }
+
+    private final class Watcher {
+        final Metric metric;
+        final int n;
+        final Listener listener;
+        int[] sent;
+
+        Watcher(Metric metric, int n, Listener listener) {
+            this.metric = metric;
+            this.n = n;
+            this.listener = listener;
+        }
+
+        void offer(Ranking ranking) {
+            int count = Math.min(n, ranking.ids().length);
+            if (sent != null && Arrays.equals(sent, 0, sent.length, ranking.ids(), 0, count)) {
+                return;
+            }
+            List<Entry> top = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int id = ranking.ids()[i];
+                top.add(new Entry(id, aggregator.symbolName(id), ranking.values()[i]));
+            }
+            try {
+                if (listener.onChange(top)) {
+                    sent = Arrays.copyOf(ranking.ids(), count);
+                }
+            } catch (RuntimeException e) {
+                System.err.println("[MOVERS] watcher failed: " + e.getMessage());
+            }
+        }
+    }
+}
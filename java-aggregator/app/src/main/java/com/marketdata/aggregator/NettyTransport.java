@@ -0,0 +1,115 @@
+package com.marketdata.aggregator;
+
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.ServerChannel;
+import io.grpc.netty.shaded.io.netty.channel.epoll.Epoll;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollServerSocketChannel;
+import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.grpc.netty.shaded.io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The gRPC server's Netty transport, configured from {@link TransportSettings}.
+ *
+ * Owns the boss and worker event-loop groups and the call executor, none of which the
+ * gRPC server shuts down itself; close this after the server has terminated.
+ *
+ * The {@code FIXED} executor queues calls until a pool thread is free; it never runs one
+ * on the event loop. The queue is bounded in practice by inbound flow control: HTTP/2
+ * windows and the ingest credits limit what each stream can have outstanding.
+ */
+public final class NettyTransport implements AutoCloseable {
+
+    private final TransportSettings settings;
+    private final boolean epoll;
+    private final EventLoopGroup boss;
+    private final EventLoopGroup workers;
+    private final Class<? extends ServerChannel> channelType;
+    // Null when calls run on gRPC's default pool or directly on the event loop
+    private final ExecutorService executor;
+
+    /**
+     * @throws IllegalStateException if epoll is required but the native transport cannot be loaded
+     */
+    public NettyTransport(TransportSettings settings) {
+        this.settings = settings;
+        this.epoll = switch (settings.transport()) {
+            case EPOLL -> {
+                if (!Epoll.isAvailable()) {
+                    throw new IllegalStateException("Epoll transport is not available", Epoll.unavailabilityCause());
+                }
+                yield true;
+            }
+            case AUTO -> Epoll.isAvailable();
+            case NIO -> false;
+        };
+        if (epoll) {
+            boss = new EpollEventLoopGroup(settings.bossThreads(), new DefaultThreadFactory("grpc-boss", true));
+            workers = new EpollEventLoopGroup(settings.workerThreads(), new DefaultThreadFactory("grpc-worker", true));
+            channelType = EpollServerSocketChannel.class;
+        } else {
+            boss = new NioEventLoopGroup(settings.bossThreads(), new DefaultThreadFactory("grpc-boss", true));
+            workers = new NioEventLoopGroup(settings.workerThreads(), new DefaultThreadFactory("grpc-worker", true));
+            channelType = NioServerSocketChannel.class;
+        }
+        this.executor = switch (settings.executor()) {
+            case FIXED -> new ThreadPoolExecutor(settings.executorThreads(), settings.executorThreads(),
+                    0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), new DefaultThreadFactory("grpc-call", true));
+            // Calls park instead of holding a platform thread; ingest shards stay on their own threads
+            case VIRTUAL -> Executors.newVirtualThreadPerTaskExecutor();
+            case DEFAULT, DIRECT -> null;
+        };
+    }
+
+    /**
+     * @return true if connections are served by the native epoll transport
+     */
+    public boolean epoll() {
+        return epoll;
+    }
+
+    /**
+     * A server builder for {@code port} with every transport option applied; services
+     * are added by the caller.
+     */
+    public NettyServerBuilder builder(int port) {
+        NettyServerBuilder builder = NettyServerBuilder.forPort(port)
+                .bossEventLoopGroup(boss)
+                .workerEventLoopGroup(workers)
+                .channelType(channelType)
+                .flowControlWindow(settings.flowControlWindow())
+                .maxInboundMessageSize(settings.maxInboundMessageSize())
+                .permitKeepAliveTime(settings.permitKeepAliveTimeSeconds(), TimeUnit.SECONDS)
+                .permitKeepAliveWithoutCalls(settings.permitKeepAliveWithoutCalls());
+        if (settings.keepAliveTimeSeconds() > 0) {
+            builder.keepAliveTime(settings.keepAliveTimeSeconds(), TimeUnit.SECONDS)
+                    .keepAliveTimeout(settings.keepAliveTimeoutSeconds(), TimeUnit.SECONDS);
+        }
+        if (settings.maxConnectionIdleSeconds() > 0) {
+            builder.maxConnectionIdle(settings.maxConnectionIdleSeconds(), TimeUnit.SECONDS);
+        }
+        if (settings.executor() == TransportSettings.CallExecutor.DIRECT) {
+            builder.directExecutor();
+        } else if (executor != null) {
+            builder.executor(executor);
+        }
+        return builder;
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        boss.shutdownGracefully();
+        workers.shutdownGracefully();
+    }
+}
@@ -0,0 +1,14 @@
+package com.marketdata.aggregator;
+
+/**
+ * Price statistics of a symbol, attached to live SESSION {@link Candle} snapshots.
+ *
+ * @param ewmaHalfLivesMillis half-life of each entry of {@code ewma}, in configuration order
+ *                            (shared by all snapshots; do not modify)
+ * @param ewma time-decayed moving averages of the trade price as of the last tick
+ * @param volatility sample standard deviation of tick-to-tick log returns over the
+ *                   configured window of exchange time ending at the last tick, or 0 with fewer
+ *                   than two returns in it
+ * @param returns number of returns the volatility is computed from
+ */
+public record PriceAnalytics(long[] ewmaHalfLivesMillis, double[] ewma, double volatility, long returns) {}
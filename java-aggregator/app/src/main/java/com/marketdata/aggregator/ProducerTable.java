@@ -0,0 +1,93 @@
+package com.marketdata.aggregator;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Last applied {@code IngestTicks} sequence per producer id.
+ *
+ * Producers are interned to dense ids so a journaled tick can name its producer in four
+ * bytes. Sequences are advanced by ingest calls as ticks are accepted and restored from
+ * the snapshot and journal at startup, so a restarted node still drops what a producer
+ * resends. Sequences compare as unsigned, like the producers' own counters.
+ */
+final class ProducerTable {
+
+    /** Producer id of a tick that carries no sequence. */
+    static final int NONE = -1;
+
+    /**
+     * One producer's id and sequence counter.
+     */
+    static final class Producer {
+        final int id;
+        final String name;
+        final AtomicLong sequence = new AtomicLong();
+
+        private Producer(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    private final Map<String, Producer> byName = new ConcurrentHashMap<>();
+    // Copy-on-write; replaced under the table lock
+    private volatile Producer[] byId = new Producer[0];
+
+    /**
+     * @return the producer named {@code name}, registering it with sequence 0 if new
+     */
+    Producer intern(String name) {
+        Producer found = byName.get(name);
+        if (found != null) {
+            return found;
+        }
+        synchronized (this) {
+            found = byName.get(name);
+            if (found == null) {
+                Producer[] table = Arrays.copyOf(byId, byId.length + 1);
+                found = new Producer(byId.length, name);
+                table[found.id] = found;
+                // Visible by id before any tick can be journaled under it
+                byId = table;
+                byName.put(name, found);
+            }
+            return found;
+        }
+    }
+
+    /**
+     * @return name of an interned producer id
+     */
+    String name(int id) {
+        return byId[id].name;
+    }
+
+    /**
+     * Raise a producer's sequence to at least {@code sequence}.
+     */
+    void restore(String name, long sequence) {
+        intern(name).sequence.accumulateAndGet(sequence, ProducerTable::later);
+    }
+
+    /**
+     * @return every producer's current sequence, in registration order
+     */
+    Map<String, Long> sequences() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Producer producer : byId) {
+            result.put(producer.name, producer.sequence.get());
+        }
+        return result;
+    }
+
+    /**
+     * @return the later of two sequences
+     */
+    static long later(long a, long b) {
+        return Long.compareUnsigned(a, b) >= 0 ? a : b;
+    }
+}
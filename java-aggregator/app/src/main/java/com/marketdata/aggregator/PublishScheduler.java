@@ -0,0 +1,288 @@
+package com.marketdata.aggregator;
+
+import com.marketdata.proto.PublishRate;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publish-rate tiers between the {@link Aggregator} and streaming subscribers.
+ *
+ * A {@link Tier#REALTIME} subscription is an ordinary aggregator listener. For a
+ * throttled tier the ingest path only sets a per-symbol pending bit, and only if that
+ * tier has a listener for the symbol; however many ticks arrive, the tier's listeners
+ * are called at most once per interval per symbol (to within one wheel tick).
+ *
+ * Deadlines live on one hashed timer wheel advanced by a single thread rather than a
+ * timer per symbol. A symbol that was quiet for a full interval is published on the
+ * next wheel tick; a busy one exactly one interval after its previous publish, so
+ * publishes of different symbols stay spread over the interval instead of bunching on
+ * a common flush. Fan-out cost follows the subscribed symbols and the tier rate, not
+ * the tick rate.
+ *
+ * Listeners of throttled tiers are called on the wheel thread and must not block.
+ */
+public final class PublishScheduler implements AutoCloseable {
+
+    public enum Tier {
+        /** After every tick. */
+        REALTIME(PublishRate.PUBLISH_REALTIME),
+        /** At most once per fast interval (100 ms by default). */
+        FAST(PublishRate.PUBLISH_FAST),
+        /** At most once per slow interval (1 s by default). */
+        SLOW(PublishRate.PUBLISH_SLOW);
+
+        private static final Tier[] VALUES = values();
+
+        private final PublishRate proto;
+
+        Tier(PublishRate proto) {
+            this.proto = proto;
+        }
+
+        public PublishRate toProto() {
+            return proto;
+        }
+
+        /**
+         * @param fallback tier served for {@code PUBLISH_DEFAULT}
+         * @throws IllegalArgumentException for values this server does not know
+         */
+        public static Tier fromProto(PublishRate rate, Tier fallback) {
+            if (rate == PublishRate.PUBLISH_DEFAULT) {
+                return fallback;
+            }
+            for (Tier value : VALUES) {
+                if (value.proto == rate) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported publish rate: " + rate);
+        }
+    }
+
+    private static final VarHandle BITS = MethodHandles.arrayElementVarHandle(long[].class);
+    // Deadlines further out than this many wheel ticks stay in their bucket for later rounds
+    private static final int WHEEL_SIZE = 512;
+    // Throttled tiers; entry e of the wheel is symbol e / LANES of lanes[e % LANES]
+    private static final int LANES = 2;
+    private static final int NONE = -1;
+
+    private final Aggregator aggregator;
+    private final long tickNanos;
+    private final Lane[] lanes;
+    private final Subscription feed;
+    private ScheduledExecutorService scheduler;
+
+    // Wheel thread state
+    private final long origin = System.nanoTime();
+    private long cursor;
+    private final int[] buckets = new int[WHEEL_SIZE];
+    private int[] next = new int[0];
+    private long[] deadline = new long[0];
+    private long[] lastPublished = new long[0];
+
+    /**
+     * @param fastMillis interval of {@link Tier#FAST}
+     * @param slowMillis interval of {@link Tier#SLOW}
+     * @param tickMillis resolution of the timer wheel
+     */
+    public PublishScheduler(Aggregator aggregator, int fastMillis, int slowMillis, int tickMillis) {
+        if (tickMillis < 1 || fastMillis < tickMillis || slowMillis < tickMillis) {
+            throw new IllegalArgumentException("Publish intervals must be at least one wheel tick of " + tickMillis + " ms");
+        }
+        this.aggregator = aggregator;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.lanes = new Lane[] {
+                new Lane(0, ticks(fastMillis, tickMillis)),
+                new Lane(1, ticks(slowMillis, tickMillis))
+        };
+        Arrays.fill(buckets, NONE);
+        this.feed = aggregator.subscribeAll(this::onTick);
+    }
+
+    /**
+     * Advance the wheel every tick on a background thread.
+     */
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "publish-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                advance();
+            } catch (RuntimeException e) {
+                System.err.println("[PUBLISH] wheel tick failed: " + e);
+            }
+        }, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Register a listener for one symbol at a tier. Ticks for other symbols never reach it;
+     * a symbol that has not traded yet is attached when it first ticks.
+     *
+     * @return Handle that removes the listener
+     */
+    public Subscription subscribe(String symbol, Tier tier, AggregateListener listener) {
+        if (tier == Tier.REALTIME) {
+            return aggregator.subscribe(symbol, listener);
+        }
+        return aggregator.subscribe(lane(tier).registry, symbol, listener);
+    }
+
+    /**
+     * Register a listener for every symbol at a tier.
+     *
+     * @return Handle that removes the listener
+     */
+    public Subscription subscribeAll(Tier tier, AggregateListener listener) {
+        if (tier == Tier.REALTIME) {
+            return aggregator.subscribeAll(listener);
+        }
+        return lane(tier).registry.subscribeAll(listener);
+    }
+
+    @Override
+    public void close() {
+        feed.cancel();
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    // Ingest thread: a plain read per throttled tier, an atomic OR only for the first tick since a publish
+    private void onTick(int symbolId) {
+        for (Lane lane : lanes) {
+            if (lane.registry.hasListeners(symbolId)) {
+                lane.mark(symbolId);
+            }
+        }
+    }
+
+    /**
+     * Publish every entry that has come due, then schedule the symbols that changed
+     * since they were last published.
+     */
+    synchronized void advance() {
+        long now = (System.nanoTime() - origin) / tickNanos;
+        int count = aggregator.symbolCount();
+        grow(count);
+
+        // Each bucket is visited at most once however late this run is
+        long last = Math.min(now, cursor + WHEEL_SIZE);
+        for (long tick = cursor + 1; tick <= last; tick++) {
+            expire((int) (tick & (WHEEL_SIZE - 1)), now);
+        }
+        cursor = now;
+
+        int words = (count + 63) >>> 6;
+        for (Lane lane : lanes) {
+            for (int word = 0; word < words; word++) {
+                long bits = (long) BITS.getOpaque(lane.pending, word) & ~lane.scheduled[word];
+                while (bits != 0) {
+                    int id = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    if (id >= count) {
+                        // Interned after count was read; picked up next tick
+                        break;
+                    }
+                    bits &= bits - 1;
+                    int entry = id * LANES + lane.index;
+                    long due = lastPublished[entry] + lane.intervalTicks;
+                    if (due <= now) {
+                        publish(lane, id, entry, now);
+                    } else {
+                        lane.scheduled[word] |= 1L << id;
+                        insert(entry, due);
+                    }
+                }
+            }
+        }
+    }
+
+    private void expire(int bucket, long now) {
+        int entry = buckets[bucket];
+        int kept = NONE;
+        while (entry != NONE) {
+            int following = next[entry];
+            if (deadline[entry] <= now) {
+                Lane lane = lanes[entry % LANES];
+                int id = entry / LANES;
+                lane.scheduled[id >>> 6] &= ~(1L << id);
+                publish(lane, id, entry, now);
+            } else {
+                next[entry] = kept;
+                kept = entry;
+            }
+            entry = following;
+        }
+        buckets[bucket] = kept;
+    }
+
+    private void insert(int entry, long due) {
+        int bucket = (int) (due & (WHEEL_SIZE - 1));
+        deadline[entry] = due;
+        next[entry] = buckets[bucket];
+        buckets[bucket] = entry;
+    }
+
+    private void publish(Lane lane, int symbolId, int entry, long now) {
+        // Clear before notifying so a tick racing with the listeners marks the symbol again
+        BITS.getAndBitwiseAnd(lane.pending, symbolId >>> 6, ~(1L << symbolId));
+        lastPublished[entry] = now;
+        lane.registry.dispatch(symbolId);
+    }
+
+    private void grow(int count) {
+        int entries = count * LANES;
+        if (entries <= next.length) {
+            return;
+        }
+        int size = Math.max(entries, next.length * 2);
+        int from = next.length;
+        next = Arrays.copyOf(next, size);
+        deadline = Arrays.copyOf(deadline, size);
+        lastPublished = Arrays.copyOf(lastPublished, size);
+        // Never published: due at once
+        Arrays.fill(lastPublished, from, size, Long.MIN_VALUE / 2);
+    }
+
+    private Lane lane(Tier tier) {
+        return lanes[tier.ordinal() - 1];
+    }
+
+    private static long ticks(int millis, int tickMillis) {
+        return (millis + tickMillis - 1) / tickMillis;
+    }
+
+    /**
+     * One throttled tier: its listeners and the symbols waiting to be published to them.
+     */
+    private static final class Lane {
+        final int index;
+        final long intervalTicks;
+        final SubscriptionRegistry registry = new SubscriptionRegistry();
+        // Set by the ingest path, cleared by the wheel thread when published
+        final long[] pending = new long[CandleStore.MAX_SYMBOLS >>> 6];
+        // Wheel thread: symbols that have an entry on the wheel
+        final long[] scheduled = new long[CandleStore.MAX_SYMBOLS >>> 6];
+
+        Lane(int index, long intervalTicks) {
+            this.index = index;
+            this.intervalTicks = intervalTicks;
+        }
+
+        void mark(int symbolId) {
+            int word = symbolId >>> 6;
+            long bit = 1L << symbolId;
+            if (((long) BITS.getOpaque(pending, word) & bit) == 0) {
+                BITS.getAndBitwiseOr(pending, word, bit);
+            }
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.marketdata.aggregator;
+
+import com.marketdata.proto.IngestAck;
+import com.marketdata.proto.Tick;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Server side of one {@code IngestTicks} call.
+ *
+ * Messages are requested through {@link IngestCredits}, so the sender is held back while
+ * the sink is full. A tick carrying a sequence is applied only if it is above its
+ * producer's last applied sequence; the check advances a per-producer counter shared by
+ * every call of that producer, so ticks resent after a reconnect (or still arriving on
+ * a stale connection) are dropped rather than applied twice. The sequence is handed to
+ * the sink with the tick, which journals it so a restart resumes from it.
+ *
+ * Every ack interval the call is sent a cumulative {@link IngestAck} if anything was
+ * accepted since the last one. With an asynchronous sink a sequence is acked one
+ * interval later, once the sink reports every tick accepted before it as applied.
+ */
+final class SequencedTickStream implements StreamObserver<Tick> {
+
+    private final ServerCallStreamObserver<IngestAck> call;
+    private final TickSink sink;
+    private final IngestMetrics.StreamMeter meter;
+    private final ToIntFunction<String> admit;
+    private final Function<String, RuntimeException> misrouted;
+    private final ProducerTable producers;
+    private final IngestCredits credits;
+    private final ScheduledFuture<?> acks;
+    private final long ackIntervalMillis;
+
+    // Call thread
+    private String producerId;
+    private ProducerTable.Producer producer;
+    private long duplicates;
+    private boolean failed;
+
+    // Written by the call thread after each accepted tick; acceptedSequence last
+    private volatile long received;
+    private volatile long lastIngest;
+    private volatile long acceptedSequence;
+
+    // Guarded by this: the ack timer's view and writes to the response stream
+    private long pendingSequence;
+    private long pendingReceived;
+    private long pendingIngest;
+    private long[] pendingMark;
+    private long ackedSequence;
+    private long ackedReceived;
+    private long ackedIngest;
+    private long sentSequence;
+    private long sentReceived;
+    private boolean closed;
+
+    /**
+     * @param admit symbol id of a tick this node accepts, or -1 if another node owns it
+     * @param misrouted error failing the call for a symbol another node owns
+     * @param producers last applied sequence per producer id, shared by all calls
+     */
+    SequencedTickStream(ServerCallStreamObserver<IngestAck> call, TickSink sink, IngestMetrics.StreamMeter meter,
+                        ToIntFunction<String> admit, Function<String, RuntimeException> misrouted,
+                        ProducerTable producers, int window, long ackIntervalMillis,
+                        ScheduledExecutorService timer) {
+        this.call = call;
+        this.sink = sink;
+        this.meter = meter;
+        this.admit = admit;
+        this.misrouted = misrouted;
+        this.producers = producers;
+        this.ackIntervalMillis = ackIntervalMillis;
+
+        // Must be installed before the service method returns
+        call.setOnCancelHandler(this::close);
+        this.credits = new IngestCredits(call, sink, window, timer);
+        this.acks = timer.scheduleWithFixedDelay(this::acknowledge, ackIntervalMillis, ackIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onNext(Tick tick) {
+        if (failed) {
+            return;
+        }
+        if (!tick.getProducerId().isEmpty() && !bind(tick.getProducerId())) {
+            return;
+        }
+        if (tick.getSymbol().isEmpty() && producer != null) {
+            // Hello: tell the producer where to resume before it sends anything
+            hello();
+            credits.processed();
+            return;
+        }
+
+        int symbolId = admit.applyAsInt(tick.getSymbol());
+        if (symbolId < 0) {
+            fail(misrouted.apply(tick.getSymbol()));
+            return;
+        }
+        long sequence = tick.getSequence();
+        if (sequence != 0 && producer != null && !advance(sequence)) {
+            duplicates++;
+            credits.processed();
+            return;
+        }
+
+        int source = sequence != 0 && producer != null ? producer.id : ProducerTable.NONE;
+        if (meter.onTick(symbolId)) {
+            long start = System.nanoTime();
+            sink.onTick(symbolId, tick.getPrice(), tick.getVolume(),
+                    tick.getExchangeTimestamp(), tick.getIngestTimestamp(), source, sequence);
+            meter.recordSample(System.nanoTime() - start,
+                    sink.isSynchronous() ? tick.getIngestTimestamp() : 0);
+        } else {
+            sink.onTick(symbolId, tick.getPrice(), tick.getVolume(),
+                    tick.getExchangeTimestamp(), tick.getIngestTimestamp(), source, sequence);
+        }
+        received = received + 1;
+        lastIngest = tick.getIngestTimestamp();
+        if (sequence != 0) {
+            acceptedSequence = sequence;
+        }
+        credits.processed();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        close();
+        System.err.println("[INGEST] stream failed: " + t.getMessage());
+    }
+
+    @Override
+    public void onCompleted() {
+        if (failed) {
+            return;
+        }
+        System.out.println("[INGEST CLOSED] producer=" + (producerId == null ? "-" : producerId)
+                + " ticks=" + received + " duplicates=" + duplicates);
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            // Final ack: the newest sequence once the sink has applied it, waiting at most one interval
+            long sequence = acceptedSequence;
+            long count = received;
+            long ingest = lastIngest;
+            long[] mark = sink.acceptedMark();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ackIntervalMillis);
+            while (mark != null && !sink.applied(mark) && System.nanoTime() < deadline) {
+                LockSupport.parkNanos(50_000);
+            }
+            if (mark == null || sink.applied(mark)) {
+                ackedSequence = sequence;
+                ackedReceived = count;
+                ackedIngest = ingest;
+            }
+            call.onNext(ack(ackedSequence, ackedReceived, ackedIngest));
+            call.onCompleted();
+        }
+        close();
+    }
+
+    // Attach the call to a producer's sequence; a call speaks for one producer only
+    private boolean bind(String id) {
+        if (producer != null) {
+            if (id.equals(producerId)) {
+                return true;
+            }
+            fail(Status.INVALID_ARGUMENT
+                    .withDescription("Call is bound to producer " + producerId + ", got " + id)
+                    .asRuntimeException());
+            return false;
+        }
+        producerId = id;
+        producer = producers.intern(id);
+        long resume = producer.sequence.get();
+        acceptedSequence = resume;
+        synchronized (this) {
+            pendingSequence = resume;
+            ackedSequence = resume;
+            sentSequence = resume;
+        }
+        return true;
+    }
+
+    // Claim a sequence for this call; false if it (or a later one) was already applied
+    private boolean advance(long sequence) {
+        while (true) {
+            long last = producer.sequence.get();
+            if (Long.compareUnsigned(sequence, last) <= 0) {
+                return false;
+            }
+            if (producer.sequence.compareAndSet(last, sequence)) {
+                return true;
+            }
+        }
+    }
+
+    private synchronized void hello() {
+        if (closed) {
+            return;
+        }
+        // Everything up to the producer's sequence is applied or being applied by an older call
+        call.onNext(ack(producer.sequence.get(), ackedReceived, ackedIngest));
+    }
+
+    /**
+     * Ack timer: confirm what was pending if the sink has applied it, then take the
+     * newest accepted position as pending.
+     */
+    private synchronized void acknowledge() {
+        if (closed) {
+            return;
+        }
+        if (pendingMark == null || sink.applied(pendingMark)) {
+            ackedSequence = pendingSequence;
+            ackedReceived = pendingReceived;
+            ackedIngest = pendingIngest;
+
+            pendingSequence = acceptedSequence;
+            pendingReceived = received;
+            pendingIngest = lastIngest;
+            pendingMark = sink.acceptedMark();
+            if (pendingMark == null) {
+                ackedSequence = pendingSequence;
+                ackedReceived = pendingReceived;
+                ackedIngest = pendingIngest;
+            }
+        }
+        if (ackedReceived == sentReceived && ackedSequence == sentSequence) {
+            return;
+        }
+        // A slow reader gets the newer cumulative ack next time
+        if (call.isReady()) {
+            call.onNext(ack(ackedSequence, ackedReceived, ackedIngest));
+            sentSequence = ackedSequence;
+            sentReceived = ackedReceived;
+        }
+    }
+
+    private IngestAck ack(long sequence, long count, long ingest) {
+        return IngestAck.newBuilder()
+                .setSequence(sequence)
+                .setReceived(count)
+                .setBacklog(sink.backlog())
+                .setLagNanos(ingest > 0 ? Math.max(0, EpochClock.epochNanos() - ingest) : 0)
+                .build();
+    }
+
+    private void fail(RuntimeException error) {
+        failed = true;
+        synchronized (this) {
+            if (!closed) {
+                call.onError(error);
+            }
+        }
+        close();
+    }
+
+    private synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        acks.cancel(false);
+        credits.close();
+        meter.close();
+    }
+}
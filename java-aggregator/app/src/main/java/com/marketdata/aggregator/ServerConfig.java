@@ -0,0 +1,306 @@
+package com.marketdata.aggregator;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Runtime settings for the aggregation server.
+ *
+ * Values are read from JVM system properties (e.g. {@code -Dmarketdata.port=50052}),
+ * falling back to the defaults below. {@link #load(String[])} also accepts a properties
+ * file and command-line overrides.
+ */
+public final class ServerConfig {
+
+    private final Properties props;
+
+    public ServerConfig(Properties props) {
+        this.props = props;
+    }
+
+    public static ServerConfig fromSystemProperties() {
+        return new ServerConfig(System.getProperties());
+    }
+
+    /**
+     * Settings from, in increasing precedence: {@code --config FILE} (a properties file),
+     * JVM system properties and {@code --name value} arguments, where {@code name} may omit
+     * the {@code marketdata.} prefix (e.g. {@code --transport.profile throughput}).
+     *
+     * @throws IllegalArgumentException for a malformed argument list
+     * @throws IOException if the properties file cannot be read
+     */
+    public static ServerConfig load(String[] args) throws IOException {
+        Properties merged = new Properties();
+        Properties overrides = new Properties();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --name value, got: " + args[i]);
+            }
+            String name = args[i].substring(2);
+            String value = args[++i];
+            if (name.equals("config")) {
+                try (Reader reader = Files.newBufferedReader(Path.of(value))) {
+                    merged.load(reader);
+                }
+            } else {
+                overrides.setProperty(name.startsWith("marketdata.") ? name : "marketdata." + name, value);
+            }
+        }
+        merged.putAll(System.getProperties());
+        merged.putAll(overrides);
+        return new ServerConfig(merged);
+    }
+
+    /** gRPC listen port. */
+    public int port() {
+        return intValue("marketdata.port", 50051);
+    }
+
+    /** Port of the plain-text metrics endpoint ({@code GET /metrics}); 0 disables it. */
+    public int metricsPort() {
+        return intValue("marketdata.metrics.port", 9464);
+    }
+
+    /** Seconds between metrics summaries written to stdout; 0 disables them. */
+    public int metricsLogIntervalSeconds() {
+        return intValue("marketdata.metrics.logIntervalSeconds", 10);
+    }
+
+    /**
+     * Run gRPC service calls on virtual threads (one per task) instead of gRPC's default
+     * cached pool of platform threads; shorthand for {@code marketdata.transport.executor=virtual}.
+     */
+    public boolean virtualThreads() {
+        return Boolean.parseBoolean(props.getProperty("marketdata.virtualThreads", "false").trim());
+    }
+
+    /**
+     * Netty transport of the gRPC server: {@code marketdata.transport.profile}
+     * ({@code default}, {@code throughput} or {@code latency}) picks the base values and
+     * every other {@code marketdata.transport.*} key overrides one of them.
+     */
+    public TransportSettings transport() {
+        TransportSettings base = TransportSettings.profile(
+                props.getProperty("marketdata.transport.profile", "default"));
+        TransportSettings.CallExecutor executor = base.executor();
+        if (virtualThreads()) {
+            executor = TransportSettings.CallExecutor.VIRTUAL;
+        }
+        return new TransportSettings(
+                enumValue("marketdata.transport.type", TransportSettings.Transport.class, base.transport()),
+                intValue("marketdata.transport.bossThreads", base.bossThreads()),
+                intValue("marketdata.transport.workerThreads", base.workerThreads()),
+                enumValue("marketdata.transport.executor", TransportSettings.CallExecutor.class, executor),
+                intValue("marketdata.transport.executorThreads", base.executorThreads()),
+                intValue("marketdata.transport.flowControlWindow", base.flowControlWindow()),
+                intValue("marketdata.transport.maxInboundMessageSize", base.maxInboundMessageSize()),
+                intValue("marketdata.transport.keepAliveTimeSeconds", base.keepAliveTimeSeconds()),
+                intValue("marketdata.transport.keepAliveTimeoutSeconds", base.keepAliveTimeoutSeconds()),
+                intValue("marketdata.transport.permitKeepAliveTimeSeconds", base.permitKeepAliveTimeSeconds()),
+                Boolean.parseBoolean(props.getProperty("marketdata.transport.permitKeepAliveWithoutCalls",
+                        String.valueOf(base.permitKeepAliveWithoutCalls())).trim()),
+                intValue("marketdata.transport.maxConnectionIdleSeconds", base.maxConnectionIdleSeconds()));
+    }
+
+    /** Latency is measured on one tick in this many per stream (rounded up to a power of two). */
+    public int metricsSampleEvery() {
+        return intValue("marketdata.metrics.sampleEvery", 64);
+    }
+
+    /**
+     * Number of single-writer ingest shards (see {@link ShardedIngestPipeline});
+     * 0 applies ticks inline on the gRPC stream threads.
+     */
+    public int ingestShards() {
+        return intValue("marketdata.ingest.shards", 0);
+    }
+
+    /** Ring buffer slots per ingest shard. */
+    public int ingestRingSize() {
+        return intValue("marketdata.ingest.ringSize", 65536);
+    }
+
+    /** Messages (ticks or batches) an ingest call may have requested from its sender but not yet processed. */
+    public int ingestWindow() {
+        return intValue("marketdata.ingest.window", 256);
+    }
+
+    /** Milliseconds between the cumulative acks sent on {@code IngestTicks}. */
+    public int ingestAckIntervalMs() {
+        return intValue("marketdata.ingest.ackIntervalMs", 100);
+    }
+
+    /**
+     * Comma-separated addresses of every node of a partitioned cluster, identical (same
+     * strings, same order) on all nodes, the gateway and the ingest client; empty runs
+     * a single node that accepts every symbol.
+     */
+    public String clusterNodes() {
+        return props.getProperty("marketdata.cluster.nodes", "").trim();
+    }
+
+    /** This node's entry in {@link #clusterNodes()}; defaults to {@code localhost:<port>}. */
+    public String clusterSelf() {
+        return props.getProperty("marketdata.cluster.self", "localhost:" + port()).trim();
+    }
+
+    /** Directory for tick journal segments; empty disables journaling and replay. */
+    public String journalDir() {
+        return props.getProperty("marketdata.journal.dir", "").trim();
+    }
+
+    /** Size of each pre-allocated journal segment, in MiB. */
+    public int journalSegmentMb() {
+        return intValue("marketdata.journal.segmentMb", 128);
+    }
+
+    /** When journal segments are forced to disk: {@code interval}, {@code always} or {@code never}. */
+    public TickJournal.FsyncPolicy journalFsync() {
+        String value = props.getProperty("marketdata.journal.fsync", "interval");
+        try {
+            return TickJournal.FsyncPolicy.parse(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid value for marketdata.journal.fsync: " + value, e);
+        }
+    }
+
+    /** Maximum milliseconds between forces with the {@code interval} fsync policy. */
+    public int journalFsyncIntervalMs() {
+        return intValue("marketdata.journal.fsyncIntervalMs", 100);
+    }
+
+    /** Staging ring slots between ingest threads and the journal writer. */
+    public int journalBufferSize() {
+        return intValue("marketdata.journal.bufferSize", 65536);
+    }
+
+    /** Directory for periodic state snapshots; empty disables snapshotting. */
+    public String snapshotDir() {
+        return props.getProperty("marketdata.snapshot.dir", "").trim();
+    }
+
+    /** Seconds between snapshots. */
+    public int snapshotIntervalSeconds() {
+        return intValue("marketdata.snapshot.intervalSeconds", 60);
+    }
+
+    /** Number of most recent snapshots kept on disk. */
+    public int snapshotRetain() {
+        return intValue("marketdata.snapshot.retain", 2);
+    }
+
+    /**
+     * Per-symbol analytics: {@code marketdata.analytics.ewmaHalfLivesMs} (comma-separated,
+     * empty disables EWMAs), {@code marketdata.analytics.volWindowSeconds} and
+     * {@code marketdata.analytics.volBuckets} (0 disables volatility).
+     */
+    public AnalyticsSettings analytics() {
+        String value = props.getProperty("marketdata.analytics.ewmaHalfLivesMs", "1000,10000,60000");
+        List<Duration> halfLives = new ArrayList<>();
+        for (String millis : value.split(",")) {
+            if (!millis.isBlank()) {
+                try {
+                    halfLives.add(Duration.ofMillis(Long.parseLong(millis.trim())));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid value for marketdata.analytics.ewmaHalfLivesMs: " + value, e);
+                }
+            }
+        }
+        return new AnalyticsSettings(halfLives,
+                Duration.ofSeconds(intValue("marketdata.analytics.volWindowSeconds", 300)),
+                intValue("marketdata.analytics.volBuckets", 60));
+    }
+
+    /** Directory for the closed-bar history served by {@code GetCandles}; empty keeps only the in-memory ring. */
+    public String historyDir() {
+        return props.getProperty("marketdata.history.dir", "").trim();
+    }
+
+    /** Comma-separated bar widths written to the history ({@code 1s}, {@code 1m}, {@code 5m}, {@code 1h}). */
+    public List<CandleInterval> historyIntervals() {
+        String value = props.getProperty("marketdata.history.intervals", "1m,5m,1h");
+        List<CandleInterval> intervals = new ArrayList<>();
+        for (String label : value.split(",")) {
+            if (!label.isBlank()) {
+                try {
+                    intervals.add(CandleInterval.fromLabel(label));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Invalid value for marketdata.history.intervals: " + value, e);
+                }
+            }
+        }
+        return intervals;
+    }
+
+    /** Shortest time a closed bar is buffered in memory before a partial block is written to its history file. */
+    public int historySealSeconds() {
+        return intValue("marketdata.history.sealSeconds", 900);
+    }
+
+    /** Milliseconds between top-movers ranking passes; 0 disables {@code GetTopMovers} and {@code StreamTopMovers}. */
+    public int moversIntervalMs() {
+        return intValue("marketdata.movers.intervalMs", 250);
+    }
+
+    /** Longest top-N a client may request. */
+    public int moversMaxN() {
+        return intValue("marketdata.movers.maxN", 100);
+    }
+
+    /** Time constant of the exponentially decayed tick rate ranked by {@code MOVER_TICK_RATE}. */
+    public int moversRateWindowSeconds() {
+        return intValue("marketdata.movers.rateWindowSeconds", 10);
+    }
+
+    /** Resolution of the publish scheduler's timer wheel; 0 disables the throttled tiers. */
+    public int publishTickMs() {
+        return intValue("marketdata.publish.tickMs", 10);
+    }
+
+    /** Shortest gap between two updates of a symbol on a {@code PUBLISH_FAST} stream. */
+    public int publishFastMs() {
+        return intValue("marketdata.publish.fastMs", 100);
+    }
+
+    /** Shortest gap between two updates of a symbol on a {@code PUBLISH_SLOW} stream. */
+    public int publishSlowMs() {
+        return intValue("marketdata.publish.slowMs", 1000);
+    }
+
+    /** Tier of streams that do not ask for a rate: {@code realtime}, {@code fast} or {@code slow}. */
+    public PublishScheduler.Tier publishDefault() {
+        return enumValue("marketdata.publish.default", PublishScheduler.Tier.class, PublishScheduler.Tier.REALTIME);
+    }
+
+    private <E extends Enum<E>> E enumValue(String key, Class<E> type, E defaultValue) {
+        String value = props.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid value for " + key + ": " + value, e);
+        }
+    }
+
+    private int intValue(String key, int defaultValue) {
+        String value = props.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid integer for " + key + ": " + value, e);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.marketdata.aggregator;
+
+import com.marketdata.proto.TickBatch;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-writer ingestion in front of the {@link Aggregator}.
+ *
+ * Ticks are hashed by symbol id onto N pre-allocated ring buffers. Each ring is drained
+ * by one dedicated thread that is the only writer of the symbols in its shard, so it
+ * updates the store without CAS contention. After every drain the thread notifies the
+ * listeners of each symbol it touched once, off the gRPC threads.
+ *
+ * Producers (gRPC stream threads) claim ring slots with one atomic increment and copy
+ * the tick into primitive columns; nothing is allocated per tick. A full ring blocks
+ * its producers, which pushes back through gRPC flow control.
+ */
+public final class ShardedIngestPipeline implements TickSink, AutoCloseable {
+
+    private static final VarHandle PUBLISHED = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /** Upper bound on ticks applied before listeners are notified. */
+    private static final int MAX_DRAIN = 1024;
+
+    private final Aggregator aggregator;
+    private final IngestMetrics metrics;
+    private final Shard[] shards;
+    private final int shardMask;
+    private volatile boolean running = true;
+
+    /**
+     * @param shardCount number of writer threads (rounded up to a power of two)
+     * @param ringSize slots per shard (rounded up to a power of two)
+     * @param metrics receives ingest-to-publish samples; may be null
+     */
+    public ShardedIngestPipeline(Aggregator aggregator, int shardCount, int ringSize, IngestMetrics metrics) {
+        if (shardCount < 1 || ringSize < 2) {
+            throw new IllegalArgumentException("shardCount and ringSize must be positive");
+        }
+        this.aggregator = aggregator;
+        this.metrics = metrics;
+
+        int count = ceilPowerOfTwo(shardCount);
+        int capacity = ceilPowerOfTwo(ringSize);
+        this.shards = new Shard[count];
+        this.shardMask = count - 1;
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(capacity);
+            Thread writer = new Thread(shards[i], "ingest-shard-" + i);
+            writer.setDaemon(true);
+            shards[i].thread = writer;
+            writer.start();
+        }
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    @Override
+    public void onTick(int symbolId, double price, long volume, long exchangeTimestamp, long ingestTimestamp) {
+        shardOf(symbolId).publish(symbolId, price, volume, exchangeTimestamp, ingestTimestamp, ProducerTable.NONE, 0);
+    }
+
+    @Override
+    public void onTick(int symbolId, double price, long volume, long exchangeTimestamp, long ingestTimestamp,
+                       int producer, long sequence) {
+        shardOf(symbolId).publish(symbolId, price, volume, exchangeTimestamp, ingestTimestamp, producer, sequence);
+    }
+
+    @Override
+    public int onBatch(TickBatch batch, int[] symbolIds) {
+        int n = Aggregator.validateBatch(batch);
+        boolean hasIngest = batch.getIngestTimestampCount() == n;
+        for (int i = 0; i < n; i++) {
+            int symbolId = symbolIds[batch.getSymbolIndex(i)];
+            shardOf(symbolId).publish(symbolId, batch.getPrice(i), batch.getVolume(i),
+                    batch.getExchangeTimestamp(i), hasIngest ? batch.getIngestTimestamp(i) : 0, ProducerTable.NONE, 0);
+        }
+        return n;
+    }
+
+    @Override
+    public boolean isSynchronous() {
+        return false;
+    }
+
+    /**
+     * @return ticks accepted but not yet applied, summed over all shards
+     */
+    @Override
+    public long backlog() {
+        long total = 0;
+        for (Shard shard : shards) {
+            total += shard.claimed.get() - shard.consumed.get();
+        }
+        return total;
+    }
+
+    /**
+     * @return free ring slots of the fullest shard
+     */
+    public long remainingCapacity() {
+        long min = Long.MAX_VALUE;
+        for (Shard shard : shards) {
+            min = Math.min(min, shard.capacity - (shard.claimed.get() - shard.consumed.get()));
+        }
+        return Math.max(0, min);
+    }
+
+    /**
+     * @return true while every shard has at least a quarter of its ring free
+     */
+    @Override
+    public boolean hasCapacity() {
+        return remainingCapacity() >= shards[0].capacity / 4;
+    }
+
+    @Override
+    public long[] acceptedMark() {
+        long[] mark = new long[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            mark[i] = shards[i].claimed.get();
+        }
+        return mark;
+    }
+
+    @Override
+    public boolean applied(long[] mark) {
+        for (int i = 0; i < shards.length; i++) {
+            if (shards[i].consumed.get() < mark[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stop accepting work, drain what is already queued and stop the writer threads.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            for (Shard shard : shards) {
+                LockSupport.unpark(shard.thread);
+                shard.thread.join(TimeUnit.SECONDS.toMillis(5));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Shard shardOf(int symbolId) {
+        // Spread dense ids so neighbouring symbols land on different shards
+        int h = symbolId * 0x9E3779B9;
+        return shards[(h ^ (h >>> 16)) & shardMask];
+    }
+
+    private static int ceilPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    /**
+     * Multi-producer, single-consumer ring of ticks stored column-wise.
+     */
+    private final class Shard implements Runnable {
+        final int capacity;
+        final int mask;
+        final int[] symbol;
+        final double[] price;
+        final long[] volume;
+        final long[] exchangeTs;
+        final long[] ingestTs;
+        final int[] producer;
+        final long[] producerSeq;
+        // Per slot: sequence + 1 once the slot's columns are written
+        final long[] published;
+
+        final AtomicLong claimed = new AtomicLong();
+        final AtomicLong consumed = new AtomicLong();
+
+        // Writer-thread state: symbols touched in the current drain
+        final int[] touched = new int[MAX_DRAIN];
+        int[] touchedEpoch = new int[1024];
+        int epoch;
+        long applied;
+        Thread thread;
+
+        Shard(int capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.symbol = new int[capacity];
+            this.price = new double[capacity];
+            this.volume = new long[capacity];
+            this.exchangeTs = new long[capacity];
+            this.ingestTs = new long[capacity];
+            this.producer = new int[capacity];
+            this.producerSeq = new long[capacity];
+            this.published = new long[capacity];
+        }
+
+        void publish(int symbolId, double px, long qty, long exchange, long ingest, int source, long sequence) {
+            long seq = claimed.getAndIncrement();
+            int idle = 0;
+            while (seq - consumed.get() >= capacity) {
+                idle = backOff(idle);
+            }
+            int i = (int) seq & mask;
+            symbol[i] = symbolId;
+            price[i] = px;
+            volume[i] = qty;
+            exchangeTs[i] = exchange;
+            ingestTs[i] = ingest;
+            producer[i] = source;
+            producerSeq[i] = sequence;
+            PUBLISHED.setRelease(published, i, seq + 1);
+        }
+
+        @Override
+        public void run() {
+            long next = 0;
+            int idle = 0;
+            while (true) {
+                int n = 0;
+                while (n < MAX_DRAIN && (long) PUBLISHED.getAcquire(published, (int) (next + n) & mask) == next + n + 1) {
+                    n++;
+                }
+                if (n == 0) {
+                    if (!running && claimed.get() == next) {
+                        return;
+                    }
+                    idle = backOff(idle);
+                    continue;
+                }
+                idle = 0;
+                drain(next, n);
+                next += n;
+            }
+        }
+
+        private void drain(long from, int n) {
+            int distinct = 0;
+            if (++epoch == 0) {
+                Arrays.fill(touchedEpoch, 0);
+                epoch = 1;
+            }
+
+            for (int k = 0; k < n; k++) {
+                int i = (int) (from + k) & mask;
+                int symbolId = symbol[i];
+                aggregator.applyExclusive(symbolId, price[i], volume[i], exchangeTs[i], producer[i], producerSeq[i]);
+
+                if (symbolId >= touchedEpoch.length) {
+                    touchedEpoch = Arrays.copyOf(touchedEpoch, Math.max(symbolId + 1, touchedEpoch.length * 2));
+                }
+                if (touchedEpoch[symbolId] != epoch) {
+                    touchedEpoch[symbolId] = epoch;
+                    touched[distinct++] = symbolId;
+                }
+            }
+            long lastIngest = ingestTs[(int) (from + n - 1) & mask];
+
+            // Slots can be reused as soon as the ticks are applied
+            consumed.lazySet(from + n);
+
+            // One notification per symbol per drain
+            for (int k = 0; k < distinct; k++) {
+                aggregator.dispatch(touched[k]);
+            }
+
+            long before = applied;
+            applied += n;
+            if (metrics != null && metrics.sampled(before, applied)) {
+                metrics.recordIngestToPublish(lastIngest);
+            }
+        }
+    }
+
+    private static int backOff(int idle) {
+        if (idle < 100) {
+            Thread.onSpinWait();
+        } else if (idle < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+        return idle + 1;
+    }
+}
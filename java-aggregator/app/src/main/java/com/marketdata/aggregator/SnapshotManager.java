@@ -0,0 +1,300 @@
+package com.marketdata.aggregator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Periodic binary checkpoints of all {@link Aggregator} state.
+ *
+ * A snapshot is written while ingestion keeps running: each symbol is copied under its
+ * seqlock, so every symbol is internally consistent, and the journal sequence captured
+ * before the scan plus each symbol's applied sequence let journal replay fill in exactly
+ * the ticks the snapshot missed. Loading a snapshot costs one pass over the symbols,
+ * however many ticks they have seen.
+ *
+ * File layout (big-endian): header {@code int magic, int version, int intervals,
+ * long startSeq, long createdMillis, int symbols}; per symbol the UTF name, applied
+ * sequence and compact candle and analytics state; {@code int producers} and per producer
+ * the UTF name and last applied ingest sequence as of startSeq; trailer {@code long crc32}
+ * of everything before it.
+ * Files are written to a temporary name and atomically renamed into place.
+ */
+public final class SnapshotManager implements AutoCloseable {
+
+    private static final int MAGIC = 0x534E4150; // "SNAP"
+    // Version 2 added VWAP and trade count to bars and the analytics block, version 3 producer
+    // sequences after the symbols; older versions are still read
+    private static final int VERSION = 3;
+
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path directory;
+    private final Aggregator aggregator;
+    private final Path journalDirectory;
+    private final int retain;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param journalDirectory journal segments older than every retained snapshot are
+     *                         deleted from here; null when journaling is disabled
+     * @param retain number of most recent snapshots kept on disk
+     */
+    public SnapshotManager(Path directory, Aggregator aggregator, Path journalDirectory, int retain)
+            throws IOException {
+        if (retain < 1) {
+            throw new IllegalArgumentException("retain must be positive: " + retain);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.aggregator = aggregator;
+        this.journalDirectory = journalDirectory;
+        this.retain = retain;
+    }
+
+    /**
+     * Outcome of {@link #loadLatest()}.
+     *
+     * @param file snapshot that was loaded
+     * @param startSeq journal sequence to replay from
+     * @param symbols symbols restored
+     */
+    public record LoadResult(Path file, long startSeq, int symbols) {}
+
+    /**
+     * Restore the newest readable snapshot into the (empty) aggregator. Unreadable or
+     * corrupt files are skipped in favour of older ones.
+     *
+     * @return what was loaded, or null if there is no usable snapshot
+     */
+    public LoadResult loadLatest() throws IOException {
+        List<Path> files = snapshots();
+        for (int i = files.size() - 1; i >= 0; i--) {
+            Path file = files.get(i);
+            try {
+                verify(file);
+            } catch (IOException e) {
+                System.err.println("[SNAPSHOT] skipping " + file.getFileName() + ": " + e.getMessage());
+                continue;
+            }
+            return load(file);
+        }
+        return null;
+    }
+
+    /**
+     * Write snapshots every {@code periodSeconds} on a background thread.
+     */
+    public void start(int periodSeconds) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                write();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[SNAPSHOT] write failed: " + e);
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Write a snapshot now, then drop old snapshots and the journal segments only they needed.
+     *
+     * @return the new snapshot file
+     */
+    public synchronized Path write() throws IOException {
+        long started = System.nanoTime();
+
+        // Captured before the scan: every tick below it is already in the store
+        TickJournal.Checkpoint checkpoint = aggregator.journalCheckpoint();
+        long startSeq = checkpoint.seq();
+        int count = aggregator.symbolCount();
+        long created = System.currentTimeMillis();
+
+        Path file = directory.resolve(String.format(Locale.ROOT, "%s%020d%s", PREFIX, created, SUFFIX));
+        Path tmp = directory.resolve(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new CheckedOutputStream(Files.newOutputStream(tmp), crc), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(CandleStore.intervalCount());
+            out.writeLong(startSeq);
+            out.writeLong(created);
+            out.writeInt(count);
+
+            long[] scratch = new long[aggregator.stateWords()];
+            for (int id = 0; id < count; id++) {
+                out.writeUTF(aggregator.symbolName(id));
+                aggregator.writeSymbolState(id, scratch, out);
+            }
+            out.writeInt(checkpoint.producers().size());
+            for (Map.Entry<String, Long> producer : checkpoint.producers().entrySet()) {
+                out.writeUTF(producer.getKey());
+                out.writeLong(producer.getValue());
+            }
+            out.flush();
+            out.writeLong(crc.getValue());
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        prune();
+        System.out.printf("[SNAPSHOT] %d symbols written to %s in %d ms%n",
+                count, file.getFileName(), (System.nanoTime() - started) / 1_000_000);
+        return file;
+    }
+
+    /**
+     * Stop the schedule and write a final snapshot so the next start replays nothing.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            write();
+        } catch (IOException e) {
+            System.err.println("[SNAPSHOT] final write failed: " + e.getMessage());
+        }
+    }
+
+    private LoadResult load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            in.readInt(); // magic, version and layout checked by verify()
+            int version = in.readInt();
+            in.readInt();
+            long startSeq = in.readLong();
+            in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int id = aggregator.internSymbol(in.readUTF());
+                aggregator.readSymbolState(id, in, version);
+            }
+            if (version >= 3) {
+                int producers = in.readInt();
+                for (int i = 0; i < producers; i++) {
+                    aggregator.producers().restore(in.readUTF(), in.readLong());
+                }
+            }
+            return new LoadResult(file, startSeq, count);
+        }
+    }
+
+    /**
+     * Check header and checksum before anything is applied, so a torn file never
+     * leaves the aggregator half-restored.
+     */
+    private static void verify(Path file) throws IOException {
+        long size = Files.size(file);
+        if (size < 40) {
+            throw new IOException("truncated");
+        }
+        CRC32 crc = new CRC32();
+        try (InputStream raw = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(raw, BUFFER_SIZE))) {
+            CheckedInputStream checked = new CheckedInputStream(new BoundedInput(in, size - Long.BYTES), crc);
+            DataInputStream header = new DataInputStream(checked);
+            if (header.readInt() != MAGIC) {
+                throw new IOException("not a snapshot file");
+            }
+            int version = header.readInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("unsupported snapshot version " + version);
+            }
+            if (header.readInt() != CandleStore.intervalCount()) {
+                throw new IOException("written with a different interval layout");
+            }
+            checked.transferTo(OutputStream.nullOutputStream());
+            if (in.readLong() != crc.getValue()) {
+                throw new IOException("checksum mismatch");
+            }
+        }
+    }
+
+    private void prune() throws IOException {
+        List<Path> files = snapshots();
+        for (int i = 0; i < files.size() - retain; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+        if (journalDirectory != null && !files.isEmpty()) {
+            Path oldest = files.get(Math.max(0, files.size() - retain));
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(oldest))) {
+                in.skipNBytes(12);
+                TickJournal.deleteSegmentsBefore(journalDirectory, in.readLong());
+            }
+        }
+    }
+
+    private List<Path> snapshots() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> {
+                        String name = p.getFileName().toString();
+                        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /** Reads at most {@code limit} bytes of the wrapped stream, leaving the rest unread. */
+    private static final class BoundedInput extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        BoundedInput(InputStream in, long limit) {
+            this.in = in;
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(buf, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.marketdata.aggregator;
+
+/**
+ * Handle returned when registering an {@link AggregateListener}.
+ * Cancelling is idempotent and takes effect for the next tick.
+ */
+@FunctionalInterface
+public interface Subscription extends AutoCloseable {
+
+    void cancel();
+
+    @Override
+    default void close() {
+        cancel();
+    }
+}
@@ -0,0 +1,219 @@
+package com.marketdata.aggregator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ToIntFunction;
+
+/**
+ * Listener index keyed by symbol id, plus a list of wildcard (all-symbols) listeners.
+ *
+ * Dispatching a tick only touches the wildcard listeners and the listeners of that
+ * symbol, so its cost is independent of how many other symbols are subscribed.
+ * Listener arrays are copy-on-write: (un)subscribing takes the registry lock,
+ * dispatch reads volatile references and never blocks.
+ *
+ * A listener can also be registered by name for a symbol that has no id yet; it waits
+ * in a side map until {@link #attach} is called when the symbol is first interned, so
+ * subscribing to a name never allocates symbol storage.
+ */
+final class SubscriptionRegistry {
+
+    private static final AggregateListener[] NONE = new AggregateListener[0];
+
+    private volatile AggregateListener[] wildcard = NONE;
+    private volatile AtomicReferenceArray<AggregateListener[]> bySymbol = new AtomicReferenceArray<>(64);
+
+    // Listeners of symbols not interned yet, keyed by name; guarded by this
+    private final Map<String, AggregateListener[]> awaiting = new HashMap<>();
+
+    /**
+     * Subscribe to updates of one symbol.
+     */
+    Subscription subscribe(int symbolId, AggregateListener listener) {
+        synchronized (this) {
+            add(symbolId, listener);
+        }
+        return once(() -> {
+            synchronized (this) {
+                removeFrom(symbolId, listener);
+            }
+        });
+    }
+
+    /**
+     * Subscribe to updates of one symbol by name. If {@code ids} does not know it yet the
+     * listener waits until {@link #attach} is called for it.
+     *
+     * @param ids id of a symbol, or -1 if it has not been interned
+     */
+    Subscription subscribe(String symbol, ToIntFunction<String> ids, AggregateListener listener) {
+        synchronized (this) {
+            int symbolId = ids.applyAsInt(symbol);
+            if (symbolId >= 0) {
+                add(symbolId, listener);
+            } else {
+                awaiting.put(symbol, append(awaiting.getOrDefault(symbol, NONE), listener));
+            }
+        }
+        return once(() -> {
+            synchronized (this) {
+                AggregateListener[] waiting = awaiting.get(symbol);
+                if (waiting != null) {
+                    AggregateListener[] next = remove(waiting, listener);
+                    if (next != waiting) {
+                        if (next.length == 0) {
+                            awaiting.remove(symbol);
+                        } else {
+                            awaiting.put(symbol, next);
+                        }
+                        return;
+                    }
+                }
+                int symbolId = ids.applyAsInt(symbol);
+                if (symbolId >= 0) {
+                    removeFrom(symbolId, listener);
+                }
+            }
+        });
+    }
+
+    /**
+     * Move the listeners waiting for {@code symbol} to its newly assigned id. Must be
+     * called after the id is visible to the lookup passed to {@link #subscribe(String, ToIntFunction, AggregateListener)}.
+     */
+    synchronized void attach(String symbol, int symbolId) {
+        AggregateListener[] waiting = awaiting.remove(symbol);
+        if (waiting != null) {
+            for (AggregateListener listener : waiting) {
+                add(symbolId, listener);
+            }
+        }
+    }
+
+    /**
+     * Subscribe to updates of every symbol.
+     */
+    Subscription subscribeAll(AggregateListener listener) {
+        synchronized (this) {
+            wildcard = append(wildcard, listener);
+        }
+        return once(() -> {
+            synchronized (this) {
+                wildcard = remove(wildcard, listener);
+            }
+        });
+    }
+
+    /**
+     * Invoke every listener interested in this symbol. Listener failures are swallowed
+     * so one bad subscriber cannot break ingestion for the others.
+     */
+    void dispatch(int symbolId) {
+        for (AggregateListener listener : wildcard) {
+            notify(listener, symbolId);
+        }
+        AtomicReferenceArray<AggregateListener[]> table = bySymbol;
+        if (symbolId < table.length()) {
+            AggregateListener[] listeners = table.get(symbolId);
+            if (listeners != null) {
+                for (AggregateListener listener : listeners) {
+                    notify(listener, symbolId);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of listeners registered for one symbol (excluding wildcards)
+     */
+    int subscriberCount(int symbolId) {
+        AtomicReferenceArray<AggregateListener[]> table = bySymbol;
+        if (symbolId >= table.length()) {
+            return 0;
+        }
+        AggregateListener[] listeners = table.get(symbolId);
+        return listeners == null ? 0 : listeners.length;
+    }
+
+    /**
+     * @return true if a dispatch for this symbol would reach at least one listener
+     */
+    boolean hasListeners(int symbolId) {
+        return wildcard.length > 0 || subscriberCount(symbolId) > 0;
+    }
+
+    // Callers hold the registry lock
+    private void add(int symbolId, AggregateListener listener) {
+        AtomicReferenceArray<AggregateListener[]> table = bySymbol;
+        if (symbolId >= table.length()) {
+            table = grow(table, symbolId);
+            bySymbol = table;
+        }
+        AggregateListener[] current = table.get(symbolId);
+        table.set(symbolId, append(current == null ? NONE : current, listener));
+    }
+
+    // Callers hold the registry lock
+    private void removeFrom(int symbolId, AggregateListener listener) {
+        AtomicReferenceArray<AggregateListener[]> table = bySymbol;
+        if (symbolId >= table.length()) {
+            return;
+        }
+        AggregateListener[] current = table.get(symbolId);
+        if (current != null) {
+            AggregateListener[] next = remove(current, listener);
+            table.set(symbolId, next.length == 0 ? null : next);
+        }
+    }
+
+    private static void notify(AggregateListener listener, int symbolId) {
+        try {
+            listener.onUpdate(symbolId);
+        } catch (Exception e) {
+            // Ignore listener errors to prevent affecting the ingestion flow
+        }
+    }
+
+    private static AtomicReferenceArray<AggregateListener[]> grow(AtomicReferenceArray<AggregateListener[]> table,
+                                                                  int symbolId) {
+        int length = table.length();
+        while (length <= symbolId) {
+            length *= 2;
+        }
+        AtomicReferenceArray<AggregateListener[]> grown = new AtomicReferenceArray<>(length);
+        for (int i = 0; i < table.length(); i++) {
+            grown.set(i, table.get(i));
+        }
+        return grown;
+    }
+
+    private static AggregateListener[] append(AggregateListener[] current, AggregateListener listener) {
+        AggregateListener[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = listener;
+        return next;
+    }
+
+    private static AggregateListener[] remove(AggregateListener[] current, AggregateListener listener) {
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                AggregateListener[] next = new AggregateListener[current.length - 1];
+                System.arraycopy(current, 0, next, 0, i);
+                System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                return next;
+            }
+        }
+        return current;
+    }
+
+    private static Subscription once(Runnable unsubscribe) {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        return () -> {
+            if (cancelled.compareAndSet(false, true)) {
+                unsubscribe.run();
+            }
+        };
+    }
+}
@@ -0,0 +1,78 @@
+package com.marketdata.aggregator;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Interns ticker symbols to dense int ids (0, 1, 2, ...).
+ *
+ * Lookups of known symbols are a single lock-free map read; only the first sighting
+ * of a symbol takes the table lock. Ids are never reused or removed.
+ */
+final class SymbolTable {
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final IntConsumer reserve;
+    private final ObjIntConsumer<String> added;
+
+    // Copy-on-grow; an id is only handed out after its name is written
+    private volatile String[] names = new String[64];
+    private volatile int size;
+
+    /**
+     * @param reserve called with each new id before it becomes visible, so backing
+     *                storage can be allocated ahead of the first update
+     * @param added called with each new symbol and its id once the id is visible
+     */
+    SymbolTable(IntConsumer reserve, ObjIntConsumer<String> added) {
+        this.reserve = reserve;
+        this.added = added;
+    }
+
+    /**
+     * @return the id for this symbol, assigning the next free id on first use
+     */
+    int intern(String symbol) {
+        Integer id = ids.get(symbol);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(symbol);
+            if (id != null) {
+                return id;
+            }
+            int next = size;
+            reserve.accept(next);
+            String[] current = names;
+            if (next == current.length) {
+                current = Arrays.copyOf(current, next * 2);
+            }
+            current[next] = symbol;
+            names = current;
+            size = next + 1;
+            ids.put(symbol, next);
+            added.accept(symbol, next);
+            return next;
+        }
+    }
+
+    /**
+     * @return the id for this symbol, or -1 if it has never been interned
+     */
+    int idOf(String symbol) {
+        Integer id = ids.get(symbol);
+        return id != null ? id : -1;
+    }
+
+    String name(int id) {
+        return names[id];
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,602 @@
+package com.marketdata.aggregator;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+/**
+ * Append-only, memory-mapped journal of accepted ticks.
+ *
+ * Ingest threads only copy a tick into a pre-allocated staging ring and get back its
+ * journal sequence number; a background thread drains the ring in sequence order into
+ * the current mapped segment (group commit) and forces it to disk per the
+ * {@link FsyncPolicy}. Segments are pre-sized files named after their first sequence
+ * and rolled when full. Each segment re-declares the symbols and producers it uses, so
+ * any suffix of the journal can be replayed on its own.
+ *
+ * A tick numbered by its producer is journaled with that sequence, and replay raises the
+ * producer's sequence to it, so a restarted node still drops what the producer resends.
+ * With the sharded pipeline a producer's ticks can reach the journal out of order, so a
+ * crash can keep a later one and lose an earlier one still staged on another shard.
+ *
+ * Durability: a process crash loses nothing that reached the mapped segment; an OS
+ * crash or power loss can lose ticks written since the last force.
+ *
+ * Segment layout (little-endian):
+ * <pre>
+ *   header  : int magic, int version, long firstSeq
+ *   SYMBOL   : byte 2, int symbolId, short length, UTF-8 name
+ *   TICK     : byte 1, int symbolId, double price, long volume, long exchangeTimestamp
+ *   PRODUCER : byte 3, int producerId, short length, UTF-8 name (version 2)
+ *   SEQUENCED: byte 4, the TICK fields, int producerId, long producerSequence (version 2)
+ *   end      : byte 0 (the unwritten, zero-filled tail)
+ * </pre>
+ * Ticks carry no journal sequence: the n-th TICK or SEQUENCED record of a segment has
+ * {@code firstSeq + n}. Version 1 segments are still replayed.
+ */
+public final class TickJournal implements AutoCloseable {
+
+    public enum FsyncPolicy {
+        /** Leave flushing to the OS. */
+        NEVER,
+        /** Force at most once per configured interval. */
+        INTERVAL,
+        /** Force after every group of records written. */
+        ALWAYS;
+
+        public static FsyncPolicy parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    static final int MAGIC = 0x4A54444D; // "MDTJ"
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 16;
+
+    static final byte RECORD_END = 0;
+    static final byte RECORD_TICK = 1;
+    static final byte RECORD_SYMBOL = 2;
+    static final byte RECORD_PRODUCER = 3;
+    static final byte RECORD_SEQUENCED = 4;
+    static final int TICK_BYTES = 1 + 4 + 8 + 8 + 8;
+    static final int SEQUENCED_BYTES = TICK_BYTES + 4 + 8;
+
+    private static final String PREFIX = "ticks-";
+    private static final String SUFFIX = ".journal";
+    private static final int MAX_GROUP = 4096;
+
+    private static final VarHandle PUBLISHED = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final Path directory;
+    private final IntFunction<String> symbolNames;
+    private final IntFunction<String> producerNames;
+    private final long segmentBytes;
+    private final FsyncPolicy fsync;
+    private final long fsyncIntervalNanos;
+    private final long firstSeq;
+
+    // Staging ring: journal sequence = firstSeq + ring sequence
+    private final int capacity;
+    private final int mask;
+    private final int[] symbol;
+    private final double[] price;
+    private final long[] volume;
+    private final long[] timestamp;
+    private final int[] producer;
+    private final long[] producerSeq;
+    private final long[] published;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+
+    // Writer-thread state
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile IOException failure;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int[] declaredEpoch = new int[1024];
+    private int[] declaredProducerEpoch = new int[16];
+    private long[] producerWritten = new long[16];
+    private boolean producersAdvanced;
+    private int epoch;
+    private boolean dirty;
+    private long lastForce = System.nanoTime();
+
+    // Guarded by this: producer sequences of every record below consumed, by producer id
+    private long[] checkpointProducers = new long[0];
+
+    /**
+     * @param directory where segments are created
+     * @param firstSeq sequence number of the first tick appended (one past the last replayed)
+     * @param symbolNames resolves symbol ids (the Aggregator's interning) for SYMBOL records
+     * @param producerNames resolves producer ids for PRODUCER records
+     * @param segmentBytes size of each pre-allocated segment file
+     * @param bufferSize staging ring slots (rounded up to a power of two)
+     */
+    public TickJournal(Path directory, long firstSeq, IntFunction<String> symbolNames,
+                       IntFunction<String> producerNames, long segmentBytes, int bufferSize,
+                       FsyncPolicy fsync, long fsyncIntervalMillis)
+            throws IOException {
+        if (segmentBytes < 4096 || segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("segmentBytes must be between 4KiB and 2GiB: " + segmentBytes);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.firstSeq = firstSeq;
+        this.symbolNames = symbolNames;
+        this.producerNames = producerNames;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis);
+
+        this.capacity = bufferSize <= 2 ? 2 : Integer.highestOneBit(bufferSize - 1) << 1;
+        this.mask = capacity - 1;
+        this.symbol = new int[capacity];
+        this.price = new double[capacity];
+        this.volume = new long[capacity];
+        this.timestamp = new long[capacity];
+        this.producer = new int[capacity];
+        this.producerSeq = new long[capacity];
+        this.published = new long[capacity];
+
+        // A segment starting at firstSeq can only be left over empty from a previous run
+        Files.deleteIfExists(directory.resolve(segmentName(firstSeq)));
+        openSegment(firstSeq);
+
+        this.writer = new Thread(this::run, "tick-journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Stage a tick for writing. Blocks only while the staging ring is full.
+     *
+     * @return the tick's journal sequence number
+     */
+    public long append(int symbolId, double px, long qty, long exchangeTimestamp) {
+        long sequence = claim();
+        publish(sequence, symbolId, px, qty, exchangeTimestamp, ProducerTable.NONE, 0);
+        return sequence;
+    }
+
+    /**
+     * Reserve the next journal sequence without blocking. Every claimed sequence must be
+     * {@link #publish published}; the writer waits for it before writing later ones.
+     */
+    long claim() {
+        return firstSeq + claimed.getAndIncrement();
+    }
+
+    /**
+     * Stage the tick of a claimed sequence. Blocks only while the staging ring is full.
+     *
+     * @param source producer id that numbered the tick, or {@link ProducerTable#NONE}
+     */
+    void publish(long sequence, int symbolId, double px, long qty, long exchangeTimestamp,
+                 int source, long sourceSeq) {
+        long seq = sequence - firstSeq;
+        int idle = 0;
+        while (seq - consumed.get() >= capacity) {
+            idle = backOff(idle);
+        }
+        int i = (int) seq & mask;
+        symbol[i] = symbolId;
+        price[i] = px;
+        volume[i] = qty;
+        timestamp[i] = exchangeTimestamp;
+        producer[i] = source;
+        producerSeq[i] = sourceSeq;
+        PUBLISHED.setRelease(published, i, seq + 1);
+    }
+
+    /**
+     * @return sequence number the next appended tick will receive
+     */
+    public long nextSeq() {
+        return firstSeq + claimed.get();
+    }
+
+    /**
+     * @return sequence number of the first tick not yet written to a segment
+     */
+    public long writtenSeq() {
+        return firstSeq + consumed.get();
+    }
+
+    /**
+     * A journal position and each producer's highest sequence written below it.
+     *
+     * @param seq every tick below this sequence has been written
+     * @param producers producer sequence by producer name
+     */
+    record Checkpoint(long seq, Map<String, Long> producers) {}
+
+    /**
+     * @return the written position with the producer sequences it covers; every tick below
+     *         it has been applied to the store, since ticks are staged only after they are
+     */
+    synchronized Checkpoint checkpoint() {
+        Map<String, Long> producers = new LinkedHashMap<>();
+        for (int id = 0; id < checkpointProducers.length; id++) {
+            if (checkpointProducers[id] != 0) {
+                producers.put(producerNames.apply(id), checkpointProducers[id]);
+            }
+        }
+        return new Checkpoint(firstSeq + consumed.get(), producers);
+    }
+
+    /**
+     * @return the I/O error that stopped the writer, or null while healthy
+     */
+    public IOException failure() {
+        return failure;
+    }
+
+    /**
+     * Write everything staged, force it to disk and stop the writer thread.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long next = 0;
+        int idle = 0;
+        try {
+            while (true) {
+                int n = 0;
+                while (n < MAX_GROUP && (long) PUBLISHED.getAcquire(published, (int) (next + n) & mask) == next + n + 1) {
+                    n++;
+                }
+                if (n == 0) {
+                    if (!running && claimed.get() == next) {
+                        force();
+                        return;
+                    }
+                    if (dirty && fsync == FsyncPolicy.INTERVAL && System.nanoTime() - lastForce >= fsyncIntervalNanos) {
+                        force();
+                    }
+                    idle = backOff(idle);
+                    continue;
+                }
+                idle = 0;
+
+                for (int k = 0; k < n; k++) {
+                    write(next + k);
+                }
+                next += n;
+                advance(next);
+                dirty = true;
+
+                // Group commit: one force covers every record written above
+                if (fsync == FsyncPolicy.ALWAYS
+                        || (fsync == FsyncPolicy.INTERVAL && System.nanoTime() - lastForce >= fsyncIntervalNanos)) {
+                    force();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            failure = e instanceof IOException io ? io : new IOException(e);
+            System.err.println("[JOURNAL] writer stopped: " + e);
+            // Keep releasing slots so ingestion never blocks on a dead journal
+            while (running || claimed.get() != next) {
+                long available = claimed.get();
+                next = Math.max(next, available);
+                consumed.lazySet(next);
+                LockSupport.parkNanos(1_000_000);
+            }
+        } finally {
+            closeSegment();
+        }
+    }
+
+    // Release written slots; the checkpoint moves with them
+    private void advance(long next) {
+        if (!producersAdvanced) {
+            consumed.lazySet(next);
+            return;
+        }
+        producersAdvanced = false;
+        synchronized (this) {
+            consumed.lazySet(next);
+            checkpointProducers = producerWritten.clone();
+        }
+    }
+
+    private void write(long ringSeq) throws IOException {
+        int i = (int) ringSeq & mask;
+        int id = symbol[i];
+        int source = producer[i];
+        int bytes = source == ProducerTable.NONE ? TICK_BYTES : SEQUENCED_BYTES;
+
+        if (segment.remaining() < bytes + 1) {
+            rollSegment(firstSeq + ringSeq);
+        }
+        if (id >= declaredEpoch.length) {
+            declaredEpoch = Arrays.copyOf(declaredEpoch, Math.max(id + 1, declaredEpoch.length * 2));
+        }
+        if (declaredEpoch[id] != epoch) {
+            byte[] name = symbolNames.apply(id).getBytes(StandardCharsets.UTF_8);
+            if (segment.remaining() < 1 + 4 + 2 + name.length + bytes + 1) {
+                rollSegment(firstSeq + ringSeq);
+            }
+            segment.put(RECORD_SYMBOL).putInt(id).putShort((short) name.length).put(name);
+            declaredEpoch[id] = epoch;
+        }
+        if (source == ProducerTable.NONE) {
+            segment.put(RECORD_TICK)
+                    .putInt(id)
+                    .putDouble(price[i])
+                    .putLong(volume[i])
+                    .putLong(timestamp[i]);
+            return;
+        }
+
+        if (source >= declaredProducerEpoch.length) {
+            int length = Math.max(source + 1, declaredProducerEpoch.length * 2);
+            declaredProducerEpoch = Arrays.copyOf(declaredProducerEpoch, length);
+            producerWritten = Arrays.copyOf(producerWritten, length);
+        }
+        if (declaredProducerEpoch[source] != epoch) {
+            byte[] name = producerNames.apply(source).getBytes(StandardCharsets.UTF_8);
+            if (segment.remaining() < 1 + 4 + 2 + name.length + bytes + 1) {
+                // A new segment re-declares the symbol as well
+                rollSegment(firstSeq + ringSeq);
+                write(ringSeq);
+                return;
+            }
+            segment.put(RECORD_PRODUCER).putInt(source).putShort((short) name.length).put(name);
+            declaredProducerEpoch[source] = epoch;
+        }
+        segment.put(RECORD_SEQUENCED)
+                .putInt(id)
+                .putDouble(price[i])
+                .putLong(volume[i])
+                .putLong(timestamp[i])
+                .putInt(source)
+                .putLong(producerSeq[i]);
+        producerWritten[source] = ProducerTable.later(producerWritten[source], producerSeq[i]);
+        producersAdvanced = true;
+    }
+
+    private void openSegment(long segmentFirstSeq) throws IOException {
+        Path path = directory.resolve(segmentName(segmentFirstSeq));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segment.putInt(MAGIC).putInt(VERSION).putLong(segmentFirstSeq);
+
+        // Every segment re-declares its symbols and producers
+        if (++epoch == 0) {
+            Arrays.fill(declaredEpoch, 0);
+            Arrays.fill(declaredProducerEpoch, 0);
+            epoch = 1;
+        }
+    }
+
+    private void rollSegment(long nextFirstSeq) throws IOException {
+        force();
+        closeSegment();
+        openSegment(nextFirstSeq);
+    }
+
+    private void force() {
+        if (segment != null && dirty && fsync != FsyncPolicy.NEVER) {
+            segment.force();
+        }
+        dirty = false;
+        lastForce = System.nanoTime();
+    }
+
+    private void closeSegment() {
+        if (segment != null && fsync != FsyncPolicy.NEVER) {
+            segment.force();
+        }
+        segment = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("[JOURNAL] close failed: " + e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    private static int backOff(int idle) {
+        if (idle < 100) {
+            Thread.onSpinWait();
+        } else if (idle < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(100_000);
+        }
+        return idle + 1;
+    }
+
+    static String segmentName(long segmentFirstSeq) {
+        return String.format(Locale.ROOT, "%s%020d%s", PREFIX, segmentFirstSeq, SUFFIX);
+    }
+
+    /**
+     * @return segment files in sequence order
+     */
+    static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> {
+                        String name = p.getFileName().toString();
+                        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    static long segmentFirstSeq(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * Delete segments that hold only ticks below {@code seq}. The newest segment is always kept.
+     *
+     * @return number of segments deleted
+     */
+    public static int deleteSegmentsBefore(Path directory, long seq) throws IOException {
+        List<Path> files = segments(directory);
+        int deleted = 0;
+        for (int f = 0; f + 1 < files.size(); f++) {
+            if (segmentFirstSeq(files.get(f + 1)) > seq) {
+                break;
+            }
+            Files.deleteIfExists(files.get(f));
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Outcome of {@link #replay}.
+     *
+     * @param nextSeq sequence number the next appended tick should receive
+     * @param ticks ticks applied to the aggregator
+     * @param segments segment files read
+     */
+    public record ReplayResult(long nextSeq, long ticks, int segments) {}
+
+    /**
+     * Rebuild aggregator state from every journaled tick with sequence {@code >= fromSeq}
+     * that a symbol has not already applied (see {@link Aggregator#appliedSeq}).
+     * Listeners are not notified and nothing is re-journaled. Producer sequences are
+     * raised to every one journaled. A torn record at the end of the last segment
+     * (crash mid-write) ends the replay cleanly.
+     */
+    public static ReplayResult replay(Path directory, Aggregator aggregator, long fromSeq) throws IOException {
+        List<Path> files = segments(directory);
+        long nextSeq = fromSeq;
+        long applied = 0;
+        int read = 0;
+
+        for (int f = 0; f < files.size(); f++) {
+            // Skip segments that end before fromSeq
+            if (f + 1 < files.size() && segmentFirstSeq(files.get(f + 1)) <= fromSeq) {
+                continue;
+            }
+            read++;
+
+            try (FileChannel ch = FileChannel.open(files.get(f), StandardOpenOption.READ)) {
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                buf.order(ByteOrder.LITTLE_ENDIAN);
+                if (buf.remaining() < HEADER_BYTES || buf.getInt() != MAGIC) {
+                    throw new IOException("Not a tick journal segment: " + files.get(f));
+                }
+                int version = buf.getInt();
+                if (version < 1 || version > VERSION) {
+                    throw new IOException("Unsupported tick journal version " + version + ": " + files.get(f));
+                }
+                long seq = buf.getLong();
+                int[] ids = new int[256];
+                Arrays.fill(ids, -1);
+                String[] producers = new String[16];
+
+                while (buf.hasRemaining()) {
+                    byte type = buf.get();
+                    if (type == RECORD_TICK || type == RECORD_SEQUENCED) {
+                        if (buf.remaining() < (type == RECORD_TICK ? TICK_BYTES : SEQUENCED_BYTES) - 1) {
+                            break;
+                        }
+                        int local = buf.getInt();
+                        double px = buf.getDouble();
+                        long qty = buf.getLong();
+                        long ts = buf.getLong();
+                        if (type == RECORD_SEQUENCED) {
+                            int producer = buf.getInt();
+                            long producerSeq = buf.getLong();
+                            if (producer < 0 || producer >= producers.length || producers[producer] == null) {
+                                throw new IOException("Undeclared producer " + producer + " in " + files.get(f));
+                            }
+                            aggregator.producers().restore(producers[producer], producerSeq);
+                        }
+                        if (seq >= fromSeq) {
+                            if (local >= ids.length || ids[local] < 0) {
+                                throw new IOException("Undeclared symbol " + local + " in " + files.get(f));
+                            }
+                            int id = ids[local];
+                            // Already part of a loaded snapshot
+                            if (seq >= aggregator.appliedSeq(id)) {
+                                aggregator.applyReplayed(id, px, qty, ts, seq);
+                                applied++;
+                            }
+                        }
+                        seq++;
+                    } else if (type == RECORD_SYMBOL) {
+                        if (buf.remaining() < 6) {
+                            break;
+                        }
+                        int local = buf.getInt();
+                        int length = Short.toUnsignedInt(buf.getShort());
+                        if (buf.remaining() < length) {
+                            break;
+                        }
+                        byte[] name = new byte[length];
+                        buf.get(name);
+                        if (local >= ids.length) {
+                            int old = ids.length;
+                            ids = Arrays.copyOf(ids, Math.max(local + 1, old * 2));
+                            Arrays.fill(ids, old, ids.length, -1);
+                        }
+                        ids[local] = aggregator.internSymbol(new String(name, StandardCharsets.UTF_8));
+                    } else if (type == RECORD_PRODUCER) {
+                        if (buf.remaining() < 6) {
+                            break;
+                        }
+                        int local = buf.getInt();
+                        int length = Short.toUnsignedInt(buf.getShort());
+                        if (buf.remaining() < length) {
+                            break;
+                        }
+                        byte[] name = new byte[length];
+                        buf.get(name);
+                        if (local < 0) {
+                            throw new IOException("Bad producer id " + local + " in " + files.get(f));
+                        }
+                        if (local >= producers.length) {
+                            producers = Arrays.copyOf(producers, Math.max(local + 1, producers.length * 2));
+                        }
+                        producers[local] = new String(name, StandardCharsets.UTF_8);
+                    } else {
+                        break;
+                    }
+                }
+                nextSeq = Math.max(nextSeq, seq);
+            }
+        }
+        return new ReplayResult(nextSeq, applied, read);
+    }
+}
@@ -0,0 +1,68 @@
+package com.marketdata.aggregator;
+
+import com.marketdata.proto.TickBatch;
+
+/**
+ * Where ingest streams hand accepted ticks: the {@link Aggregator} itself (applied
+ * inline on the gRPC thread) or a {@link ShardedIngestPipeline} in front of it.
+ */
+public interface TickSink {
+
+    /**
+     * @param symbolId Id from {@link Aggregator#internSymbol(String)}
+     * @param ingestTimestamp Epoch nanoseconds stamped by the C++ ingestion layer, or 0
+     */
+    void onTick(int symbolId, double price, long volume, long exchangeTimestamp, long ingestTimestamp);
+
+    /**
+     * Same as {@link #onTick(int, double, long, long, long)} for a tick numbered by its
+     * producer; the sequence is journaled with the tick so it survives a restart.
+     *
+     * @param producer id from the aggregator's producer table
+     */
+    void onTick(int symbolId, double price, long volume, long exchangeTimestamp, long ingestTimestamp,
+                int producer, long sequence);
+
+    /**
+     * @param symbolIds Interned ids of {@code batch.getSymbolsList()}, in dictionary order
+     * @return Number of ticks accepted
+     * @throws IllegalArgumentException if the batch is malformed; nothing is accepted then
+     */
+    int onBatch(TickBatch batch, int[] symbolIds);
+
+    /**
+     * @return true if ticks are visible to readers and listeners when the call returns
+     */
+    default boolean isSynchronous() {
+        return true;
+    }
+
+    /**
+     * @return false while the sink is too full to take more ticks without blocking;
+     *         ingest calls stop requesting messages until it returns true again
+     */
+    default boolean hasCapacity() {
+        return true;
+    }
+
+    /**
+     * @return ticks accepted but not yet applied
+     */
+    default long backlog() {
+        return 0;
+    }
+
+    /**
+     * @return a position covering every tick accepted so far, for {@link #applied(long[])}
+     */
+    default long[] acceptedMark() {
+        return null;
+    }
+
+    /**
+     * @return true once every tick covered by {@code mark} has been applied
+     */
+    default boolean applied(long[] mark) {
+        return true;
+    }
+}
@@ -0,0 +1,114 @@
+package com.marketdata.aggregator;
+
+import java.util.Locale;
+
+/**
+ * Netty transport options of the gRPC server (see {@link NettyTransport}).
+ *
+ * @param transport socket implementation
+ * @param bossThreads event-loop threads accepting connections
+ * @param workerThreads event-loop threads doing connection I/O; 0 uses Netty's default (2 per core)
+ * @param executor where service methods and stream callbacks run
+ * @param executorThreads threads of the {@code FIXED} executor
+ * @param flowControlWindow initial HTTP/2 flow-control window per stream, in bytes
+ * @param maxInboundMessageSize largest request message accepted, in bytes
+ * @param keepAliveTimeSeconds ping an idle connection after this long; 0 never pings
+ * @param keepAliveTimeoutSeconds close a connection whose ping is not answered within this
+ * @param permitKeepAliveTimeSeconds most frequent client pings tolerated
+ * @param permitKeepAliveWithoutCalls tolerate client pings on connections with no open call
+ * @param maxConnectionIdleSeconds close connections without calls for this long; 0 never does
+ */
+public record TransportSettings(
+        Transport transport,
+        int bossThreads,
+        int workerThreads,
+        CallExecutor executor,
+        int executorThreads,
+        int flowControlWindow,
+        int maxInboundMessageSize,
+        int keepAliveTimeSeconds,
+        int keepAliveTimeoutSeconds,
+        int permitKeepAliveTimeSeconds,
+        boolean permitKeepAliveWithoutCalls,
+        int maxConnectionIdleSeconds) {
+
+    public enum Transport {
+        /** Epoll where the native library loads (Linux), NIO elsewhere. */
+        AUTO,
+        EPOLL,
+        NIO
+    }
+
+    public enum CallExecutor {
+        /** gRPC's shared, unbounded cached pool. */
+        DEFAULT,
+        /** On the Netty event loop; handlers must never block. Never chosen by a profile. */
+        DIRECT,
+        /** A fixed pool; calls queue until a thread is free and never run on the event loop. */
+        FIXED,
+        /** One virtual thread per task. */
+        VIRTUAL
+    }
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    /** gRPC's own defaults. */
+    public static final TransportSettings DEFAULT = new TransportSettings(
+            Transport.AUTO, 1, 0, CallExecutor.DEFAULT, CORES,
+            1 << 20, 4 << 20, 0, 20, 300, false, 0);
+
+    /** Long-lived ingest streams: larger windows and messages, a bounded pool, keepalive. */
+    public static final TransportSettings THROUGHPUT = new TransportSettings(
+            Transport.AUTO, 1, CORES, CallExecutor.FIXED, CORES,
+            8 << 20, 16 << 20, 60, 20, 30, true, 0);
+
+    /**
+     * Small messages and short keepalive, calls on a fixed pool of one thread per core so
+     * a handler that blocks (full ingest ring, history read) never stalls the event loop.
+     */
+    public static final TransportSettings LATENCY = new TransportSettings(
+            Transport.AUTO, 1, CORES, CallExecutor.FIXED, CORES,
+            1 << 20, 4 << 20, 30, 10, 10, true, 0);
+
+    public TransportSettings {
+        if (bossThreads < 1 || workerThreads < 0 || executorThreads < 1) {
+            throw new IllegalArgumentException("Invalid transport thread settings");
+        }
+        if (flowControlWindow < 1 || maxInboundMessageSize < 1) {
+            throw new IllegalArgumentException("flowControlWindow and maxInboundMessageSize must be positive");
+        }
+        if (keepAliveTimeSeconds < 0 || keepAliveTimeoutSeconds < 1 || permitKeepAliveTimeSeconds < 0
+                || maxConnectionIdleSeconds < 0) {
+            throw new IllegalArgumentException("Invalid transport keepalive settings");
+        }
+    }
+
+    /**
+     * @param name {@code default}, {@code throughput} or {@code latency}
+     * @throws IllegalArgumentException for any other name
+     */
+    public static TransportSettings profile(String name) {
+        return switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "default" -> DEFAULT;
+            case "throughput" -> THROUGHPUT;
+            case "latency" -> LATENCY;
+            default -> throw new IllegalArgumentException(
+                    "Unknown transport profile: " + name + " (expected default, throughput or latency)");
+        };
+    }
+
+    /**
+     * One-line summary for the startup log.
+     */
+    public String describe() {
+        String pool = switch (executor) {
+            case FIXED -> "fixed(" + executorThreads + ")";
+            default -> executor.name().toLowerCase(Locale.ROOT);
+        };
+        return transport.name().toLowerCase(Locale.ROOT)
+                + ", boss " + bossThreads + " / worker " + (workerThreads == 0 ? "default" : workerThreads)
+                + ", executor " + pool
+                + ", window " + flowControlWindow + " B, max message " + maxInboundMessageSize + " B"
+                + ", keepalive " + (keepAliveTimeSeconds == 0 ? "off" : keepAliveTimeSeconds + "s/" + keepAliveTimeoutSeconds + "s");
+    }
+}
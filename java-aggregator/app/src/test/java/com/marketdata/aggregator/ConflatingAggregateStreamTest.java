@@ -0,0 +1,121 @@
+package com.marketdata.aggregator;
+
+import com.marketdata.proto.Aggregate;
+import io.grpc.stub.ServerCallStreamObserver;
+import org.testng.annotations.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.testng.Assert.assertEquals;
+
+public class ConflatingAggregateStreamTest {
+
+    private static final long TS = 1_700_000_000_000_000_000L;
+
+    @Test
+    public void backpressureMidDrainKeepsEverySymbolQueued() {
+        Aggregator aggregator = new Aggregator();
+        for (String symbol : List.of("AAA", "BBB", "CCC", "DDD")) {
+            aggregator.onTick(aggregator.internSymbol(symbol), 100, 1, TS);
+        }
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        FakeObserver observer = new FakeObserver();
+        // The transport fills up after the first message of the drain
+        observer.readyFor = 1;
+
+        ConflatingAggregateStream stream = new ConflatingAggregateStream(aggregator, null, observer,
+                tasks::add, CandleInterval.SESSION, PublishScheduler.Tier.REALTIME);
+        for (String symbol : List.of("AAA", "BBB", "CCC", "DDD")) {
+            stream.watch(symbol);
+        }
+        runAll(tasks);
+        assertEquals(observer.sent.size(), 1);
+
+        observer.readyFor = Integer.MAX_VALUE;
+        observer.onReady.run();
+        runAll(tasks);
+
+        Set<String> symbols = new TreeSet<>();
+        for (Aggregate aggregate : observer.sent) {
+            symbols.add(aggregate.getSymbol());
+        }
+        assertEquals(symbols, Set.of("AAA", "BBB", "CCC", "DDD"));
+        assertEquals(observer.sent.size(), 4);
+
+        // Slots are still armed: a new tick is delivered again
+        aggregator.onTick(aggregator.internSymbol("CCC"), 101, 1, TS + 1);
+        runAll(tasks);
+        assertEquals(observer.sent.size(), 5);
+        assertEquals(observer.sent.get(4).getSymbol(), "CCC");
+    }
+
+    private static void runAll(Queue<Runnable> tasks) {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private static final class FakeObserver extends ServerCallStreamObserver<Aggregate> {
+        final List<Aggregate> sent = new ArrayList<>();
+        int readyFor;
+        Runnable onReady;
+
+        @Override
+        public boolean isReady() {
+            return sent.size() < readyFor;
+        }
+
+        @Override
+        public void setOnReadyHandler(Runnable handler) {
+            onReady = handler;
+        }
+
+        @Override
+        public void onNext(Aggregate value) {
+            sent.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public void setOnCancelHandler(Runnable handler) {
+        }
+
+        @Override
+        public void setOnCloseHandler(Runnable handler) {
+        }
+
+        @Override
+        public void setCompression(String compression) {
+        }
+
+        @Override
+        public void disableAutoInboundFlowControl() {
+        }
+
+        @Override
+        public void request(int count) {
+        }
+
+        @Override
+        public void setMessageCompression(boolean enable) {
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.marketdata.aggregator;
+
+import com.marketdata.proto.Aggregate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning engine state into the wire message: reading a {@link Candle} snapshot,
+ * building the {@link Aggregate} proto, and serializing it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class AggregateMapperBenchmark {
+
+    private Aggregator aggregator;
+    private int symbolId;
+    private Candle candle;
+    private Aggregate aggregate;
+
+    @Setup
+    public void setUp() {
+        aggregator = new Aggregator();
+        symbolId = aggregator.internSymbol("AAPL");
+        long ts = 1_700_000_000_000_000_000L;
+        for (int i = 0; i < 1000; i++) {
+            aggregator.onTick(symbolId, 150.0 + (i % 17) * 0.01, 100, ts + i * 1_000_000L);
+        }
+        candle = aggregator.getSnapshot(symbolId, CandleInterval.MINUTE_1);
+        aggregate = AggregateMapper.toAggregate(candle);
+    }
+
+    @Benchmark
+    public Candle snapshot() {
+        return aggregator.getSnapshot(symbolId, CandleInterval.MINUTE_1);
+    }
+
+    @Benchmark
+    public Aggregate toAggregate() {
+        return AggregateMapper.toAggregate(candle);
+    }
+
+    @Benchmark
+    public byte[] toAggregateSerialized() {
+        return AggregateMapper.toAggregate(candle).toByteArray();
+    }
+
+    @Benchmark
+    public byte[] serializeOnly() {
+        return aggregate.toByteArray();
+    }
+}
@@ -0,0 +1,80 @@
+package com.marketdata.aggregator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of {@link Aggregator#onTick(int, double, long, long)} with no listeners,
+ * from one thread up to all cores. Zipf skew concentrates writers on a few symbols and
+ * so measures seqlock contention; uniform spreads them out.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AggregatorOnTickBenchmark {
+
+    private static final int SEQUENCE = 1 << 16;
+
+    @State(Scope.Benchmark)
+    public static class Engine {
+        @Param({"16", "1024", "65536"})
+        int symbols;
+
+        @Param({"uniform", "zipf"})
+        String skew;
+
+        Aggregator aggregator;
+        final AtomicLong seeds = new AtomicLong();
+
+        @Setup
+        public void setUp() {
+            aggregator = SymbolDistribution.populated(symbols);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Feed {
+        int[] ids;
+        int cursor;
+        long timestamp = 1_700_000_000_000_000_000L;
+
+        @Setup
+        public void setUp(Engine engine) {
+            ids = SymbolDistribution.draw(engine.skew, engine.symbols, SEQUENCE, engine.seeds.incrementAndGet());
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void onTick1Thread(Engine engine, Feed feed) {
+        tick(engine, feed);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void onTick4Threads(Engine engine, Feed feed) {
+        tick(engine, feed);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void onTickMaxThreads(Engine engine, Feed feed) {
+        tick(engine, feed);
+    }
+
+    private static void tick(Engine engine, Feed feed) {
+        int i = feed.cursor++ & (SEQUENCE - 1);
+        // 1ms apart, so the 1s bar rolls over every thousand ticks
+        feed.timestamp += 1_000_000L;
+        engine.aggregator.onTick(feed.ids[i], 100.0 + (i & 63), 100, feed.timestamp);
+    }
+}
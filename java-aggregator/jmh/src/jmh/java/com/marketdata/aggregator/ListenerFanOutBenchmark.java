@@ -0,0 +1,66 @@
+package com.marketdata.aggregator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tick cost as the number of listeners on the ticking symbol grows, either all on that
+ * symbol or all wildcard ({@link Aggregator#subscribeAll}). Listeners only consume the id,
+ * so this isolates registry dispatch from whatever a real subscriber does with it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class ListenerFanOutBenchmark {
+
+    private static final int SYMBOLS = 1024;
+
+    @Param({"0", "1", "16", "256", "4096"})
+    int subscribers;
+
+    @Param({"symbol", "wildcard"})
+    String mode;
+
+    private Aggregator aggregator;
+    private int symbolId;
+    private long timestamp = 1_700_000_000_000_000_000L;
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private long notified;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        aggregator = SymbolDistribution.populated(SYMBOLS);
+        symbolId = aggregator.symbolId("SYM0");
+        AggregateListener listener = id -> notified += id + 1;
+        for (int i = 0; i < subscribers; i++) {
+            subscriptions.add("wildcard".equals(mode)
+                    ? aggregator.subscribeAll(listener)
+                    : aggregator.subscribe("SYM0", listener));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        subscriptions.forEach(Subscription::cancel);
+        subscriptions.clear();
+    }
+
+    @Benchmark
+    public long onTick() {
+        timestamp += 1_000_000L;
+        aggregator.onTick(symbolId, 100.25, 10, timestamp);
+        return notified;
+    }
+}
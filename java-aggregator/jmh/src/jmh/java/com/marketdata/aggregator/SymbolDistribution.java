@@ -0,0 +1,55 @@
+package com.marketdata.aggregator;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Pre-drawn symbol id sequences, so benchmarks measure the engine rather than the sampler.
+ *
+ * {@code uniform} spreads ticks evenly; {@code zipf} follows a Zipf(1.1) law, where a
+ * handful of symbols take most of the flow the way a few tickers dominate real feeds.
+ */
+final class SymbolDistribution {
+
+    private static final double ZIPF_EXPONENT = 1.1;
+
+    private SymbolDistribution() {
+    }
+
+    /**
+     * @param length number of ids to draw (a power of two, so callers can mask the index)
+     */
+    static int[] draw(String skew, int symbols, int length, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] ids = new int[length];
+        switch (skew) {
+            case "uniform" -> {
+                for (int i = 0; i < length; i++) {
+                    ids[i] = random.nextInt(symbols);
+                }
+            }
+            case "zipf" -> {
+                double[] cdf = new double[symbols];
+                double sum = 0;
+                for (int k = 0; k < symbols; k++) {
+                    sum += 1.0 / Math.pow(k + 1, ZIPF_EXPONENT);
+                    cdf[k] = sum;
+                }
+                for (int i = 0; i < length; i++) {
+                    int at = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+                    ids[i] = Math.min(at < 0 ? -at - 1 : at, symbols - 1);
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown skew: " + skew);
+        }
+        return ids;
+    }
+
+    static Aggregator populated(int symbols) {
+        Aggregator aggregator = new Aggregator();
+        for (int i = 0; i < symbols; i++) {
+            aggregator.internSymbol("SYM" + i);
+        }
+        return aggregator;
+    }
+}
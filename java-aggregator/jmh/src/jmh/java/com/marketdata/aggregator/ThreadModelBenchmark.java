@@ -0,0 +1,127 @@
+package com.marketdata.aggregator;
+
+import com.marketdata.proto.AggregateRequest;
+import com.marketdata.proto.MarketDataServiceGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A burst of concurrent blocking {@code GetAggregate} calls over loopback, the way
+ * gateway request threads make them, under the platform-thread model (a 200-thread
+ * pool, Tomcat's default maximum, and gRPC's default executors) and the virtual-thread
+ * mode ({@code spring.threads.virtual.enabled} / {@code -Dmarketdata.virtualThreads}).
+ *
+ * {@code blockMicros} parks each request before its call to stand in for other blocking
+ * work in the handler; that is where a bounded pool queues and virtual threads don't.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ThreadModelBenchmark {
+
+    private static final int SYMBOLS = 256;
+    private static final int PLATFORM_REQUEST_THREADS = 200;
+
+    @Param({"platform", "virtual"})
+    String threads;
+
+    @Param({"64", "1024", "8192"})
+    int concurrency;
+
+    @Param({"0", "1000"})
+    long blockMicros;
+
+    private Server server;
+    private ManagedChannel channel;
+    private ExecutorService serverExecutor;
+    private ExecutorService channelExecutor;
+    private ExecutorService requests;
+    private MarketDataServiceGrpc.MarketDataServiceBlockingStub stub;
+    private AggregateRequest[] calls;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        boolean virtual = "virtual".equals(threads);
+        Aggregator aggregator = SymbolDistribution.populated(SYMBOLS);
+
+        ServerBuilder<?> builder = ServerBuilder.forPort(0)
+                .addService(new MarketDataServiceImpl(aggregator, new IngestMetrics(64)));
+        if (virtual) {
+            serverExecutor = Executors.newVirtualThreadPerTaskExecutor();
+            builder.executor(serverExecutor);
+        }
+        server = builder.build().start();
+
+        ManagedChannelBuilder<?> channelBuilder = ManagedChannelBuilder.forAddress("localhost", server.getPort()).usePlaintext();
+        if (virtual) {
+            channelExecutor = Executors.newVirtualThreadPerTaskExecutor();
+            channelBuilder.executor(channelExecutor);
+        }
+        channel = channelBuilder.build();
+        stub = MarketDataServiceGrpc.newBlockingStub(channel);
+
+        requests = virtual
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(PLATFORM_REQUEST_THREADS);
+
+        calls = new AggregateRequest[SYMBOLS];
+        for (int i = 0; i < SYMBOLS; i++) {
+            calls[i] = AggregateRequest.newBuilder().setSymbol("SYM" + i).build();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        requests.shutdownNow();
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        if (serverExecutor != null) {
+            serverExecutor.shutdownNow();
+            channelExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Time until all {@code concurrency} requests of a burst have their response.
+     */
+    @Benchmark
+    public long burst() throws InterruptedException, ExecutionException {
+        List<Future<Long>> pending = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            AggregateRequest call = calls[i % SYMBOLS];
+            pending.add(requests.submit(() -> {
+                if (blockMicros > 0) {
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(blockMicros));
+                }
+                return stub.getAggregate(call).getVolume();
+            }));
+        }
+        long volume = 0;
+        for (Future<Long> result : pending) {
+            volume += result.get();
+        }
+        return volume;
+    }
+}
@@ -0,0 +1,72 @@
+package com.marketdata.gateway;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.marketdata.gateway.model.AggregateDTO;
+import com.marketdata.proto.Aggregate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gateway conversion costs per delivered update: proto to {@link AggregateDTO}, DTO to
+ * JSON (REST/STOMP), and the map-based JSON the WebSocket handler builds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class AggregateDtoBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Aggregate aggregate;
+    private AggregateDTO dto;
+
+    @Setup
+    public void setUp() {
+        aggregate = Aggregate.newBuilder()
+                .setSymbol("AAPL")
+                .setOpen(150.12)
+                .setHigh(151.40)
+                .setLow(149.87)
+                .setClose(150.95)
+                .setVolume(1_234_567)
+                .setTimestamp(1_700_000_000_123_456_789L)
+                .build();
+        dto = AggregateDTO.from(aggregate);
+    }
+
+    @Benchmark
+    public AggregateDTO toDto() {
+        return AggregateDTO.from(aggregate);
+    }
+
+    @Benchmark
+    public byte[] dtoToJson() throws Exception {
+        return objectMapper.writeValueAsBytes(dto);
+    }
+
+    @Benchmark
+    public String protoToDtoJson() throws Exception {
+        return objectMapper.writeValueAsString(AggregateDTO.from(aggregate));
+    }
+
+    @Benchmark
+    public String protoToMapJson() throws Exception {
+        Map<String, Object> data = new HashMap<>();
+        data.put("symbol", aggregate.getSymbol());
+        data.put("open", aggregate.getOpen());
+        data.put("high", aggregate.getHigh());
+        data.put("low", aggregate.getLow());
+        data.put("close", aggregate.getClose());
+        data.put("volume", aggregate.getVolume());
+        data.put("timestamp", aggregate.getTimestamp());
+        return objectMapper.writeValueAsString(data);
+    }
+}
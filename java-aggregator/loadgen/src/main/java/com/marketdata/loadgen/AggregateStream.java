@@ -0,0 +1,73 @@
+package com.marketdata.loadgen;
+
+import com.marketdata.proto.Aggregate;
+import com.marketdata.proto.AggregateRequest;
+import com.marketdata.proto.MarketDataServiceGrpc;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+
+/**
+ * One {@code StreamAggregates} subscription measuring tick-to-aggregate latency.
+ *
+ * An aggregate's timestamp is the exchange timestamp of the newest tick it includes,
+ * which the generator set to that tick's intended send time, so {@code now - timestamp}
+ * is the full scheduled-send to delivery latency. Because the server conflates updates,
+ * a stall yields one late aggregate rather than many; the corrected histogram back-fills
+ * the samples a stall swallowed, using the symbol's expected tick interval.
+ */
+final class AggregateStream implements ClientResponseObserver<AggregateRequest, Aggregate> {
+
+    private final String symbol;
+    private final long expectedIntervalNanos;
+    private final LoadMetrics metrics;
+
+    private volatile boolean cancelled;
+    private ClientCallStreamObserver<AggregateRequest> call;
+
+    /**
+     * @param expectedIntervalNanos mean time between ticks of this symbol at the configured rate
+     */
+    AggregateStream(String symbol, long expectedIntervalNanos, LoadMetrics metrics) {
+        this.symbol = symbol;
+        this.expectedIntervalNanos = expectedIntervalNanos;
+        this.metrics = metrics;
+    }
+
+    void start(MarketDataServiceGrpc.MarketDataServiceStub stub) {
+        stub.streamAggregates(AggregateRequest.newBuilder().setSymbol(symbol).build(), this);
+    }
+
+    @Override
+    public void beforeStart(ClientCallStreamObserver<AggregateRequest> requestStream) {
+        call = requestStream;
+    }
+
+    @Override
+    public void onNext(Aggregate aggregate) {
+        long latency = LoadMetrics.clamp(LoadMetrics.epochNanos(System.nanoTime()) - aggregate.getTimestamp());
+        metrics.aggregatesReceived.increment();
+        if (metrics.recording()) {
+            metrics.latencyRaw.recordValue(latency);
+            metrics.latency.recordValueWithExpectedInterval(latency, expectedIntervalNanos);
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        if (!cancelled) {
+            metrics.streamErrors.increment();
+            System.err.println("[LOADGEN] StreamAggregates(" + symbol + ") failed: " + t.getMessage());
+        }
+    }
+
+    @Override
+    public void onCompleted() {
+    }
+
+    void cancel() {
+        cancelled = true;
+        if (call != null) {
+            call.cancel("load run finished", null);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.marketdata.loadgen;
+
+import com.marketdata.proto.MarketDataServiceGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Drives a running {@code GrpcServer} with many concurrent {@code StreamTicks} and
+ * {@code StreamAggregates} calls and reports sustained throughput and tick-to-aggregate
+ * latency percentiles.
+ *
+ * <pre>
+ *   ./gradlew :loadgen:run --args="--rate 100000 --tick-streams 8 --aggregate-streams 64 --symbols 500"
+ * </pre>
+ *
+ * Both ends of each latency sample are taken from this process's clock (the server
+ * only echoes the tick timestamp back), so the server may run on another host.
+ */
+public class LoadGenerator {
+
+    public static void main(String[] args) throws Exception {
+        LoadProfile profile;
+        try {
+            profile = LoadProfile.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(LoadProfile.USAGE);
+            System.exit(2);
+            return;
+        }
+        System.exit(new LoadGenerator().run(profile) ? 0 : 1);
+    }
+
+    /**
+     * @return false if any stream failed
+     */
+    boolean run(LoadProfile profile) throws InterruptedException {
+        System.out.println("[LOADGEN] " + profile);
+
+        List<ManagedChannel> channels = new ArrayList<>();
+        List<MarketDataServiceGrpc.MarketDataServiceStub> stubs = new ArrayList<>();
+        for (int i = 0; i < profile.channels(); i++) {
+            ManagedChannel channel = ManagedChannelBuilder.forTarget(profile.target())
+                    .usePlaintext()
+                    .build();
+            channels.add(channel);
+            stubs.add(MarketDataServiceGrpc.newStub(channel));
+        }
+
+        String[] symbols = new String[profile.symbols()];
+        for (int rank = 0; rank < symbols.length; rank++) {
+            symbols[rank] = LoadProfile.symbolName(rank);
+        }
+        ZipfSampler sampler = new ZipfSampler(profile.symbols(), profile.zipf());
+        LoadMetrics metrics = new LoadMetrics();
+
+        // Subscribers first, hottest symbols first, so the first ticks are already observed
+        List<AggregateStream> subscribers = new ArrayList<>();
+        for (int i = 0; i < profile.aggregateStreams(); i++) {
+            int rank = i % profile.symbols();
+            double ticksPerSecond = profile.rate() * sampler.probability(rank);
+            long expectedInterval = (long) Math.min(LoadMetrics.MAX_TRACKED_NANOS, 1e9 / ticksPerSecond);
+            AggregateStream subscriber = new AggregateStream(symbols[rank], expectedInterval, metrics);
+            subscriber.start(stubs.get(i % stubs.size()));
+            subscribers.add(subscriber);
+        }
+        TimeUnit.MILLISECONDS.sleep(500);
+
+        // Stagger stream schedules evenly across one interval
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        double interval = profile.streamIntervalNanos();
+        List<TickStream> senders = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < profile.tickStreams(); i++) {
+            TickStream sender = new TickStream(profile, sampler, symbols, stubs.get(i % stubs.size()), metrics,
+                    start + (long) (interval * i / profile.tickStreams()), 31L * i + 17);
+            Thread thread = new Thread(sender, "tick-stream-" + i);
+            thread.setDaemon(true);
+            senders.add(sender);
+            threads.add(thread);
+            thread.start();
+        }
+
+        report(profile.warmupSeconds(), metrics, "warmup");
+        metrics.startRecording();
+        long recordedFrom = metrics.ticksSent.sum();
+        long receivedFrom = metrics.aggregatesReceived.sum();
+        long recordStart = System.nanoTime();
+
+        Histogram latency = new Histogram(LoadMetrics.MAX_TRACKED_NANOS, 3);
+        Histogram latencyRaw = new Histogram(LoadMetrics.MAX_TRACKED_NANOS, 3);
+        Histogram sendLag = new Histogram(LoadMetrics.MAX_TRACKED_NANOS, 3);
+        long lastSent = recordedFrom;
+        long lastReceived = receivedFrom;
+        for (int second = 1; second <= profile.durationSeconds(); second++) {
+            TimeUnit.SECONDS.sleep(1);
+            Histogram window = metrics.latency.getIntervalHistogram();
+            latency.add(window);
+            latencyRaw.add(metrics.latencyRaw.getIntervalHistogram());
+            sendLag.add(metrics.sendLag.getIntervalHistogram());
+
+            long sent = metrics.ticksSent.sum();
+            long received = metrics.aggregatesReceived.sum();
+            System.out.printf("[LOADGEN] t=%ds ticks/s=%d aggregates/s=%d p50=%s p99=%s max=%s notReady=%d%n",
+                    second, sent - lastSent, received - lastReceived,
+                    micros(window.getValueAtPercentile(50)), micros(window.getValueAtPercentile(99)),
+                    micros(window.getMaxValue()), metrics.ticksWhileNotReady.sum());
+            lastSent = sent;
+            lastReceived = received;
+        }
+        double seconds = (System.nanoTime() - recordStart) / 1e9;
+        long ticks = metrics.ticksSent.sum() - recordedFrom;
+        long aggregates = metrics.aggregatesReceived.sum() - receivedFrom;
+
+        boolean acked = true;
+        for (TickStream sender : senders) {
+            acked &= sender.finish(10, TimeUnit.SECONDS);
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+        }
+        subscribers.forEach(AggregateStream::cancel);
+        for (ManagedChannel channel : channels) {
+            channel.shutdown();
+            channel.awaitTermination(5, TimeUnit.SECONDS);
+        }
+
+        System.out.println();
+        System.out.printf("Target rate:        %,d ticks/s (%d streams, %d symbols, zipf %.2f)%n",
+                profile.rate(), profile.tickStreams(), profile.symbols(), profile.zipf());
+        System.out.printf("Sustained ticks:    %,.0f ticks/s over %.1f s%n", ticks / seconds, seconds);
+        System.out.printf("Aggregates:         %,.0f /s on %d streams%n", aggregates / seconds, profile.aggregateStreams());
+        System.out.printf("Sent while !ready:  %,d (server not keeping up if non-zero)%n", metrics.ticksWhileNotReady.sum());
+        System.out.printf("Stream errors:      %d%s%n", metrics.streamErrors.sum(), acked ? "" : " (some Acks timed out)");
+        System.out.println();
+        System.out.println("Tick->aggregate latency (us)   corrected        raw");
+        for (double p : new double[] {50, 90, 99, 99.9, 99.99}) {
+            System.out.printf("  p%-27s %10s %10s%n", p, micros(latency.getValueAtPercentile(p)),
+                    micros(latencyRaw.getValueAtPercentile(p)));
+        }
+        System.out.printf("  %-28s %10s %10s%n", "max", micros(latency.getMaxValue()), micros(latencyRaw.getMaxValue()));
+        System.out.printf("  %-28s %10d %10d%n", "samples", latency.getTotalCount(), latencyRaw.getTotalCount());
+        System.out.printf("Send lag behind schedule (us): p50=%s p99=%s max=%s%n",
+                micros(sendLag.getValueAtPercentile(50)), micros(sendLag.getValueAtPercentile(99)),
+                micros(sendLag.getMaxValue()));
+
+        return acked && metrics.streamErrors.sum() == 0;
+    }
+
+    private static void report(int seconds, LoadMetrics metrics, String phase) throws InterruptedException {
+        long last = metrics.ticksSent.sum();
+        for (int second = 1; second <= seconds; second++) {
+            TimeUnit.SECONDS.sleep(1);
+            long sent = metrics.ticksSent.sum();
+            System.out.printf("[LOADGEN] %s t=%ds ticks/s=%d%n", phase, second, sent - last);
+            last = sent;
+        }
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.1f", nanos / 1000.0);
+    }
+}
@@ -0,0 +1,56 @@
+package com.marketdata.loadgen;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Counters and latency recorders shared by every stream of a run.
+ * Nothing is recorded until {@link #startRecording()}, so warm-up doesn't skew results.
+ */
+final class LoadMetrics {
+
+    /** Latencies above this are clamped; anything near it means the run is broken anyway. */
+    static final long MAX_TRACKED_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private static final long BASE_EPOCH_NANOS = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    private static final long BASE_NANO_TIME = System.nanoTime();
+
+    /** Tick-to-aggregate latency, back-filled for stalls longer than the symbol's tick interval. */
+    final Recorder latency = new Recorder(MAX_TRACKED_NANOS, 3);
+    /** Tick-to-aggregate latency as observed, one value per delivered aggregate. */
+    final Recorder latencyRaw = new Recorder(MAX_TRACKED_NANOS, 3);
+    /** How late each tick left the generator relative to its schedule. */
+    final Recorder sendLag = new Recorder(MAX_TRACKED_NANOS, 3);
+
+    final LongAdder ticksSent = new LongAdder();
+    final LongAdder ticksWhileNotReady = new LongAdder();
+    final LongAdder aggregatesReceived = new LongAdder();
+    final LongAdder streamErrors = new LongAdder();
+
+    private volatile boolean recording;
+
+    void startRecording() {
+        // Drop whatever warm-up left in the interval histograms
+        latency.getIntervalHistogram();
+        latencyRaw.getIntervalHistogram();
+        sendLag.getIntervalHistogram();
+        recording = true;
+    }
+
+    boolean recording() {
+        return recording;
+    }
+
+    /**
+     * @return wall-clock epoch nanoseconds for a {@link System#nanoTime()} reading,
+     *         comparable with the aggregator's exchange timestamps
+     */
+    static long epochNanos(long nanoTime) {
+        return BASE_EPOCH_NANOS + (nanoTime - BASE_NANO_TIME);
+    }
+
+    static long clamp(long nanos) {
+        return Math.min(Math.max(nanos, 0), MAX_TRACKED_NANOS);
+    }
+}
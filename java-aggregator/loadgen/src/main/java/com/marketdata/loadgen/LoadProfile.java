@@ -0,0 +1,109 @@
+package com.marketdata.loadgen;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command-line settings of a load run.
+ *
+ * @param target gRPC target of the aggregator (host:port)
+ * @param channels connections the streams are spread over
+ * @param tickStreams concurrent {@code StreamTicks} calls
+ * @param aggregateStreams concurrent {@code StreamAggregates} calls, assigned to the hottest symbols first
+ * @param symbols distinct symbols
+ * @param rate total ticks per second across all tick streams
+ * @param zipf Zipf exponent of symbol popularity; 0 for uniform
+ * @param warmupSeconds seconds of load before recording starts
+ * @param durationSeconds seconds of recorded load
+ */
+public record LoadProfile(
+        String target,
+        int channels,
+        int tickStreams,
+        int aggregateStreams,
+        int symbols,
+        long rate,
+        double zipf,
+        int warmupSeconds,
+        int durationSeconds) {
+
+    static final String USAGE = """
+            Usage: loadgen [--option value ...]
+              --target HOST:PORT      aggregator address (localhost:50051)
+              --channels N            gRPC connections to spread streams over (1)
+              --tick-streams N        concurrent StreamTicks calls (4)
+              --aggregate-streams N   concurrent StreamAggregates calls (16)
+              --symbols N             distinct symbols (100)
+              --rate N                total ticks per second, open loop (10000)
+              --zipf S                symbol popularity exponent, 0 = uniform (1.1)
+              --warmup SECONDS        unrecorded warm-up (5)
+              --duration SECONDS      recorded run length (30)
+            """;
+
+    public LoadProfile {
+        if (channels < 1 || tickStreams < 1 || aggregateStreams < 0 || symbols < 1 || rate < 1
+                || zipf < 0 || warmupSeconds < 0 || durationSeconds < 1) {
+            throw new IllegalArgumentException("Settings out of range: channels, tick-streams, symbols, rate "
+                    + "and duration must be positive; aggregate-streams, zipf and warmup non-negative");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException on an unknown option or a malformed value
+     */
+    public static LoadProfile parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            } else if (i + 1 < args.length) {
+                options.put(arg.substring(2), args[++i]);
+            } else {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+        }
+
+        LoadProfile profile = new LoadProfile(
+                options.getOrDefault("target", "localhost:50051"),
+                intOption(options, "channels", 1),
+                intOption(options, "tick-streams", 4),
+                intOption(options, "aggregate-streams", 16),
+                intOption(options, "symbols", 100),
+                Long.parseLong(options.getOrDefault("rate", "10000")),
+                Double.parseDouble(options.getOrDefault("zipf", "1.1")),
+                intOption(options, "warmup", 5),
+                intOption(options, "duration", 30));
+        options.keySet().removeAll(List.of("target", "channels", "tick-streams", "aggregate-streams",
+                "symbols", "rate", "zipf", "warmup", "duration"));
+        if (!options.isEmpty()) {
+            throw new IllegalArgumentException("Unknown option(s): " + options.keySet());
+        }
+        return profile;
+    }
+
+    private static int intOption(Map<String, String> options, String key, int defaultValue) {
+        String value = options.get(key);
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid integer for --" + key + ": " + value, e);
+        }
+    }
+
+    /**
+     * @return nanoseconds between ticks on one stream (fractional, so high rates don't round away)
+     */
+    double streamIntervalNanos() {
+        return 1e9 * tickStreams / rate;
+    }
+
+    static String symbolName(int rank) {
+        return String.format("SYM%05d", rank);
+    }
+}
@@ -0,0 +1,127 @@
+package com.marketdata.loadgen;
+
+import com.marketdata.proto.Ack;
+import com.marketdata.proto.MarketDataServiceGrpc;
+import com.marketdata.proto.Tick;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One open-loop {@code StreamTicks} call driven by its own thread.
+ *
+ * Ticks are sent on a fixed schedule whatever the server does: a slow server makes the
+ * sender fall behind rather than slow down. Each tick's exchange timestamp is its
+ * <em>intended</em> send time, so any delay the generator accumulates is charged to the
+ * measured tick-to-aggregate latency instead of silently vanishing (coordinated omission).
+ */
+final class TickStream implements Runnable {
+
+    // Closer than this to the next send, spin instead of parking
+    private static final long SPIN_NANOS = 50_000;
+
+    private final LoadProfile profile;
+    private final ZipfSampler sampler;
+    private final String[] symbols;
+    private final MarketDataServiceGrpc.MarketDataServiceStub stub;
+    private final LoadMetrics metrics;
+    private final long startNanos;
+    private final SplittableRandom random;
+    private final CountDownLatch acked = new CountDownLatch(1);
+
+    private volatile boolean stopping;
+    private ClientCallStreamObserver<Tick> requests;
+
+    /**
+     * @param startNanos {@link System#nanoTime()} of this stream's first scheduled tick
+     */
+    TickStream(LoadProfile profile, ZipfSampler sampler, String[] symbols,
+               MarketDataServiceGrpc.MarketDataServiceStub stub, LoadMetrics metrics, long startNanos, long seed) {
+        this.profile = profile;
+        this.sampler = sampler;
+        this.symbols = symbols;
+        this.stub = stub;
+        this.metrics = metrics;
+        this.startNanos = startNanos;
+        this.random = new SplittableRandom(seed);
+    }
+
+    @Override
+    public void run() {
+        stub.streamTicks(new ClientResponseObserver<Tick, Ack>() {
+            @Override
+            public void beforeStart(ClientCallStreamObserver<Tick> requestStream) {
+                requests = requestStream;
+            }
+
+            @Override
+            public void onNext(Ack ack) {
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                metrics.streamErrors.increment();
+                System.err.println("[LOADGEN] StreamTicks failed: " + t.getMessage());
+                stopping = true;
+                acked.countDown();
+            }
+
+            @Override
+            public void onCompleted() {
+                acked.countDown();
+            }
+        });
+
+        double interval = profile.streamIntervalNanos();
+        Tick.Builder tick = Tick.newBuilder();
+        long sent = 0;
+        while (!stopping) {
+            long intended = startNanos + (long) (sent * interval);
+            long now = System.nanoTime();
+            if (now < intended) {
+                if (intended - now > SPIN_NANOS) {
+                    LockSupport.parkNanos(intended - now - SPIN_NANOS);
+                } else {
+                    Thread.onSpinWait();
+                }
+                continue;
+            }
+
+            int rank = sampler.next(random);
+            Tick message = tick
+                    .setSymbol(symbols[rank])
+                    .setPrice(100.0 + rank % 50 + random.nextInt(1000) * 0.01)
+                    .setVolume(1 + random.nextInt(1000))
+                    .setExchangeTimestamp(LoadMetrics.epochNanos(intended))
+                    .build();
+            if (!requests.isReady()) {
+                metrics.ticksWhileNotReady.increment();
+            }
+            requests.onNext(message);
+            sent++;
+
+            metrics.ticksSent.increment();
+            if (metrics.recording()) {
+                metrics.sendLag.recordValue(LoadMetrics.clamp(now - intended));
+            }
+        }
+
+        // Half-close from the sending thread so it never races onNext
+        if (acked.getCount() > 0) {
+            requests.onCompleted();
+        }
+    }
+
+    /**
+     * Stop sending, half-close the call and wait for the server's Ack.
+     *
+     * @return whether the Ack (or an error) arrived in time
+     */
+    boolean finish(long timeout, TimeUnit unit) throws InterruptedException {
+        stopping = true;
+        return acked.await(timeout, unit);
+    }
+}
@@ -0,0 +1,37 @@
+package com.marketdata.loadgen;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Draws symbol ranks (0 = most popular) with probability proportional to {@code 1 / (rank + 1)^s}.
+ * The cumulative table is built once and shared; each sending thread brings its own random source.
+ */
+final class ZipfSampler {
+
+    private final double[] cdf;
+
+    ZipfSampler(int symbols, double exponent) {
+        cdf = new double[symbols];
+        double sum = 0;
+        for (int k = 0; k < symbols; k++) {
+            sum += exponent == 0 ? 1 : 1.0 / Math.pow(k + 1, exponent);
+            cdf[k] = sum;
+        }
+        for (int k = 0; k < symbols; k++) {
+            cdf[k] /= sum;
+        }
+    }
+
+    int next(SplittableRandom random) {
+        int at = Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min(at < 0 ? -at - 1 : at, cdf.length - 1);
+    }
+
+    /**
+     * @return share of all ticks that go to this rank
+     */
+    double probability(int rank) {
+        return rank == 0 ? cdf[0] : cdf[rank] - cdf[rank - 1];
+    }
+}
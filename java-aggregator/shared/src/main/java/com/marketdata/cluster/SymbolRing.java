@@ -0,0 +1,137 @@
+package com.marketdata.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Consistent-hash assignment of symbols to aggregator nodes.
+ *
+ * Every node is placed on a 64-bit ring at {@value #VNODES} points, {@code hash(node + "#" + i)},
+ * and a symbol belongs to the node of the first point at or after {@code hash(symbol)},
+ * wrapping around. Adding or removing a node moves only the symbols on its arcs.
+ *
+ * {@code hash} is 64-bit FNV-1a over the UTF-8 bytes followed by the MurmurHash3 64-bit
+ * finalizer, compared unsigned. The C++ ingest client ({@code src/symbol_ring.h})
+ * implements the same function, so every party that is given the same node list (same
+ * strings, same order) agrees on every owner.
+ */
+public final class SymbolRing {
+
+    public static final int VNODES = 128;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final List<String> nodes;
+    private final long[] points;
+    private final int[] owners;
+
+    public SymbolRing(List<String> nodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A symbol ring needs at least one node");
+        }
+        if (nodes.stream().distinct().count() != nodes.size()) {
+            throw new IllegalArgumentException("Duplicate node in " + nodes);
+        }
+        this.nodes = List.copyOf(nodes);
+
+        int size = nodes.size() * VNODES;
+        long[] hashes = new long[size];
+        Integer[] order = new Integer[size];
+        for (int node = 0; node < nodes.size(); node++) {
+            for (int v = 0; v < VNODES; v++) {
+                int at = node * VNODES + v;
+                hashes[at] = hash(nodes.get(node) + "#" + v);
+                order[at] = at;
+            }
+        }
+        // Ties (vanishingly rare) go to the lower node index, as in the C++ ring
+        Arrays.sort(order, (a, b) -> {
+            int cmp = Long.compareUnsigned(hashes[a], hashes[b]);
+            return cmp != 0 ? cmp : Integer.compare(a / VNODES, b / VNODES);
+        });
+        points = new long[size];
+        owners = new int[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = order[i] / VNODES;
+        }
+    }
+
+    /**
+     * @param nodes comma-separated node addresses, e.g. {@code localhost:50051,localhost:50052}
+     */
+    public static SymbolRing parse(String nodes) {
+        List<String> list = new ArrayList<>();
+        for (String node : nodes.split(",")) {
+            if (!node.isBlank()) {
+                list.add(node.trim());
+            }
+        }
+        return new SymbolRing(list);
+    }
+
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * @return index into {@link #nodes()} of the node that owns the symbol
+     */
+    public int ownerOf(String symbol) {
+        if (nodes.size() == 1) {
+            return 0;
+        }
+        long h = hash(symbol);
+        int lo = 0;
+        int hi = points.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(points[mid], h) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return owners[lo == points.length ? 0 : lo];
+    }
+
+    /**
+     * Group symbols by owning node, keeping their relative order.
+     */
+    public Map<Integer, List<String>> partition(Collection<String> symbols) {
+        Map<Integer, List<String>> byNode = new LinkedHashMap<>();
+        for (String symbol : symbols) {
+            byNode.computeIfAbsent(ownerOf(symbol), node -> new ArrayList<>()).add(symbol);
+        }
+        return byNode;
+    }
+
+    public static long hash(String value) {
+        long h = FNV_OFFSET;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= FNV_PRIME;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "SymbolRing" + nodes;
+    }
+}
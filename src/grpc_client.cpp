@@ -1,15 +1,37 @@
 #include "grpc_client.h"
+#include <algorithm>
 #include <iostream>
 
-GrpcTickPublisher::GrpcTickPublisher(const std::string& target) {
-    auto channel = grpc::CreateChannel(
+GrpcTickPublisher::GrpcTickPublisher(const std::string& target,
+                                     size_t batch_size,
+                                     std::chrono::milliseconds max_delay,
+                                     const std::string& producer_id,
+                                     size_t replay_limit)
+    : batch_size_(batch_size == 0 ? 1 : batch_size), max_delay_(max_delay),
+      producer_id_(producer_id), replay_limit_(replay_limit == 0 ? 1 : replay_limit) {
+    channel_ = grpc::CreateChannel(
         target, grpc::InsecureChannelCredentials());
 
-    stub_ = marketdata::MarketDataService::NewStub(channel);
+    stub_ = marketdata::MarketDataService::NewStub(channel_);
 
-    writer_ = stub_->StreamTicks(&context_, nullptr);
+    if (!producer_id_.empty()) {
+        // Retried on publish if the server is not up yet
+        std::lock_guard<std::mutex> lock(mu_);
+        connect_locked();
+        std::cout << "[gRPC] Connected to " << target
+                  << " (producer=" << producer_id_ << ", next sequence " << next_sequence_ << ")" << std::endl;
+        return;
+    }
 
-    std::cout << "[gRPC] Connected to " << target << std::endl;
+    if (batch_size_ > 1) {
+        batch_writer_ = stub_->StreamTickBatches(&context_, &ack_);
+        flusher_ = std::thread(&GrpcTickPublisher::flush_loop, this);
+    } else {
+        writer_ = stub_->StreamTicks(&context_, &ack_);
+    }
+
+    std::cout << "[gRPC] Connected to " << target
+              << " (batch_size=" << batch_size_ << ")" << std::endl;
 }
 
 GrpcTickPublisher::~GrpcTickPublisher() {
@@ -17,27 +39,281 @@ GrpcTickPublisher::~GrpcTickPublisher() {
 }
 
 bool GrpcTickPublisher::publish(const marketdata::Tick& tick) {
-    if (!writer_) return false;
+    std::unique_lock<std::mutex> lock(mu_);
+
+    if (!producer_id_.empty()) {
+        return publish_sequenced_locked(tick, lock);
+    }
+
+    if (writer_) {
+        if (!writer_->Write(tick)) {
+            std::cerr << "[gRPC] write failed\n";
+            return false;
+        }
+        return true;
+    }
+
+    if (!batch_writer_) return false;
+
+    if (batch_.price_size() == 0) {
+        batch_started_ = std::chrono::steady_clock::now();
+    }
+
+    // Dictionary-encode the symbol; each distinct symbol is sent once per batch
+    auto [it, inserted] = dictionary_.try_emplace(
+        tick.symbol(), static_cast<uint32_t>(batch_.symbols_size()));
+    if (inserted) {
+        batch_.add_symbols(tick.symbol());
+    }
+
+    batch_.add_symbol_index(it->second);
+    batch_.add_price(tick.price());
+    batch_.add_volume(tick.volume());
+    batch_.add_exchange_timestamp(tick.exchange_timestamp());
+    batch_.add_ingest_timestamp(tick.ingest_timestamp());
+
+    if (static_cast<size_t>(batch_.price_size()) >= batch_size_) {
+        return flush_locked();
+    }
+    return true;
+}
+
+bool GrpcTickPublisher::flush() {
+    std::lock_guard<std::mutex> lock(mu_);
+    return flush_locked();
+}
+
+bool GrpcTickPublisher::flush_locked() {
+    if (!batch_writer_ || batch_.price_size() == 0) return true;
+
+    bool ok = batch_writer_->Write(batch_);
+    if (!ok) {
+        std::cerr << "[gRPC] batch write failed\n";
+    }
+
+    // Clear() keeps the repeated fields' capacity for the next batch
+    batch_.Clear();
+    dictionary_.clear();
+    return ok;
+}
+
+void GrpcTickPublisher::flush_loop() {
+    std::unique_lock<std::mutex> lock(mu_);
+    while (!closing_) {
+        cv_.wait_for(lock, max_delay_);
+        if (closing_) break;
+
+        if (batch_.price_size() > 0 &&
+            std::chrono::steady_clock::now() - batch_started_ >= max_delay_) {
+            flush_locked();
+        }
+    }
+}
 
-    if (!writer_->Write(tick)) {
-        std::cerr << "[gRPC] write failed\n";
+bool GrpcTickPublisher::publish_sequenced_locked(const marketdata::Tick& tick,
+                                                 std::unique_lock<std::mutex>& lock) {
+    if (!ingest_ && !connect_locked()) {
+        back_off(lock);
+        if (next_sequence_ == 0) {
+            // Never connected: there is no sequence to number the tick with
+            return false;
+        }
+    }
+
+    marketdata::Tick sent = tick;
+    {
+        std::unique_lock<std::mutex> acks(ack_mu_);
+        // Hold the caller while the server is this far behind; a stream that stops
+        // acknowledging is replaced
+        while (unacked_.size() >= replay_limit_) {
+            if (ack_cv_.wait_for(acks, std::chrono::seconds(1)) == std::cv_status::timeout &&
+                unacked_.size() >= replay_limit_) {
+                acks.unlock();
+                std::cerr << "[gRPC] no acks for 1s with a full replay buffer, reconnecting\n";
+                disconnect_locked();
+                if (!connect_locked()) {
+                    back_off(lock);
+                }
+                acks.lock();
+            }
+        }
+        sent.set_sequence(next_sequence_++);
+        unacked_.push_back(sent);
+    }
+
+    if (!ingest_) {
+        // Buffered; sent when the next publish reconnects
+        return true;
+    }
+    if (ingest_->Write(sent)) {
+        return true;
+    }
+    std::cerr << "[gRPC] ingest write failed, reconnecting\n";
+    disconnect_locked();
+    // Resends everything unacknowledged, this tick included
+    if (!connect_locked()) {
+        back_off(lock);
+    }
+    return true;
+}
+
+void GrpcTickPublisher::back_off(std::unique_lock<std::mutex>& lock) {
+    std::chrono::milliseconds delay = backoff_;
+    backoff_ = std::min(backoff_ * 2, std::chrono::milliseconds(5000));
+    // Other publishing threads, flush() and close() are not held up by a server that is down
+    lock.unlock();
+    std::this_thread::sleep_for(delay);
+    lock.lock();
+}
+
+bool GrpcTickPublisher::connect_locked() {
+    ingest_context_ = std::make_unique<grpc::ClientContext>();
+    ingest_ = stub_->IngestTicks(ingest_context_.get());
+
+    // Hello: the answer is the last of our sequences the server has applied
+    marketdata::Tick hello;
+    hello.set_producer_id(producer_id_);
+    marketdata::IngestAck resume;
+    if (!ingest_->Write(hello) || !ingest_->Read(&resume)) {
+        std::cerr << "[gRPC] IngestTicks unavailable, retrying in " << backoff_.count() << " ms\n";
+        disconnect_locked();
         return false;
     }
+    backoff_ = std::chrono::milliseconds(100);
+    if (next_sequence_ == 0) {
+        next_sequence_ = resume.sequence() + 1;
+    }
+    trim(resume.sequence());
+    ack_reader_ = std::thread(&GrpcTickPublisher::read_acks, this, ingest_.get());
+
+    std::vector<marketdata::Tick> pending;
+    {
+        std::lock_guard<std::mutex> acks(ack_mu_);
+        pending.assign(unacked_.begin(), unacked_.end());
+    }
+    for (const auto& t : pending) {
+        if (!ingest_->Write(t)) {
+            disconnect_locked();
+            return false;
+        }
+    }
+    if (!pending.empty()) {
+        std::cout << "[gRPC] Resent " << pending.size() << " ticks after sequence "
+                  << resume.sequence() << "\n";
+    }
     return true;
 }
 
+void GrpcTickPublisher::disconnect_locked() {
+    if (ingest_context_) {
+        ingest_context_->TryCancel();
+    }
+    if (ack_reader_.joinable()) {
+        ack_reader_.join();
+    }
+    if (ingest_) {
+        ingest_->Finish();
+    }
+    ingest_.reset();
+    ingest_context_.reset();
+}
+
+void GrpcTickPublisher::read_acks(
+        grpc::ClientReaderWriter<marketdata::Tick, marketdata::IngestAck>* stream) {
+    marketdata::IngestAck ack;
+    while (stream->Read(&ack)) {
+        trim(ack.sequence());
+    }
+}
+
+void GrpcTickPublisher::trim(uint64_t sequence) {
+    std::lock_guard<std::mutex> lock(ack_mu_);
+    while (!unacked_.empty() && unacked_.front().sequence() <= sequence) {
+        unacked_.pop_front();
+    }
+    acked_ = std::max(acked_, sequence);
+    ack_cv_.notify_all();
+}
+
 void GrpcTickPublisher::close() {
-    if (!writer_) return;
+    {
+        std::lock_guard<std::mutex> lock(mu_);
+        if (closing_) return;
+        closing_ = true;
+    }
+    cv_.notify_all();
+    if (flusher_.joinable()) {
+        flusher_.join();
+    }
 
-    writer_->WritesDone();
-    grpc::Status status = writer_->Finish();
+    std::lock_guard<std::mutex> lock(mu_);
+    grpc::Status status;
+
+    if (ingest_) {
+        // The server answers WritesDone with a final ack before it completes
+        ingest_->WritesDone();
+        if (ack_reader_.joinable()) {
+            ack_reader_.join();
+        }
+        status = ingest_->Finish();
+        ingest_.reset();
+        std::lock_guard<std::mutex> acks(ack_mu_);
+        if (status.ok()) {
+            std::cout << "[gRPC] Ingest stream closed cleanly: acked through sequence " << acked_
+                      << ", " << unacked_.size() << " unacknowledged\n";
+        } else {
+            std::cerr << "[gRPC] Ingest stream error: " << status.error_message()
+                      << " (" << unacked_.size() << " unacknowledged)" << std::endl;
+        }
+        return;
+    }
+
+    if (batch_writer_) {
+        flush_locked();
+        batch_writer_->WritesDone();
+        status = batch_writer_->Finish();
+        batch_writer_.reset();
+    } else if (writer_) {
+        writer_->WritesDone();
+        status = writer_->Finish();
+        writer_.reset();
+    } else {
+        return;
+    }
 
     if (status.ok()) {
-        std::cout << "[gRPC] Stream closed cleanly\n";
+        std::cout << "[gRPC] Stream closed cleanly: " << ack_.message() << "\n";
     } else {
         std::cerr << "[gRPC] Stream error: "
                   << status.error_message() << std::endl;
     }
+}
+
+PartitionedTickPublisher::PartitionedTickPublisher(const std::string& targets,
+                                                   size_t batch_size,
+                                                   std::chrono::milliseconds max_delay,
+                                                   const std::string& producer_id)
+    : ring_(SymbolRing::parse(targets)) {
+    // Each node keeps its own sequence per producer, so one id serves every node
+    for (const auto& node : ring_.nodes()) {
+        publishers_.push_back(std::make_unique<GrpcTickPublisher>(node, batch_size, max_delay, producer_id));
+    }
+}
+
+bool PartitionedTickPublisher::publish(const marketdata::Tick& tick) {
+    return publishers_[ring_.owner_of(tick.symbol())]->publish(tick);
+}
 
-    writer_.reset();
+bool PartitionedTickPublisher::flush() {
+    bool ok = true;
+    for (auto& publisher : publishers_) {
+        ok &= publisher->flush();
+    }
+    return ok;
+}
+
+void PartitionedTickPublisher::close() {
+    for (auto& publisher : publishers_) {
+        publisher->close();
+    }
 }
@@ -1,20 +1,108 @@
 #pragma once
 
+#include <chrono>
+#include <condition_variable>
+#include <cstddef>
+#include <cstdint>
+#include <deque>
 #include <memory>
+#include <mutex>
+#include <string>
+#include <thread>
+#include <unordered_map>
+#include <vector>
 #include <grpcpp/grpcpp.h>
 #include "grpc/marketdata.grpc.pb.h"
+#include "symbol_ring.h"
 
 // Responsible ONLY for pushing ticks over gRPC
+//
+// batch_size == 1: one Tick message per tick over StreamTicks.
+// batch_size  > 1: ticks are buffered into a columnar TickBatch and sent over
+//                  StreamTickBatches when the batch is full or max_delay elapses.
+// producer_id set: ticks are numbered and sent over IngestTicks (batch_size is
+//                  ignored). Every tick is kept until the server acks its sequence;
+//                  after a failed write the publisher reconnects, asks the server
+//                  for the last sequence it applied and resends only what follows.
+//                  publish() blocks while replay_limit ticks are unacknowledged.
+// publish() may be called from several threads.
 class GrpcTickPublisher {
 public:
-    explicit GrpcTickPublisher(const std::string& target);
+    explicit GrpcTickPublisher(const std::string& target,
+                               size_t batch_size = 1,
+                               std::chrono::milliseconds max_delay = std::chrono::milliseconds(5),
+                               const std::string& producer_id = "",
+                               size_t replay_limit = 1 << 20);
     ~GrpcTickPublisher();
 
     bool publish(const marketdata::Tick& tick);
+    bool flush();
     void close();
 
 private:
+    bool flush_locked();
+    void flush_loop();
+
+    bool publish_sequenced_locked(const marketdata::Tick& tick, std::unique_lock<std::mutex>& lock);
+    // Sleeps out the reconnect backoff with mu_ released
+    void back_off(std::unique_lock<std::mutex>& lock);
+    bool connect_locked();
+    void disconnect_locked();
+    void read_acks(grpc::ClientReaderWriter<marketdata::Tick, marketdata::IngestAck>* stream);
+    void trim(uint64_t sequence);
+
     std::unique_ptr<marketdata::MarketDataService::Stub> stub_;
     grpc::ClientContext context_;
+    marketdata::Ack ack_;
     std::unique_ptr<grpc::ClientWriter<marketdata::Tick>> writer_;
+    std::unique_ptr<grpc::ClientWriter<marketdata::TickBatch>> batch_writer_;
+
+    // Batch mode state, guarded by mu_
+    size_t batch_size_;
+    std::chrono::milliseconds max_delay_;
+    marketdata::TickBatch batch_;
+    std::unordered_map<std::string, uint32_t> dictionary_;
+    std::chrono::steady_clock::time_point batch_started_;
+
+    // Sequenced mode; the stream fields are guarded by mu_
+    std::string producer_id_;
+    size_t replay_limit_;
+    std::shared_ptr<grpc::Channel> channel_;
+    std::unique_ptr<grpc::ClientContext> ingest_context_;
+    std::unique_ptr<grpc::ClientReaderWriter<marketdata::Tick, marketdata::IngestAck>> ingest_;
+    std::thread ack_reader_;
+    uint64_t next_sequence_ = 0;  // 0 until the server has told us where to resume
+    std::chrono::milliseconds backoff_{100};
+
+    // Sent but not yet acknowledged, oldest first; guarded by ack_mu_
+    std::mutex ack_mu_;
+    std::condition_variable ack_cv_;
+    std::deque<marketdata::Tick> unacked_;
+    uint64_t acked_ = 0;
+
+    std::mutex mu_;
+    std::condition_variable cv_;
+    bool closing_ = false;
+    std::thread flusher_;
+};
+
+// Routes each tick to the aggregator node that owns its symbol (see SymbolRing), with
+// one GrpcTickPublisher per node. With a single target it is a plain pass-through.
+//
+// targets: comma-separated node addresses, in the same order the nodes and the gateway
+// are configured with.
+class PartitionedTickPublisher {
+public:
+    explicit PartitionedTickPublisher(const std::string& targets,
+                                      size_t batch_size = 1,
+                                      std::chrono::milliseconds max_delay = std::chrono::milliseconds(5),
+                                      const std::string& producer_id = "");
+
+    bool publish(const marketdata::Tick& tick);
+    bool flush();
+    void close();
+
+private:
+    SymbolRing ring_;
+    std::vector<std::unique_ptr<GrpcTickPublisher>> publishers_;
 };
@@ -6,6 +6,7 @@
 #include <cctype>
 #include <chrono>
 #include <cmath>
+#include <cstdlib>
 #include <iostream>
 #include <netinet/in.h>
 #include <thread>
@@ -86,7 +87,28 @@ void normalize_tick(marketdata::Tick &t) {
 
 TCPServer::TCPServer(int port) : port_(port), server_fd_(-1) {
 
-  grpc_publisher_ = std::make_unique<GrpcTickPublisher>("localhost:50051");
+  // GRPC_BATCH_SIZE > 1 switches to the columnar StreamTickBatches RPC
+  size_t batch_size = 1;
+  if (const char *env = std::getenv("GRPC_BATCH_SIZE")) {
+    batch_size = std::strtoul(env, nullptr, 10);
+  }
+
+  // GRPC_TARGETS lists the aggregator nodes ("host:port,host:port"); each symbol
+  // goes to the node that owns it
+  std::string targets = "localhost:50051";
+  if (const char *env = std::getenv("GRPC_TARGETS")) {
+    targets = env;
+  }
+
+  // GRPC_PRODUCER_ID switches to the sequenced IngestTicks RPC: ticks are acked
+  // and resent after a reconnect without being applied twice
+  std::string producer_id;
+  if (const char *env = std::getenv("GRPC_PRODUCER_ID")) {
+    producer_id = env;
+  }
+
+  grpc_publisher_ = std::make_unique<PartitionedTickPublisher>(
+      targets, batch_size, std::chrono::milliseconds(5), producer_id);
 }
 
 void TCPServer::start() {
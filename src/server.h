@@ -10,7 +10,7 @@ private:
     int port_;
     int server_fd_;
 
-    std::unique_ptr<GrpcTickPublisher> grpc_publisher_;
+    std::unique_ptr<PartitionedTickPublisher> grpc_publisher_;
 
     void handle_client(int client_fd);
 };
@@ -0,0 +1,84 @@
+#pragma once
+
+#include <algorithm>
+#include <cstddef>
+#include <cstdint>
+#include <stdexcept>
+#include <string>
+#include <string_view>
+#include <utility>
+#include <vector>
+
+// Consistent-hash assignment of symbols to aggregator nodes.
+//
+// Mirror of com.marketdata.cluster.SymbolRing (java-aggregator/shared): each node sits
+// on a 64-bit ring at kVnodes points hash(node + "#" + i), and a symbol belongs to the
+// node of the first point at or after hash(symbol), wrapping around. hash() is 64-bit
+// FNV-1a followed by the MurmurHash3 fmix64 finalizer. Both sides must be given the
+// same node strings in the same order.
+class SymbolRing {
+public:
+    static constexpr int kVnodes = 128;
+
+    explicit SymbolRing(std::vector<std::string> nodes) : nodes_(std::move(nodes)) {
+        if (nodes_.empty()) {
+            throw std::invalid_argument("A symbol ring needs at least one node");
+        }
+        points_.reserve(nodes_.size() * kVnodes);
+        for (size_t node = 0; node < nodes_.size(); ++node) {
+            for (int v = 0; v < kVnodes; ++v) {
+                points_.emplace_back(hash(nodes_[node] + "#" + std::to_string(v)), node);
+            }
+        }
+        // Ties (vanishingly rare) go to the lower node index, as in the Java ring
+        std::sort(points_.begin(), points_.end());
+    }
+
+    // Parse "host:port,host:port"
+    static SymbolRing parse(std::string_view list) {
+        std::vector<std::string> nodes;
+        size_t start = 0;
+        while (start <= list.size()) {
+            size_t end = list.find(',', start);
+            if (end == std::string_view::npos) end = list.size();
+            std::string node(list.substr(start, end - start));
+            node.erase(0, node.find_first_not_of(" \t"));
+            node.erase(node.find_last_not_of(" \t") + 1);
+            if (!node.empty()) nodes.push_back(std::move(node));
+            start = end + 1;
+        }
+        return SymbolRing(std::move(nodes));
+    }
+
+    const std::vector<std::string>& nodes() const { return nodes_; }
+    size_t size() const { return nodes_.size(); }
+
+    // Index into nodes() of the node that owns the symbol
+    size_t owner_of(std::string_view symbol) const {
+        if (nodes_.size() == 1) return 0;
+        uint64_t h = hash(symbol);
+        auto it = std::lower_bound(points_.begin(), points_.end(), h,
+                                   [](const std::pair<uint64_t, size_t>& p, uint64_t v) {
+                                       return p.first < v;
+                                   });
+        return it == points_.end() ? points_.front().second : it->second;
+    }
+
+    static uint64_t hash(std::string_view value) {
+        uint64_t h = 0xcbf29ce484222325ULL;
+        for (unsigned char c : value) {
+            h ^= c;
+            h *= 0x100000001b3ULL;
+        }
+        h ^= h >> 33;
+        h *= 0xff51afd7ed558ccdULL;
+        h ^= h >> 33;
+        h *= 0xc4ceb9fe1a85ec53ULL;
+        h ^= h >> 33;
+        return h;
+    }
+
+private:
+    std::vector<std::string> nodes_;
+    std::vector<std::pair<uint64_t, size_t>> points_;
+};